@@ -0,0 +1,94 @@
+package com.seekerr.games.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import com.seekerr.games.procedural.CaveGenerationImpl;
+import com.seekerr.games.procedural.CaveGenerationImpl.Backend;
+
+/**
+ * One round and a whole cave with the phases the screens use, from 64x64
+ * up to 4096x4096.  The fill probability is the share of cells that start
+ * out FILLED, higher values leave smaller and more rooms for fixRooms to
+ * connect.
+ *
+ * @author wkerr
+ *
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Thread)
+public class CaveBenchmark {
+    @Param({ "64", "256", "1024", "4096" })
+    int size;
+
+    @Param({ "0.4", "0.45", "0.5" })
+    double fill;
+
+    @Param({ "LATTICE", "BIT_PACKED" })
+    Backend backend;
+
+    CaveGenerationImpl cave;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        GdxStub.install();
+        cave = create(size, fill, backend);
+    }
+
+    /**
+     * Start every call from the initial noise, so step measures the first
+     * round instead of a settled map.  The calls take milliseconds, so
+     * the overhead of a per invocation setup does not matter.
+     */
+    @Setup(Level.Invocation)
+    public void initialize() {
+        cave.initialize();
+    }
+
+    /**
+     * The benchmarks return the version of the map, getMap would unpack
+     * the BIT_PACKED map on every call.
+     */
+    @Benchmark
+    public int step() {
+        cave.step(cave.getPhase(0));
+        return cave.getVersion();
+    }
+
+    @Benchmark
+    public int generate() {
+        CaveGenerationImpl cave = create(size, fill, backend);
+        cave.generate();
+        return cave.getVersion();
+    }
+
+    static CaveGenerationImpl create(int size, double fill, Backend backend) {
+        return CaveGenerationImpl.Builder.create()
+                .withSize(size, size)
+                .withRandomSeed(RuleBenchmark.SEED)
+                .withFillProbability(fill)
+                .withBackend(backend)
+                .addPhase(5, 2, 4)
+                .addPhase(5, -1, 5)
+                .build();
+    }
+
+    /**
+     * Return a generated cave for the benchmarks that work on maps.
+     */
+    static boolean[][] generateMap(int size, double fill) {
+        CaveGenerationImpl cave = create(size, fill, Backend.BIT_PACKED);
+        cave.generate();
+        return cave.getMap();
+    }
+}
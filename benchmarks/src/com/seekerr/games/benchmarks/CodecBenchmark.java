@@ -0,0 +1,111 @@
+package com.seekerr.games.benchmarks;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import com.seekerr.games.io.LevelCodec;
+import com.seekerr.games.io.LevelFormat;
+import com.seekerr.games.procedural.ForestGenerationImpl;
+import com.seekerr.games.procedural.PackedLatticeFns;
+
+/**
+ * Encodes and decodes a generated cave or forest with the tile codec.  The
+ * megabytes counter is the size of the grid in memory, one byte a cell,
+ * so its rate is the encode or decode speed in MB/s.  The compression
+ * ratio against the grid and against the bit packed layer of the
+ * {@link LevelFormat} is printed once per trial.
+ *
+ * @author wkerr
+ *
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@State(Scope.Thread)
+public class CodecBenchmark {
+    @Param({ "256", "1024", "4096" })
+    int size;
+
+    @Param({ "cave", "forest" })
+    String layer;
+
+    boolean[][] cave;
+    byte[][] forest;
+    byte[] encoded;
+
+    /** Counts the grid bytes that went through the codec. */
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    @State(Scope.Thread)
+    public static class Megabytes {
+        public double megabytes;
+    }
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        GdxStub.install();
+        long packed;
+        if (layer.equals("cave")) {
+            cave = CaveBenchmark.generateMap(size, 0.45);
+            packed = 8L * PackedLatticeFns.wordsPerRow(size) * size;
+        } else {
+            ForestGenerationImpl generator = ForestGenerationImpl.Builder
+                    .create()
+                    .withSize(size, size)
+                    .withRandomSeed(RuleBenchmark.SEED)
+                    .withInitialTrees(20)
+                    .withSeedParams(7, 0.1, 0.05)
+                    .withDesiredCoverage(0.3)
+                    .build();
+            generator.generate();
+            forest = generator.getForest();
+            packed = 8L * LevelFormat.forestWordsPerRow(size) * size;
+        }
+        encoded = encode().toByteArray();
+        System.out.println(String.format(
+                "%s %dx%d: %d bytes, %.1fx the grid, %.1fx packed", layer,
+                size, size, encoded.length, (double) size * size
+                        / encoded.length, (double) packed / encoded.length));
+    }
+
+    @Benchmark
+    public ByteArrayOutputStream encode(Megabytes counter) throws IOException {
+        counter.megabytes += (double) size * size / 1e6;
+        return encode();
+    }
+
+    @Benchmark
+    public Object decode(Megabytes counter) throws IOException {
+        counter.megabytes += (double) size * size / 1e6;
+        ByteArrayInputStream in = new ByteArrayInputStream(encoded);
+        if (cave != null) {
+            boolean[][] map = new boolean[size][size];
+            LevelCodec.decodeCave(in, map);
+            return map;
+        }
+        byte[][] grid = new byte[size][size];
+        LevelCodec.decodeForest(in, grid);
+        return grid;
+    }
+
+    private ByteArrayOutputStream encode() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        if (cave != null) {
+            LevelCodec.encodeCave(cave, out);
+        } else {
+            LevelCodec.encodeForest(forest, out);
+        }
+        return out;
+    }
+}
@@ -0,0 +1,122 @@
+package com.seekerr.games.benchmarks;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import com.badlogic.gdx.math.Vector2;
+import com.badlogic.gdx.physics.box2d.Body;
+import com.badlogic.gdx.physics.box2d.BodyDef;
+import com.badlogic.gdx.physics.box2d.BodyDef.BodyType;
+import com.badlogic.gdx.physics.box2d.EdgeShape;
+import com.badlogic.gdx.physics.box2d.World;
+import com.google.common.collect.Lists;
+import com.seekerr.games.procedural.CaveGenerationImpl;
+import com.seekerr.games.procedural.CaveGenerationImpl.Backend;
+import com.seekerr.games.procedural.CollisionGeometry;
+import com.seekerr.games.procedural.Line;
+import com.seekerr.games.procedural.MarchingSquares;
+import com.seekerr.games.procedural.Point;
+
+/**
+ * Measures how long it takes to add the walls of a cave to a Box2D world
+ * with one edge fixture per cell edge compared to the chain loops built by
+ * {@link CollisionGeometry}.
+ *
+ * @author wkerr
+ *
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Benchmark)
+public class CollisionBenchmark {
+    @Param({ "128", "512" })
+    int size;
+
+    @Param({ "0.5", "1.5" })
+    float tolerance;
+
+    World world;
+    List<Line> cellEdges;
+    CollisionGeometry merged;
+    CollisionGeometry simplified;
+
+    @Setup
+    public void generate() {
+        GdxStub.install();
+        CaveGenerationImpl cave = CaveGenerationImpl.Builder.create()
+                .withSize(size, size)
+                .withRandomSeed(RuleBenchmark.SEED)
+                .withBackend(Backend.BIT_PACKED)
+                .addPhase(5, 2, 4)
+                .addPhase(5, -1, 5)
+                .build();
+        cave.generate();
+        boolean[][] map = cave.getMap();
+
+        cellEdges = Lists.newArrayList();
+        for (Line line : MarchingSquares.getContourLines(map)) {
+            Point a = line.getStart();
+            Point b = line.getEnd();
+            int dx = Integer.signum(b.getX() - a.getX());
+            int dy = Integer.signum(b.getY() - a.getY());
+            for (Point p = a; !p.equals(b); ) {
+                Point q = new Point(p.getX() + dx, p.getY() + dy);
+                cellEdges.add(new Line(p, q));
+                p = q;
+            }
+        }
+        merged = CollisionGeometry.build(map, 0);
+        simplified = CollisionGeometry.build(map, tolerance);
+        System.out.println("\nmerged: " + merged + "\nsimplified: " + simplified);
+
+        world = new World(new Vector2(0, 0), true);
+    }
+
+    @TearDown
+    public void dispose() {
+        world.dispose();
+    }
+
+    @Benchmark
+    public int perCellEdge() {
+        BodyDef bodyDef = new BodyDef();
+        bodyDef.type = BodyType.StaticBody;
+        Body body = world.createBody(bodyDef);
+        EdgeShape shape = new EdgeShape();
+        for (Line line : cellEdges) {
+            shape.set(line.getStart().getX(), line.getStart().getY(),
+                    line.getEnd().getX(), line.getEnd().getY());
+            body.createFixture(shape, 0);
+        }
+        shape.dispose();
+        int fixtures = body.getFixtureList().size;
+        world.destroyBody(body);
+        return fixtures;
+    }
+
+    @Benchmark
+    public int mergedLoops() {
+        Body body = merged.createBody(world, 1);
+        int fixtures = body.getFixtureList().size;
+        world.destroyBody(body);
+        return fixtures;
+    }
+
+    @Benchmark
+    public int simplifiedLoops() {
+        Body body = simplified.createBody(world, 1);
+        int fixtures = body.getFixtureList().size;
+        world.destroyBody(body);
+        return fixtures;
+    }
+}
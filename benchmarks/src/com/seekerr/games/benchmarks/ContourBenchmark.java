@@ -0,0 +1,63 @@
+package com.seekerr.games.benchmarks;
+
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import com.seekerr.games.procedural.LatticeFns;
+import com.seekerr.games.procedural.Line;
+import com.seekerr.games.procedural.MarchingSquares;
+import com.seekerr.games.procedural.Point;
+
+/**
+ * The {@link LatticeFns} that run over a finished cave: the rooms, the
+ * Moore neighborhood trace in {@link LatticeFns#getContour} and
+ * {@link MarchingSquares} for comparison.  {@link LatticeFns#getContourLines}
+ * grows much faster than the map, it already takes seconds at 256x256, so
+ * it has its own smaller sizes in {@link ContourLinesBenchmark}.
+ *
+ * @author wkerr
+ *
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Benchmark)
+public class ContourBenchmark {
+    @Param({ "64", "256", "1024", "4096" })
+    int size;
+
+    @Param({ "0.4", "0.45", "0.5" })
+    double fill;
+
+    boolean[][] map;
+
+    @Setup
+    public void generate() {
+        GdxStub.install();
+        map = CaveBenchmark.generateMap(size, fill);
+    }
+
+    @Benchmark
+    public List<Set<Point>> rooms() {
+        return LatticeFns.getRooms(map, LatticeFns.EMPTY);
+    }
+
+    @Benchmark
+    public List<Point> mooreContour() {
+        return LatticeFns.getContour(map);
+    }
+
+    @Benchmark
+    public List<Line> marchingSquares() {
+        return MarchingSquares.getContourLines(map);
+    }
+}
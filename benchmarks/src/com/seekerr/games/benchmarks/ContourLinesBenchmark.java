@@ -0,0 +1,54 @@
+package com.seekerr.games.benchmarks;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import com.seekerr.games.procedural.LatticeFns;
+import com.seekerr.games.procedural.Line;
+import com.seekerr.games.procedural.MarchingSquares;
+
+/**
+ * Compares {@link LatticeFns#getContourLines} with {@link MarchingSquares}
+ * on the same generated cave.  Only goes up to 256x256, beyond that the
+ * Moore trace takes minutes per call.
+ *
+ * @author wkerr
+ *
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Benchmark)
+public class ContourLinesBenchmark {
+    @Param({ "64", "128", "256" })
+    int size;
+
+    @Param({ "0.4", "0.45", "0.5" })
+    double fill;
+
+    boolean[][] map;
+
+    @Setup
+    public void generate() {
+        GdxStub.install();
+        map = CaveBenchmark.generateMap(size, fill);
+    }
+
+    @Benchmark
+    public List<Line> mooreTrace() {
+        return LatticeFns.getContourLines(map);
+    }
+
+    @Benchmark
+    public List<Line> marchingSquares() {
+        return MarchingSquares.getContourLines(map);
+    }
+}
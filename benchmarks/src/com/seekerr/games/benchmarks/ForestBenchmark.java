@@ -0,0 +1,61 @@
+package com.seekerr.games.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import com.seekerr.games.procedural.ForestGenerationImpl;
+import com.seekerr.games.procedural.ForestGenerationImpl.Growth;
+
+/**
+ * Grows a whole forest with the seed radius and decay the screens use, on
+ * square maps from 64x64 up to 4096x4096 and to different coverages.
+ * STAMP restamps every tree on every step, so it falls behind INCREMENTAL
+ * as the number of steps grows.
+ *
+ * @author wkerr
+ *
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Benchmark)
+public class ForestBenchmark {
+    @Param({ "64", "256", "1024", "4096" })
+    int size;
+
+    @Param({ "0.3", "0.6" })
+    double coverage;
+
+    /** The screens use 0.05, lower strengths take more steps to grow. */
+    @Param({ "0.05", "0.001" })
+    double seedStrength;
+
+    @Param({ "STAMP", "INCREMENTAL", "LAZY" })
+    Growth growth;
+
+    @Setup
+    public void setup() {
+        GdxStub.install();
+    }
+
+    @Benchmark
+    public byte[][] generate() {
+        ForestGenerationImpl forest = ForestGenerationImpl.Builder.create()
+                .withSize(size, size)
+                .withRandomSeed(RuleBenchmark.SEED)
+                .withInitialTrees(20)
+                .withSeedParams(7, 0.1, seedStrength)
+                .withDesiredCoverage(coverage)
+                .withGrowth(growth)
+                .build();
+        forest.generate();
+        return forest.getForest();
+    }
+}
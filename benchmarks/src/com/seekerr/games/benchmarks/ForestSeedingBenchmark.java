@@ -0,0 +1,63 @@
+package com.seekerr.games.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import com.seekerr.games.procedural.ForestGenerationImpl;
+import com.seekerr.games.procedural.ForestGenerationImpl.Seeding;
+
+/**
+ * Measures the first step of a 480x320 forest.  No tree has seeded yet,
+ * so the step is nothing but stamping the disks of the initial trees,
+ * which shows where convolving starts to beat stamping one disk per tree.
+ *
+ * @author wkerr
+ *
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Thread)
+public class ForestSeedingBenchmark {
+    @Param({ "10", "100", "1000", "5000" })
+    int initialTrees;
+
+    @Param({ "7", "30" })
+    int seedRadius;
+
+    @Param({ "DISKS", "CONVOLUTION" })
+    Seeding seeding;
+
+    ForestGenerationImpl forest;
+
+    @Setup(Level.Trial)
+    public void create() {
+        GdxStub.install();
+        forest = ForestGenerationImpl.Builder.create()
+                .withSize(480, 320)
+                .withRandomSeed(RuleBenchmark.SEED)
+                .withInitialTrees(initialTrees)
+                .withSeedParams(seedRadius, 0.1, 0.05)
+                .withSeeding(seeding)
+                .build();
+    }
+
+    @Setup(Level.Invocation)
+    public void initialize() {
+        forest.initialize();
+    }
+
+    @Benchmark
+    public int seedInitialTrees() {
+        forest.step();
+        return forest.getLiveSeeds();
+    }
+}
@@ -0,0 +1,41 @@
+package com.seekerr.games.benchmarks;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+
+import com.badlogic.gdx.Application;
+import com.badlogic.gdx.Gdx;
+
+/**
+ * The generators log through Gdx.app, but the benchmarks run without a
+ * backend.  This installs an Application that drops every log message and
+ * reports a log level of LOG_NONE so the debug dumps are never built.
+ *
+ * @author wkerr
+ *
+ */
+public class GdxStub {
+
+    public static void install() {
+        if (Gdx.app != null) {
+            return;
+        }
+        Gdx.app = (Application) Proxy.newProxyInstance(
+                GdxStub.class.getClassLoader(),
+                new Class<?>[] { Application.class },
+                new InvocationHandler() {
+                    @Override
+                    public Object invoke(Object proxy, Method method,
+                            Object[] args) {
+                        if (method.getReturnType() == int.class) {
+                            return Application.LOG_NONE;
+                        }
+                        if (method.getReturnType() == long.class) {
+                            return 0L;
+                        }
+                        return null;
+                    }
+                });
+    }
+}
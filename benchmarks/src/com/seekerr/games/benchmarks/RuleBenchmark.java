@@ -0,0 +1,175 @@
+package com.seekerr.games.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import com.seekerr.games.procedural.CaveGenerationImpl;
+import com.seekerr.games.procedural.CaveGenerationImpl.Backend;
+import com.seekerr.games.procedural.CaveGenerationImpl.Phase;
+import com.seekerr.games.procedural.LatticeFns;
+import com.seekerr.games.procedural.Rule;
+
+/**
+ * Measures a single round of the cave automaton with rules compiled into
+ * a {@link com.seekerr.games.procedural.RuleTable}.  The hardCoded
+ * benchmark is the original threshold loop, so the threshold rule on the
+ * LATTICE backend should come in at the same time.
+ *
+ * @author wkerr
+ *
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class RuleBenchmark {
+    static final long SEED = 1409760206706L;
+
+    @State(Scope.Thread)
+    public static class CaveState {
+        @Param({ "256", "1024" })
+        int size;
+
+        @Param({ "LATTICE", "BIT_PACKED", "SUMMED_AREA" })
+        Backend backend;
+
+        @Param({ "threshold", "B5678/S45678", "weighted" })
+        String rule;
+
+        CaveGenerationImpl cave;
+        Phase phase;
+
+        @Setup(Level.Trial)
+        public void createPhase() {
+            GdxStub.install();
+            Rule r;
+            if ("threshold".equals(rule)) {
+                r = Rule.threshold(5, 2);
+            } else if ("weighted".equals(rule)) {
+                r = Rule.weighted(3, 1, 14);
+            } else {
+                r = Rule.parse(rule);
+            }
+            phase = new Phase(r, 1, Phase.DEFAULT_RADIUS, false);
+            cave = CaveGenerationImpl.Builder.create()
+                    .withSize(size, size)
+                    .withRandomSeed(SEED)
+                    .withBackend(backend)
+                    .build();
+        }
+
+        /** Every round starts from the initial noise. */
+        @Setup(Level.Invocation)
+        public void initializeCave() {
+            cave.initialize();
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class BaselineState {
+        @Param({ "256", "1024" })
+        int size;
+
+        boolean[][] initial;
+        boolean[][] map;
+        boolean[][] bufferMap;
+
+        @Setup(Level.Trial)
+        public void createMaps() {
+            GdxStub.install();
+            CaveGenerationImpl cave = CaveGenerationImpl.Builder.create()
+                    .withSize(size, size)
+                    .withRandomSeed(SEED)
+                    .build();
+            cave.initialize();
+            initial = cave.getMap();
+            map = new boolean[size][size];
+            bufferMap = new boolean[size][size];
+        }
+
+        /** Every round starts from the initial noise. */
+        @Setup(Level.Invocation)
+        public void copyMap() {
+            for (int y = 0; y < size; ++y) {
+                System.arraycopy(initial[y], 0, map[y], 0, size);
+            }
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class ThresholdState {
+        @Param({ "256", "1024" })
+        int size;
+
+        @Param({ "LATTICE", "BIT_PACKED", "SUMMED_AREA" })
+        Backend backend;
+
+        CaveGenerationImpl cave;
+
+        @Setup(Level.Trial)
+        public void createCave() {
+            GdxStub.install();
+            cave = CaveGenerationImpl.Builder.create()
+                    .withSize(size, size)
+                    .withRandomSeed(SEED)
+                    .withBackend(backend)
+                    .build();
+        }
+
+        /** Every round starts from the initial noise. */
+        @Setup(Level.Invocation)
+        public void initializeCave() {
+            cave.initialize();
+        }
+    }
+
+    /**
+     * Returns the version of the map rather than the map, which the
+     * BIT_PACKED backend would have to unpack on every call.
+     */
+    @Benchmark
+    public int step(CaveState state) {
+        state.cave.step(state.phase);
+        return state.cave.getVersion();
+    }
+
+    /**
+     * The same round as step with the threshold rule, through the phase
+     * that step(min, max) keeps for its thresholds.
+     */
+    @Benchmark
+    public int stepThreshold(ThresholdState state) {
+        state.cave.step(5, 2);
+        return state.cave.getVersion();
+    }
+
+    /**
+     * The rule exactly as it was written before rules were compiled.
+     */
+    @Benchmark
+    public boolean[][] hardCoded(BaselineState state) {
+        boolean[][] map = state.map;
+        boolean[][] bufferMap = state.bufferMap;
+        for (int i = 1; i < map.length - 1; ++i) {
+            for (int j = 1; j < map[i].length - 1; ++j) {
+                int count1 = LatticeFns.getNeighborCount(map, i, j);
+                int count2 = LatticeFns.getTwoStepNeighborCount(map, i, j);
+                if (count1 >= 5 || count2 <= 2) {
+                    bufferMap[i][j] = LatticeFns.FILLED;
+                } else {
+                    bufferMap[i][j] = LatticeFns.EMPTY;
+                }
+            }
+        }
+        state.map = bufferMap;
+        state.bufferMap = map;
+        return bufferMap;
+    }
+}
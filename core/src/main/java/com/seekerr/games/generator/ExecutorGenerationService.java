@@ -0,0 +1,94 @@
+package com.seekerr.games.generator;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+import com.badlogic.gdx.Gdx;
+
+/**
+ * Runs the jobs on a pool of worker threads and publishes the levels with
+ * {@link com.badlogic.gdx.Application#postRunnable}, so the callbacks run on
+ * the render thread between frames.  A request that is cancelled while it
+ * waits, while it runs or after it finished but before the render thread
+ * got to it is dropped without calling its callback, so a stale level can
+ * never replace a newer one.
+ *
+ * Uses java.util.concurrent and is therefore excluded from the GWT module.
+ *
+ * @author wkerr
+ *
+ */
+public class ExecutorGenerationService implements GenerationService {
+    /** Tag used for logging purposes. */
+    private static final String TAG = "ExecutorGenerationService";
+
+    private final ExecutorService executor;
+
+    /**
+     * Use one worker per core, leaving one for the render thread.
+     */
+    public ExecutorGenerationService() {
+        this(Math.max(1, Runtime.getRuntime().availableProcessors() - 1));
+    }
+
+    /**
+     * @param threads - the number of levels generated at the same time.
+     */
+    public ExecutorGenerationService(int threads) {
+        this.executor = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "level-generator");
+                // never keep the application alive
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    @Override
+    public <T> GenerationRequest submit(final Job<T> job,
+            final Callback<T> callback) {
+        final GenerationRequest request = new GenerationRequest();
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                if (request.isCancelled()) {
+                    return;
+                }
+                final T level;
+                try {
+                    level = job.generate(request);
+                } catch (RuntimeException e) {
+                    Gdx.app.error(TAG, "Generation failed", e);
+                    request.finish();
+                    return;
+                }
+                if (request.isCancelled()) {
+                    return;
+                }
+                Gdx.app.postRunnable(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (!request.isCancelled()) {
+                            request.finish();
+                            callback.ready(level);
+                        }
+                    }
+                });
+            }
+        });
+        return request;
+    }
+
+    @Override
+    public void update() {
+        // the levels are published through postRunnable.
+    }
+
+    @Override
+    public void dispose() {
+        executor.shutdownNow();
+    }
+}
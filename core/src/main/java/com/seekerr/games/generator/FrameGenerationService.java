@@ -0,0 +1,118 @@
+package com.seekerr.games.generator;
+
+import java.util.LinkedList;
+
+import com.badlogic.gdx.utils.TimeUtils;
+import com.google.common.base.Preconditions;
+
+/**
+ * Runs the jobs on the render thread a slice at a time, for the platforms
+ * without threads.  {@link #update()} gives the jobs a budget of time every
+ * frame, so a level is generated over several frames while the screen keeps
+ * drawing instead of blocking a single frame.  The jobs run one after the
+ * other in the order they were submitted.  A job that is not a
+ * {@link SlicedJob} is run all at once inside of submit, like
+ * {@link SynchronousGenerationService} does.
+ *
+ * @author wkerr
+ *
+ */
+public class FrameGenerationService implements GenerationService {
+    /** About half of a frame at 60 frames a second. */
+    public static final long DEFAULT_BUDGET_NANOS = 8000000L;
+
+    private final long budgetNanos;
+    private final LinkedList<Pending<?>> pending;
+
+    public FrameGenerationService() {
+        this(DEFAULT_BUDGET_NANOS);
+    }
+
+    /**
+     * @param budgetNanos - the time the jobs get every frame.  Each job
+     *          can overrun it by one unit of its work.
+     */
+    public FrameGenerationService(long budgetNanos) {
+        Preconditions.checkArgument(budgetNanos > 0, "budget must be > 0");
+        this.budgetNanos = budgetNanos;
+        this.pending = new LinkedList<Pending<?>>();
+    }
+
+    @Override
+    public <T> GenerationRequest submit(Job<T> job, Callback<T> callback) {
+        GenerationRequest request = new GenerationRequest();
+        if (job instanceof SlicedJob) {
+            pending.addLast(new Pending<T>((SlicedJob<T>) job, callback,
+                    request));
+            return request;
+        }
+        T level = job.generate(request);
+        if (!request.isCancelled()) {
+            request.finish();
+            callback.ready(level);
+        }
+        return request;
+    }
+
+    /**
+     * Run the jobs until the budget of the frame is spent.  The finished
+     * levels are handed to their callbacks from here.
+     */
+    @Override
+    public void update() {
+        long deadline = TimeUtils.nanoTime() + budgetNanos;
+        while (!pending.isEmpty()) {
+            Pending<?> job = pending.getFirst();
+            if (job.request.isCancelled()) {
+                pending.removeFirst();
+                continue;
+            }
+            long left = deadline - TimeUtils.nanoTime();
+            if (left <= 0 || !job.generateFor(left)) {
+                return;
+            }
+            // the callback may submit more jobs.
+            pending.removeFirst();
+            job.publish();
+        }
+    }
+
+    /**
+     * @return the number of jobs that are not done yet.
+     */
+    public int getPending() {
+        return pending.size();
+    }
+
+    @Override
+    public void dispose() {
+        for (Pending<?> job : pending) {
+            job.request.cancel();
+        }
+        pending.clear();
+    }
+
+    private static class Pending<T> {
+        final SlicedJob<T> job;
+        final Callback<T> callback;
+        final GenerationRequest request;
+
+        Pending(SlicedJob<T> job, Callback<T> callback,
+                GenerationRequest request) {
+            this.job = job;
+            this.callback = callback;
+            this.request = request;
+        }
+
+        boolean generateFor(long budgetNanos) {
+            return job.generateFor(budgetNanos, request);
+        }
+
+        void publish() {
+            if (!request.isCancelled()) {
+                request.finish();
+                callback.ready(job.getLevel());
+            }
+        }
+    }
+}
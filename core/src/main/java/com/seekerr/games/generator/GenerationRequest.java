@@ -0,0 +1,84 @@
+package com.seekerr.games.generator;
+
+import com.seekerr.games.procedural.ProgressMonitor;
+
+/**
+ * The handle of a submitted generation job.  The job reports its progress
+ * through it and the screen reads the progress back and cancels the
+ * request when the player asks for another level.  All of the state is
+ * volatile since the job and the screen are usually on different threads.
+ *
+ * @author wkerr
+ *
+ */
+public class GenerationRequest implements ProgressMonitor {
+    private volatile float progress;
+    private volatile boolean cancelled;
+    private volatile boolean done;
+
+    @Override
+    public void setProgress(float fraction) {
+        progress = fraction;
+    }
+
+    /**
+     * @return the fraction of the work done, from 0 to 1.
+     */
+    public float getProgress() {
+        return progress;
+    }
+
+    /**
+     * Stop the job at its next check and drop its result.
+     */
+    public void cancel() {
+        cancelled = true;
+    }
+
+    @Override
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    /**
+     * @return true once the level has been handed to the callback or the
+     *          job failed.
+     */
+    public boolean isDone() {
+        return done;
+    }
+
+    /**
+     * @return true while the job is still running or waiting to publish.
+     */
+    public boolean isPending() {
+        return !done && !cancelled;
+    }
+
+    void finish() {
+        progress = 1;
+        done = true;
+    }
+
+    /**
+     * Return a monitor that maps [0, 1] onto [start, end] of this request,
+     * for jobs that run several generators one after the other.
+     * @param start
+     * @param end
+     * @return
+     */
+    public ProgressMonitor range(final float start, final float end) {
+        return new ProgressMonitor() {
+            @Override
+            public void setProgress(float fraction) {
+                GenerationRequest.this.setProgress(
+                        start + (end - start) * fraction);
+            }
+
+            @Override
+            public boolean isCancelled() {
+                return GenerationRequest.this.isCancelled();
+            }
+        };
+    }
+}
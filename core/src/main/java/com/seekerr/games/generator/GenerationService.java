@@ -0,0 +1,77 @@
+package com.seekerr.games.generator;
+
+/**
+ * Runs level generation away from the code that asked for it.  The finished
+ * level is always handed to the {@link Callback} on the render thread, so a
+ * screen can keep drawing its previous level and swap in the new one inside
+ * the callback without any locking.
+ *
+ * The interface does not depend on any threading classes so that it can be
+ * compiled by GWT, see {@link FrameGenerationService} for the version used
+ * there and ExecutorGenerationService for the desktop.
+ *
+ * @author wkerr
+ *
+ */
+public interface GenerationService {
+
+    /**
+     * Builds a level.  Runs off the render thread, so it must not touch
+     * any GL state or anything the screen is drawing.
+     */
+    public static interface Job<T> {
+        /**
+         * @param request - report progress to it and return early, with
+         *          any value, once it is cancelled.
+         * @return the level.
+         */
+        T generate(GenerationRequest request);
+    }
+
+    /**
+     * A job that can also be run a slice at a time, by the services that
+     * run their jobs on the render thread.  Running it all at once or in
+     * slices gives the same level.
+     */
+    public static interface SlicedJob<T> extends Job<T> {
+        /**
+         * Work on the level for about budgetNanos.
+         * @param budgetNanos
+         * @param request - report progress to it.
+         * @return true once the level is done.
+         */
+        boolean generateFor(long budgetNanos, GenerationRequest request);
+
+        /**
+         * @return the level, once generateFor returned true.
+         */
+        T getLevel();
+    }
+
+    /**
+     * Receives the finished level on the render thread.
+     */
+    public static interface Callback<T> {
+        void ready(T level);
+    }
+
+    /**
+     * Start generating a level.  The callback is not called if the request
+     * is cancelled before the level is published.
+     * @param job
+     * @param callback
+     * @return a handle to follow the progress or cancel the request.
+     */
+    <T> GenerationRequest submit(Job<T> job, Callback<T> callback);
+
+    /**
+     * Do the work that has to happen on the render thread.  Called once a
+     * frame, before the screen renders.
+     */
+    void update();
+
+    /**
+     * Cancel the outstanding requests and release the worker threads.
+     */
+    void dispose();
+}
@@ -0,0 +1,309 @@
+package com.seekerr.games.generator;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.seekerr.games.procedural.Log;
+
+/**
+ * Keeps generated levels so that asking for the same level again skips the
+ * generator.  The generators are deterministic, so a level is known by its
+ * type, the version of its {@link Codec}, the parameters of the generator
+ * and the seed, hashed into one key.
+ *
+ * The levels are kept encoded, the most recently used ones in memory up to
+ * a number of bytes.  The least recently used levels are moved to the
+ * {@link Store} to make room, and are moved back to memory when they are
+ * asked for again.  Every load decodes into a new level, so a screen can
+ * step or reinitialize what it got without changing what is cached.
+ *
+ * Thread safe, the levels are loaded and stored from the generation
+ * threads.
+ *
+ * @author wkerr
+ *
+ */
+public class LevelCache {
+    /** Tag used for logging purposes. */
+    private static final String TAG = "LevelCache";
+
+    public static final long DEFAULT_MAX_BYTES = 16L << 20;
+
+    private static final long FNV_OFFSET = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    /**
+     * Turns one type of level into bytes and back.  Bump the version when
+     * the generator or the encoding changes what a seed turns into, the
+     * levels cached before then are no longer found.
+     */
+    public static interface Codec<T> {
+        String getType();
+
+        int getVersion();
+
+        /**
+         * @return everything besides the seed that decides the level.
+         */
+        String getParams(T level);
+
+        byte[] encode(T level);
+
+        /**
+         * Restore a level that was built with the same parameters.
+         */
+        void decode(byte[] bytes, T level);
+    }
+
+    /**
+     * Where the levels that do not fit in memory go.  Called without the
+     * lock of the cache held, from several threads at once.
+     */
+    public static interface Store {
+        /** Keeps nothing. */
+        public static final Store NONE = new Store() {
+            @Override
+            public byte[] load(String key) {
+                return null;
+            }
+
+            @Override
+            public void store(String key, byte[] level) {
+            }
+        };
+
+        /**
+         * @param key
+         * @return the level, or null if it is not stored.
+         */
+        byte[] load(String key);
+
+        void store(String key, byte[] level);
+    }
+
+    private final long maxBytes;
+    private final Store store;
+    private final LinkedHashMap<String, byte[]> levels;
+    private long bytes;
+
+    private int hits;
+    private int storeHits;
+    private int misses;
+    private int evictions;
+
+    /**
+     * Keep the levels in memory only.
+     * @param maxBytes
+     */
+    public LevelCache(long maxBytes) {
+        this(maxBytes, Store.NONE);
+    }
+
+    /**
+     * @param maxBytes - the most bytes of levels to keep in memory.
+     * @param store - receives the levels that are evicted from memory.
+     */
+    public LevelCache(long maxBytes, Store store) {
+        Preconditions.checkArgument(maxBytes >= 0, "maxBytes must be >= 0");
+        this.maxBytes = maxBytes;
+        this.store = Preconditions.checkNotNull(store);
+        // access order, the eldest entry is the least recently used.
+        this.levels = new LinkedHashMap<String, byte[]>(16, 0.75f, true);
+    }
+
+    /**
+     * Return the canonical key of a level.
+     * @param type
+     * @param version
+     * @param params
+     * @param seed
+     * @return
+     */
+    public static String key(String type, int version, String params,
+            long seed) {
+        String canonical = type + "\n" + version + "\n" + params + "\n" + seed;
+        long hash = FNV_OFFSET;
+        for (int i = 0; i < canonical.length(); ++i) {
+            hash = (hash ^ canonical.charAt(i)) * FNV_PRIME;
+        }
+        // unsigned, so the key is always 16 hex digits.
+        String hex = Long.toHexString(hash);
+        return type + "-" + "0000000000000000".substring(hex.length()) + hex;
+    }
+
+    /**
+     * Restore a level that was stored with the same parameters and seed.
+     * @param level - built with the parameters, but not generated.
+     * @param seed
+     * @param codec
+     * @return true if the level was found and decoded into level.
+     */
+    public <T> boolean load(T level, long seed, Codec<T> codec) {
+        byte[] bytes = get(key(codec, level, seed));
+        if (bytes == null) {
+            return false;
+        }
+        codec.decode(bytes, level);
+        return true;
+    }
+
+    /**
+     * Keep a generated level.
+     * @param level
+     * @param seed
+     * @param codec
+     */
+    public <T> void store(T level, long seed, Codec<T> codec) {
+        put(key(codec, level, seed), codec.encode(level));
+    }
+
+    private static <T> String key(Codec<T> codec, T level, long seed) {
+        return key(codec.getType(), codec.getVersion(),
+                codec.getParams(level), seed);
+    }
+
+    /**
+     * Return the bytes of a level, from memory or from the store.
+     * @param key
+     * @return null if the level is not cached.
+     */
+    public byte[] get(String key) {
+        synchronized (this) {
+            byte[] level = levels.get(key);
+            if (level != null) {
+                ++hits;
+                return level;
+            }
+        }
+        // a level that is being spilled by another thread right now can be
+        // missed here, which only costs generating it again.
+        byte[] level = store.load(key);
+        List<Map.Entry<String, byte[]>> spilled;
+        synchronized (this) {
+            if (level == null) {
+                ++misses;
+                return null;
+            }
+            ++storeHits;
+            spilled = add(key, level);
+        }
+        spill(spilled);
+        return level;
+    }
+
+    /**
+     * Keep the bytes of a level in memory, moving older levels to the
+     * store if they no longer fit.
+     * @param key
+     * @param level
+     */
+    public void put(String key, byte[] level) {
+        List<Map.Entry<String, byte[]>> spilled;
+        synchronized (this) {
+            spilled = add(key, level);
+        }
+        spill(spilled);
+    }
+
+    /**
+     * Add a level to memory and evict the least recently used levels
+     * until it fits.  Must hold the lock.
+     * @return the levels to hand to the store once the lock is released.
+     */
+    private List<Map.Entry<String, byte[]>> add(String key, byte[] level) {
+        List<Map.Entry<String, byte[]>> spilled = Lists.newArrayList();
+        byte[] old = levels.remove(key);
+        if (old != null) {
+            bytes -= old.length;
+        }
+        if (level.length > maxBytes) {
+            spilled.add(Maps.immutableEntry(key, level));
+            return spilled;
+        }
+        levels.put(key, level);
+        bytes += level.length;
+        Iterator<Map.Entry<String, byte[]>> eldest =
+                levels.entrySet().iterator();
+        while (bytes > maxBytes) {
+            Map.Entry<String, byte[]> entry = eldest.next();
+            spilled.add(Maps.immutableEntry(entry.getKey(), entry.getValue()));
+            eldest.remove();
+            bytes -= entry.getValue().length;
+            ++evictions;
+        }
+        if (Log.isDebug()) {
+            Log.debug(TAG, "Cached " + key + ", " + levels.size()
+                    + " levels, " + bytes + " bytes in memory");
+        }
+        return spilled;
+    }
+
+    /**
+     * Hand levels to the store, without holding the lock so that the
+     * other threads are not kept waiting on the disk.
+     */
+    private void spill(List<Map.Entry<String, byte[]>> spilled) {
+        for (Map.Entry<String, byte[]> entry : spilled) {
+            store.store(entry.getKey(), entry.getValue());
+        }
+    }
+
+    /**
+     * Return the number of levels found in memory.
+     * @return
+     */
+    public synchronized int getHits() {
+        return hits;
+    }
+
+    /**
+     * Return the number of levels found in the store.
+     * @return
+     */
+    public synchronized int getStoreHits() {
+        return storeHits;
+    }
+
+    /**
+     * Return the number of levels that were not cached.
+     * @return
+     */
+    public synchronized int getMisses() {
+        return misses;
+    }
+
+    /**
+     * Return the number of levels moved from memory to the store.
+     * @return
+     */
+    public synchronized int getEvictions() {
+        return evictions;
+    }
+
+    /**
+     * Return the bytes of the levels in memory.
+     * @return
+     */
+    public synchronized long getBytes() {
+        return bytes;
+    }
+
+    /**
+     * Return the number of levels in memory.
+     * @return
+     */
+    public synchronized int size() {
+        return levels.size();
+    }
+
+    @Override
+    public synchronized String toString() {
+        return hits + " hits, " + storeHits + " store hits, " + misses
+                + " misses, " + evictions + " evictions";
+    }
+}
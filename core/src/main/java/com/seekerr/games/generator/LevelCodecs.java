@@ -0,0 +1,151 @@
+package com.seekerr.games.generator;
+
+import com.seekerr.games.generator.LevelCache.Codec;
+import com.seekerr.games.procedural.CaveGenerationImpl;
+import com.seekerr.games.procedural.ForestGenerationImpl;
+
+/**
+ * The {@link Codec}s of the generated levels.  The cells are packed in row
+ * major order, a bit a cell for caves and two for forests.  A forest also
+ * keeps its step count and trees in front of the cells, so it can go on
+ * growing.  The size is part of the parameters, so it is not stored.
+ *
+ * The version of each codec combines the ALGORITHM_VERSION of its
+ * generator with {@link #FORMAT_VERSION}, so a change to either one misses
+ * the levels cached before it.
+ *
+ * Only uses what GWT emulates, unlike the codecs of the io package.
+ *
+ * @author wkerr
+ *
+ */
+public final class LevelCodecs {
+    /** Bump whenever the packing below changes. */
+    public static final int FORMAT_VERSION = 2;
+
+    public static final Codec<CaveGenerationImpl> CAVE =
+            new Codec<CaveGenerationImpl>() {
+        @Override
+        public String getType() {
+            return "cave";
+        }
+
+        @Override
+        public int getVersion() {
+            return version(CaveGenerationImpl.ALGORITHM_VERSION);
+        }
+
+        @Override
+        public String getParams(CaveGenerationImpl cave) {
+            return cave.getParams();
+        }
+
+        @Override
+        public byte[] encode(CaveGenerationImpl cave) {
+            boolean[][] map = cave.getMap();
+            int width = map[0].length;
+            byte[] bytes = new byte[(map.length * width + 7) >>> 3];
+            int i = 0;
+            for (boolean[] row : map) {
+                for (int x = 0; x < width; ++x, ++i) {
+                    if (row[x]) {
+                        bytes[i >>> 3] |= 1 << (i & 7);
+                    }
+                }
+            }
+            return bytes;
+        }
+
+        @Override
+        public void decode(byte[] bytes, CaveGenerationImpl cave) {
+            boolean[][] map = new boolean[cave.getHeight()][cave.getWidth()];
+            int i = 0;
+            for (boolean[] row : map) {
+                for (int x = 0; x < row.length; ++x, ++i) {
+                    row[x] = (bytes[i >>> 3] & (1 << (i & 7))) != 0;
+                }
+            }
+            cave.restore(map);
+        }
+    };
+
+    public static final Codec<ForestGenerationImpl> FOREST =
+            new Codec<ForestGenerationImpl>() {
+        @Override
+        public String getType() {
+            return "forest";
+        }
+
+        @Override
+        public int getVersion() {
+            return version(ForestGenerationImpl.ALGORITHM_VERSION);
+        }
+
+        @Override
+        public String getParams(ForestGenerationImpl forest) {
+            return forest.getParams();
+        }
+
+        @Override
+        public byte[] encode(ForestGenerationImpl forest) {
+            byte[][] cells = forest.getForest();
+            int[] trees = forest.getTreeCells();
+            int width = cells[0].length;
+            int header = 4 * (2 + trees.length);
+            byte[] bytes = new byte[header
+                    + ((cells.length * width + 3) >>> 2)];
+            putInt(bytes, 0, forest.getStepCount());
+            putInt(bytes, 4, trees.length);
+            for (int t = 0; t < trees.length; ++t) {
+                putInt(bytes, 8 + 4 * t, trees[t]);
+            }
+            int i = 0;
+            for (byte[] row : cells) {
+                for (int x = 0; x < width; ++x, ++i) {
+                    bytes[header + (i >>> 2)] |=
+                            (row[x] & 3) << ((i & 3) << 1);
+                }
+            }
+            return bytes;
+        }
+
+        @Override
+        public void decode(byte[] bytes, ForestGenerationImpl forest) {
+            int steps = getInt(bytes, 0);
+            int[] trees = new int[getInt(bytes, 4)];
+            for (int t = 0; t < trees.length; ++t) {
+                trees[t] = getInt(bytes, 8 + 4 * t);
+            }
+            int header = 4 * (2 + trees.length);
+            byte[][] decoded =
+                    new byte[forest.getHeight()][forest.getWidth()];
+            int i = 0;
+            for (byte[] row : decoded) {
+                for (int x = 0; x < row.length; ++x, ++i) {
+                    row[x] = (byte) ((bytes[header + (i >>> 2)]
+                            >>> ((i & 3) << 1)) & 3);
+                }
+            }
+            forest.restore(decoded, trees, steps);
+        }
+    };
+
+    private static int version(int algorithmVersion) {
+        return algorithmVersion << 16 | FORMAT_VERSION;
+    }
+
+    private static void putInt(byte[] bytes, int offset, int value) {
+        bytes[offset] = (byte) (value >>> 24);
+        bytes[offset + 1] = (byte) (value >>> 16);
+        bytes[offset + 2] = (byte) (value >>> 8);
+        bytes[offset + 3] = (byte) value;
+    }
+
+    private static int getInt(byte[] bytes, int offset) {
+        return (bytes[offset] & 0xff) << 24 | (bytes[offset + 1] & 0xff) << 16
+                | (bytes[offset + 2] & 0xff) << 8 | (bytes[offset + 3] & 0xff);
+    }
+
+    private LevelCodecs() {
+    }
+}
@@ -0,0 +1,226 @@
+package com.seekerr.games.generator;
+
+import java.util.LinkedList;
+
+import com.google.common.base.Preconditions;
+import com.seekerr.games.generator.GenerationService.Callback;
+import com.seekerr.games.generator.GenerationService.Job;
+import com.seekerr.games.generator.GenerationService.SlicedJob;
+import com.seekerr.games.procedural.Log;
+
+/**
+ * Keeps the next few levels of a screen generating in the background, so
+ * asking for a new level usually just swaps in one that is already done.
+ * Each level gets its own seed, one more than the level before it.
+ *
+ * Asking for a level takes the oldest one off the queue.  If it is ready
+ * that is a hit and the callback is called straight away, otherwise it is
+ * a miss and the callback is called once it is published.  Either way the
+ * queue is topped back up to its depth.  With a depth of 0 every request
+ * is a miss, which is the old behaviour.
+ *
+ * Must only be used from the render thread, which is also where the
+ * {@link GenerationService} publishes the levels.
+ *
+ * @author wkerr
+ *
+ */
+public class LevelPrefetcher<T> {
+    /** Tag used for logging purposes. */
+    private static final String TAG = "LevelPrefetcher";
+
+    /**
+     * Builds the level for a seed.  Called off the render thread.
+     */
+    public static interface Generator<T> {
+        T generate(long seed, GenerationRequest request);
+    }
+
+    /**
+     * Creates the job that builds the level for a seed, for levels that
+     * can be generated a slice at a time.  Called on the render thread, so
+     * the work belongs in the job.
+     */
+    public static interface SlicedGenerator<T> {
+        SlicedJob<T> create(long seed);
+    }
+
+    private final GenerationService service;
+    private final Generator<T> generator;
+    private final SlicedGenerator<T> slicedGenerator;
+    private final int depth;
+
+    private final LinkedList<Slot<T>> queue;
+    /** The slot that was handed out last, it may still be generating. */
+    private Slot<T> current;
+    private long nextSeed;
+
+    private int hits;
+    private int misses;
+
+    /**
+     * @param service
+     * @param depth - the number of levels to generate ahead.
+     * @param seed - the seed of the first level.
+     * @param generator
+     */
+    public LevelPrefetcher(GenerationService service, int depth, long seed,
+            Generator<T> generator) {
+        this(service, depth, seed, Preconditions.checkNotNull(generator),
+                null);
+    }
+
+    /**
+     * @param service
+     * @param depth - the number of levels to generate ahead.
+     * @param seed - the seed of the first level.
+     * @param generator
+     */
+    public LevelPrefetcher(GenerationService service, int depth, long seed,
+            SlicedGenerator<T> generator) {
+        this(service, depth, seed, null,
+                Preconditions.checkNotNull(generator));
+    }
+
+    private LevelPrefetcher(GenerationService service, int depth, long seed,
+            Generator<T> generator, SlicedGenerator<T> slicedGenerator) {
+        Preconditions.checkArgument(depth >= 0, "depth must be >= 0");
+        this.service = service;
+        this.generator = generator;
+        this.slicedGenerator = slicedGenerator;
+        this.depth = depth;
+        this.nextSeed = seed;
+        this.queue = new LinkedList<Slot<T>>();
+    }
+
+    /**
+     * Hand out the next level.  A level that was handed out before and is
+     * still generating is cancelled, its callback will not be called.
+     * @param callback - receives the level on the render thread.
+     * @return the request of the level, use it to show the progress.
+     */
+    public GenerationRequest next(Callback<T> callback) {
+        if (current != null && current.request.isPending()) {
+            current.request.cancel();
+        }
+        boolean hit = !queue.isEmpty() && queue.getFirst().ready;
+        Slot<T> slot = queue.isEmpty() ? submit() : queue.removeFirst();
+        current = slot;
+        if (hit) {
+            ++hits;
+        } else {
+            ++misses;
+        }
+        if (Log.isDebug()) {
+            Log.debug(TAG, (hit ? "Hit" : "Miss") + " for seed " + slot.seed
+                    + ", " + hits + " hits, " + misses + " misses");
+        }
+        slot.callback = callback;
+        if (slot.ready) {
+            publish(slot);
+        }
+        fill();
+        return slot.request;
+    }
+
+    /**
+     * Start generating until depth levels are queued.
+     */
+    private void fill() {
+        while (queue.size() < depth) {
+            queue.addLast(submit());
+        }
+    }
+
+    private Slot<T> submit() {
+        final Slot<T> slot = new Slot<T>(nextSeed++);
+        // a synchronous service publishes from inside of submit, before
+        // anyone is waiting for the slot.
+        Job<T> job;
+        if (slicedGenerator != null) {
+            job = slicedGenerator.create(slot.seed);
+        } else {
+            job = new Job<T>() {
+                @Override
+                public T generate(GenerationRequest request) {
+                    return generator.generate(slot.seed, request);
+                }
+            };
+        }
+        slot.request = service.submit(job, new Callback<T>() {
+            @Override
+            public void ready(T level) {
+                slot.level = level;
+                slot.ready = true;
+                if (slot.callback != null) {
+                    publish(slot);
+                }
+            }
+        });
+        return slot;
+    }
+
+    private void publish(Slot<T> slot) {
+        Callback<T> callback = slot.callback;
+        slot.callback = null;
+        callback.ready(slot.level);
+    }
+
+    /**
+     * Cancel every level that is still generating.
+     */
+    public void cancel() {
+        if (current != null) {
+            current.request.cancel();
+        }
+        for (Slot<T> slot : queue) {
+            slot.request.cancel();
+        }
+        queue.clear();
+    }
+
+    /**
+     * Return the seed of the level handed out last.
+     * @return
+     */
+    public long getSeed() {
+        return current == null ? nextSeed : current.seed;
+    }
+
+    /**
+     * Return the number of levels that were ready when they were asked for.
+     * @return
+     */
+    public int getHits() {
+        return hits;
+    }
+
+    /**
+     * Return the number of levels that were asked for before they were
+     * ready.
+     * @return
+     */
+    public int getMisses() {
+        return misses;
+    }
+
+    /**
+     * Return the number of levels queued, ready or not.
+     * @return
+     */
+    public int getQueued() {
+        return queue.size();
+    }
+
+    private static class Slot<T> {
+        final long seed;
+        GenerationRequest request;
+        T level;
+        boolean ready;
+        Callback<T> callback;
+
+        Slot(long seed) {
+            this.seed = seed;
+        }
+    }
+}
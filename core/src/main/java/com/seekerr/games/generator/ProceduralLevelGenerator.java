@@ -18,6 +18,42 @@ public class ProceduralLevelGenerator implements ApplicationListener {
     private static final String TAG = "ProceduralLevelGenerator";
 
     private DefaultScreen screen;
+    private final GenerationService generationService;
+    private final int prefetchDepth;
+    private final LevelCache levelCache;
+    private final long firstSeed;
+
+    /**
+     * Generate levels on the render thread, only when they are asked for.
+     */
+    public ProceduralLevelGenerator() {
+        this(new SynchronousGenerationService(), 0);
+    }
+
+    /**
+     * Cache the levels in memory only.
+     * @param generationService - where the screens run their generators.
+     * @param prefetchDepth - how many levels each screen generates ahead.
+     */
+    public ProceduralLevelGenerator(GenerationService generationService,
+            int prefetchDepth) {
+        this(generationService, prefetchDepth,
+                new LevelCache(LevelCache.DEFAULT_MAX_BYTES));
+    }
+
+    /**
+     * @param generationService - where the screens run their generators.
+     * @param prefetchDepth - how many levels each screen generates ahead.
+     * @param levelCache - where the screens look for a level before
+     *          generating it.
+     */
+    public ProceduralLevelGenerator(GenerationService generationService,
+            int prefetchDepth, LevelCache levelCache) {
+        this.generationService = generationService;
+        this.prefetchDepth = prefetchDepth;
+        this.levelCache = levelCache;
+        this.firstSeed = System.currentTimeMillis();
+    }
     
     @Override
     public void create() {      
@@ -46,6 +82,27 @@ public class ProceduralLevelGenerator implements ApplicationListener {
         }
     }
 
+    public GenerationService getGenerationService() {
+        return generationService;
+    }
+
+    public int getPrefetchDepth() {
+        return prefetchDepth;
+    }
+
+    public LevelCache getLevelCache() {
+        return levelCache;
+    }
+
+    /**
+     * Return the seed every screen starts from, so that the screens show
+     * the same levels and can share them through the cache.
+     * @return
+     */
+    public long getFirstSeed() {
+        return firstSeed;
+    }
+
     /** @return the currently active {@link Screen}. */
     public Screen getScreen () {
         return screen;
@@ -53,6 +110,7 @@ public class ProceduralLevelGenerator implements ApplicationListener {
     
     @Override
     public void render() {
+        generationService.update();
         if (screen.getChangeScreen()) setScreen(screen.getNewScreen());
         if (screen != null) screen.render(Gdx.graphics.getDeltaTime());
     }
@@ -78,6 +136,8 @@ public class ProceduralLevelGenerator implements ApplicationListener {
     @Override
     public void dispose() {
         if (screen != null) screen.hide();
+        generationService.dispose();
+        Gdx.app.log(TAG, "Level cache: " + levelCache);
         Assets.assetManager.dispose();
     }
 }
@@ -0,0 +1,32 @@
+package com.seekerr.games.generator;
+
+/**
+ * Runs every job on the calling thread before returning, so a frame waits
+ * for the whole level.  The callback is called straight away, so it has to
+ * be submitted from the render thread.  {@link FrameGenerationService}
+ * spreads the jobs over several frames instead.
+ *
+ * @author wkerr
+ *
+ */
+public class SynchronousGenerationService implements GenerationService {
+
+    @Override
+    public <T> GenerationRequest submit(Job<T> job, Callback<T> callback) {
+        GenerationRequest request = new GenerationRequest();
+        T level = job.generate(request);
+        if (!request.isCancelled()) {
+            request.finish();
+            callback.ready(level);
+        }
+        return request;
+    }
+
+    @Override
+    public void update() {
+    }
+
+    @Override
+    public void dispose() {
+    }
+}
@@ -7,10 +7,14 @@ import com.badlogic.gdx.Input.Keys;
 import com.badlogic.gdx.graphics.GL20;
 import com.google.common.collect.Lists;
 import com.seekerr.games.generator.DefaultGameplayInput;
+import com.seekerr.games.generator.GenerationService.Callback;
+import com.seekerr.games.generator.GenerationService.SlicedJob;
+import com.seekerr.games.generator.LevelPrefetcher;
+import com.seekerr.games.generator.LevelPrefetcher.SlicedGenerator;
 import com.seekerr.games.procedural.CaveGenerationImpl;
 import com.seekerr.games.procedural.CaveGenerationImpl.Phase;
-import com.seekerr.games.procedural.LatticeFns;
 import com.seekerr.games.procedural.Line;
+import com.seekerr.games.procedural.MarchingSquares;
 
 /**
  * This screen is for rendering different levels and allowing a graphical
@@ -26,23 +30,20 @@ public class CaveScreen extends DefaultScreen {
 
     private CaveGenerationImpl caveGenerator;
     private List<Line> contour;
+    private LevelPrefetcher<CaveGenerationImpl> prefetcher;
 
     public CaveScreen() {
         super();
     }
 
     private void generateCave() {
-        seed = System.currentTimeMillis();
-        Gdx.app.log(TAG, "generateCave seed: " + seed);
-
-        caveGenerator = CaveGenerationImpl.Builder.create()
-                .withSize(60, 40)
-                .withRandomSeed(seed)
-                .addPhase(5, 2, 4)
-                .addPhase(5, -1, 5)
-                .build();
-        caveGenerator.generate();
-        contour = LatticeFns.getContourLines(caveGenerator.getMap());
+        generate(prefetcher, new Callback<CaveGenerationImpl>() {
+            @Override
+            public void ready(CaveGenerationImpl cave) {
+                caveGenerator = cave;
+                contour = MarchingSquares.getContourLines(cave.getMap());
+            }
+        });
     }
     
     /**
@@ -52,6 +53,26 @@ public class CaveScreen extends DefaultScreen {
         super.initialize();
 
         Gdx.input.setInputProcessor(new CaveGameplayInput(this));
+        prefetcher = createPrefetcher(
+                new SlicedGenerator<CaveGenerationImpl>() {
+            @Override
+            public SlicedJob<CaveGenerationImpl> create(long seed) {
+                final CaveGenerationImpl cave =
+                        CaveGenerationImpl.Builder.create()
+                        .withSize(60, 40)
+                        .withRandomSeed(seed)
+                        .addPhase(5, 2, 4)
+                        .addPhase(5, -1, 5)
+                        .build();
+                return new LevelJob<CaveGenerationImpl>(
+                        LevelJob.cave(cave, seed)) {
+                    @Override
+                    public CaveGenerationImpl getLevel() {
+                        return cave;
+                    }
+                };
+            }
+        });
         generateCave();
     }
 
@@ -60,16 +81,19 @@ public class CaveScreen extends DefaultScreen {
         Gdx.gl.glClearColor(0, 0, 0.0f, 1);
         Gdx.gl.glClear(GL20.GL_COLOR_BUFFER_BIT);
 
+        if (caveGenerator == null) {
+            renderStatus();
+            return;
+        }
+
         camera.update();
         int gridx = width / caveGenerator.getMap()[0].length;
         int gridy = height / caveGenerator.getMap().length;
         int gridSize = Math.min(gridx, gridy);
-        renderSprites(camera, gridSize, caveGenerator.getMap());
+        renderSprites(camera, gridSize, caveGenerator);
         renderContour(camera, gridSize, contour);
 
-        batch.begin();
-        font.draw(batch, "FPS: " + Gdx.graphics.getFramesPerSecond(), 20, 20);
-        batch.end();
+        renderStatus();
     }
     
     class CaveGameplayInput extends DefaultGameplayInput {
@@ -80,6 +104,9 @@ public class CaveScreen extends DefaultScreen {
         
         @Override
         public boolean keyDown(int keyCode) {
+            if (caveGenerator == null && keyCode != Keys.G) {
+                return false;
+            }
             switch (keyCode) {
             case Keys.G:
                 Gdx.app.log(TAG, "Regenerate cave!");
@@ -93,11 +120,11 @@ public class CaveScreen extends DefaultScreen {
                 return true;
             case Keys.NUM_1:
                 Phase params1 = caveGenerator.getPhase(0);
-                caveGenerator.step(params1.getMin(), params1.getMax());
+                caveGenerator.step(params1);
                 return true;
             case Keys.NUM_2:
                 Phase params2 = caveGenerator.getPhase(1);
-                caveGenerator.step(params2.getMin(), params2.getMax());
+                caveGenerator.step(params2);
                 return true;
             }
             return false;
@@ -1,7 +1,5 @@
 package com.seekerr.games.generator.screen;
 
-import static com.seekerr.games.procedural.LatticeFns.FILLED;
-
 import java.util.List;
 
 import com.badlogic.gdx.Gdx;
@@ -12,11 +10,17 @@ import com.badlogic.gdx.graphics.OrthographicCamera;
 import com.badlogic.gdx.graphics.g2d.BitmapFont;
 import com.badlogic.gdx.graphics.g2d.SpriteBatch;
 import com.badlogic.gdx.graphics.g2d.TextureAtlas;
-import com.badlogic.gdx.graphics.g2d.TextureRegion;
 import com.badlogic.gdx.graphics.glutils.ShapeRenderer;
 import com.badlogic.gdx.graphics.glutils.ShapeRenderer.ShapeType;
+import com.google.common.collect.Lists;
 import com.seekerr.games.generator.Assets;
+import com.seekerr.games.generator.GenerationRequest;
+import com.seekerr.games.generator.GenerationService.Callback;
+import com.seekerr.games.generator.LevelPrefetcher;
+import com.seekerr.games.generator.LevelPrefetcher.SlicedGenerator;
+import com.seekerr.games.generator.ProceduralLevelGenerator;
 import com.seekerr.games.generator.screen.ScreenFactory.ScreenEnum;
+import com.seekerr.games.procedural.CaveGenerationImpl;
 import com.seekerr.games.procedural.ForestGenerationImpl;
 import com.seekerr.games.procedural.Line;
 
@@ -46,6 +50,12 @@ public abstract class DefaultScreen implements Screen {
 
     protected ShapeRenderer shapeRenderer;
     protected SpriteBatch spriteBatch;
+    protected TileLayer tileLayer;
+    protected ForestLayer forestLayer;
+
+    /** The level being generated, null when there is none. */
+    protected GenerationRequest request;
+    private List<LevelPrefetcher<?>> prefetchers = Lists.newArrayList();
     
     protected boolean changeScreen = false;
     protected ScreenEnum newScreen = null;
@@ -71,53 +81,41 @@ public abstract class DefaultScreen implements Screen {
 
         Assets.assetManager.load("level-generator.pack", TextureAtlas.class);
         Assets.assetManager.finishLoading();
+
+        TextureAtlas atlas = Assets.assetManager.get("level-generator.pack",
+                TextureAtlas.class);
+        tileLayer = new TileLayer(atlas.findRegion("floor"),
+                atlas.findRegion("wall"));
+        // the rects ignored the alpha of F_GREEN, the texture is blended.
+        forestLayer = new ForestLayer(new Color(F_GREEN.r, F_GREEN.g,
+                F_GREEN.b, 1));
         
         changeScreen = false;
         newScreen = null;
     }
     
     /**
-     * Render the forest map.
+     * Render the forest map.  The forest is baked into a texture that is
+     * only updated when the forest changes, see {@link ForestLayer}.
      * @param camera
      * @param gridSize
-     * @param map
+     * @param forest
      */
-    protected void renderForest(Camera camera, int gridSize, byte[][] map) {
-        shapeRenderer.setProjectionMatrix(camera.combined);
-        shapeRenderer.begin(ShapeType.Filled);
-        shapeRenderer.setColor(F_GREEN);
-
-        for (int i = 0; i < map.length; ++i) {
-            for (int j = 0; j < map[i].length; ++j) {
-
-                float x = j * gridSize;
-                float y = i * gridSize;
-                if (map[i][j] == ForestGenerationImpl.FOREST) {
-                    shapeRenderer.rect(x, y, gridSize, gridSize);
-                }
-            }
-        }
-        shapeRenderer.end();
+    protected void renderForest(Camera camera, int gridSize, ForestGenerationImpl forest) {
+        forestLayer.update(forest);
+        forestLayer.render(spriteBatch, camera, gridSize);
     }
 
-    protected void renderSprites(Camera camera, int gridSize, boolean[][] map) {
-        TextureAtlas atlas = Assets.assetManager.get("level-generator.pack",
-                TextureAtlas.class);
-        TextureRegion floor = atlas.findRegion("floor");
-        TextureRegion wall = atlas.findRegion("wall");
-
-        spriteBatch.setProjectionMatrix(camera.combined);
-        spriteBatch.begin();
-        for (int i = 0; i < map.length; ++i) {
-            for (int j = 0; j < map[i].length; ++j) {
-                float x = j * gridSize;
-                float y = i * gridSize;
-
-                TextureRegion region = map[i][j] == FILLED ? wall : floor;
-                spriteBatch.draw(region, x, y, gridSize, gridSize);
-            }
-        }
-        spriteBatch.end();
+    /**
+     * Render the floor and wall sprites of the cave.  The sprites are only
+     * rebuilt when the cave changes, see {@link TileLayer}.
+     * @param camera
+     * @param gridSize
+     * @param cave
+     */
+    protected void renderSprites(Camera camera, int gridSize, CaveGenerationImpl cave) {
+        tileLayer.update(cave, gridSize);
+        tileLayer.render(camera);
     }
 
     /**
@@ -146,6 +144,61 @@ public abstract class DefaultScreen implements Screen {
     
     
     
+    /**
+     * Create a queue that generates the levels of this screen ahead of
+     * time, as deep as the game allows.  Every screen starts from the same
+     * seed.
+     * @param generator - creates the job of the level for a seed, see
+     *          {@link LevelJob}.
+     * @return
+     */
+    protected <T> LevelPrefetcher<T> createPrefetcher(
+            SlicedGenerator<T> generator) {
+        LevelPrefetcher<T> prefetcher = new LevelPrefetcher<T>(
+                ProceduralLevelGenerator.game.getGenerationService(),
+                ProceduralLevelGenerator.game.getPrefetchDepth(),
+                ProceduralLevelGenerator.game.getFirstSeed(), generator);
+        prefetchers.add(prefetcher);
+        return prefetcher;
+    }
+
+    /**
+     * Show the next level of the queue.  If it was asked for before and is
+     * still generating the earlier level is dropped, so only the newest
+     * level ever reaches a callback.  Until then the screen keeps rendering
+     * what it has.
+     * @param prefetcher
+     * @param callback - swaps the level in, on the render thread.
+     */
+    protected <T> void generate(LevelPrefetcher<T> prefetcher,
+            Callback<T> callback) {
+        request = prefetcher.next(callback);
+        seed = prefetcher.getSeed();
+        Gdx.app.log(TAG, "Level seed: " + seed + ", prefetch hits: "
+                + prefetcher.getHits() + ", misses: " + prefetcher.getMisses()
+                + ", cache: " + ProceduralLevelGenerator.game.getLevelCache());
+    }
+
+    /**
+     * @return true while a level is being generated.
+     */
+    protected boolean isGenerating() {
+        return request != null && request.isPending();
+    }
+
+    /**
+     * Draw the frame rate and the progress of the level being generated.
+     */
+    protected void renderStatus() {
+        batch.begin();
+        font.draw(batch, "FPS: " + Gdx.graphics.getFramesPerSecond(), 20, 20);
+        if (isGenerating()) {
+            font.draw(batch, "Generating "
+                    + (int) (request.getProgress() * 100) + "%", 20, 40);
+        }
+        batch.end();
+    }
+
     @Override
     public void resize(int width, int height) {
         if (this.width == width && this.height == height) {
@@ -184,10 +237,15 @@ public abstract class DefaultScreen implements Screen {
 
     @Override
     public void dispose() {
+        for (LevelPrefetcher<?> prefetcher : prefetchers) {
+            prefetcher.cancel();
+        }
         font.dispose();
         batch.dispose();
         spriteBatch.dispose();
         shapeRenderer.dispose();
+        tileLayer.dispose();
+        forestLayer.dispose();
     }
     
     public boolean getChangeScreen() { 
@@ -0,0 +1,140 @@
+package com.seekerr.games.generator.screen;
+
+import com.badlogic.gdx.graphics.Camera;
+import com.badlogic.gdx.graphics.Color;
+import com.badlogic.gdx.graphics.Pixmap;
+import com.badlogic.gdx.graphics.Pixmap.Blending;
+import com.badlogic.gdx.graphics.Pixmap.Format;
+import com.badlogic.gdx.graphics.Texture;
+import com.badlogic.gdx.graphics.Texture.TextureFilter;
+import com.badlogic.gdx.graphics.g2d.SpriteBatch;
+import com.badlogic.gdx.utils.Disposable;
+import com.seekerr.games.procedural.ForestGenerationImpl;
+import com.seekerr.games.procedural.Log;
+
+/**
+ * The FOREST cells of a forest baked into a texture with one pixel per
+ * cell, so a frame draws a single quad instead of a rect per cell.  Every
+ * other cell is transparent, which lets the layer sit on top of the cave.
+ * When the generator reports a new version only the rows that changed are
+ * uploaded again.
+ *
+ * @author wkerr
+ *
+ */
+public class ForestLayer implements Disposable {
+    /** Tag used for logging purposes. */
+    private static final String TAG = "ForestLayer";
+
+    private final int color;
+
+    private Texture texture;
+    /** A single row of the texture, reused for every upload. */
+    private Pixmap row;
+
+    /** The FOREST cells the texture was built from. */
+    private boolean[][] shown;
+    private ForestGenerationImpl forest;
+    private int version;
+
+    private int rowsUploaded;
+
+    public ForestLayer(Color color) {
+        this.color = Color.rgba8888(color);
+    }
+
+    /**
+     * Bring the texture up to date with the forest.  This is cheap when
+     * nothing changed since the last call, so it can be called every
+     * frame.
+     * @param forest
+     * @return the number of rows that were uploaded.
+     */
+    public int update(ForestGenerationImpl forest) {
+        if (texture != null && forest == this.forest
+                && forest.getVersion() == version) {
+            return 0;
+        }
+        byte[][] map = forest.getForest();
+        int height = map.length;
+        int width = map[0].length;
+        boolean full = texture == null || shown.length != height
+                || shown[0].length != width;
+        if (full) {
+            dispose();
+            texture = new Texture(width, height, Format.RGBA8888);
+            texture.setFilter(TextureFilter.Nearest, TextureFilter.Nearest);
+            row = new Pixmap(width, 1, Format.RGBA8888);
+            shown = new boolean[height][width];
+        }
+
+        // the transparent pixels have to replace what is in the row, not
+        // be blended over it.
+        Blending blending = Pixmap.getBlending();
+        Pixmap.setBlending(Blending.None);
+        int uploaded = 0;
+        for (int i = 0; i < height; ++i) {
+            if (full || rowChanged(map[i], shown[i])) {
+                for (int j = 0; j < width; ++j) {
+                    shown[i][j] = map[i][j] == ForestGenerationImpl.FOREST;
+                    row.drawPixel(j, 0, shown[i][j] ? color : 0);
+                }
+                texture.draw(row, 0, i);
+                ++uploaded;
+            }
+        }
+        Pixmap.setBlending(blending);
+
+        this.forest = forest;
+        this.version = forest.getVersion();
+        rowsUploaded += uploaded;
+        if (uploaded > 0) {
+            Log.debug(TAG, "Uploaded ", uploaded, " rows of ", height);
+        }
+        return uploaded;
+    }
+
+    private static boolean rowChanged(byte[] cells, boolean[] shown) {
+        for (int j = 0; j < cells.length; ++j) {
+            if ((cells[j] == ForestGenerationImpl.FOREST) != shown[j]) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Draw the texture as one quad, gridSize units per cell.
+     * @param batch
+     * @param camera
+     * @param gridSize
+     */
+    public void render(SpriteBatch batch, Camera camera, int gridSize) {
+        int width = texture.getWidth();
+        int height = texture.getHeight();
+        batch.setProjectionMatrix(camera.combined);
+        batch.begin();
+        // the camera is y down, so flip the texture to keep row 0 on top.
+        batch.draw(texture, 0, 0, width * gridSize, height * gridSize,
+                0, 0, width, height, false, true);
+        batch.end();
+    }
+
+    /**
+     * Return the number of rows uploaded since the layer was created.
+     * @return
+     */
+    public int getRowsUploaded() {
+        return rowsUploaded;
+    }
+
+    @Override
+    public void dispose() {
+        if (texture != null) {
+            texture.dispose();
+            row.dispose();
+            texture = null;
+            row = null;
+        }
+    }
+}
@@ -5,6 +5,10 @@ import com.badlogic.gdx.Input.Keys;
 import com.badlogic.gdx.graphics.Color;
 import com.badlogic.gdx.graphics.GL20;
 import com.seekerr.games.generator.DefaultGameplayInput;
+import com.seekerr.games.generator.GenerationService.Callback;
+import com.seekerr.games.generator.GenerationService.SlicedJob;
+import com.seekerr.games.generator.LevelPrefetcher;
+import com.seekerr.games.generator.LevelPrefetcher.SlicedGenerator;
 import com.seekerr.games.procedural.ForestGenerationImpl;
 
 /**
@@ -20,6 +24,7 @@ public class ForestScreen extends DefaultScreen {
     private static final Color F_GREEN = new Color(0, 0.4f, 0, 1);
 
     private ForestGenerationImpl forestGenerator;
+    private LevelPrefetcher<ForestGenerationImpl> prefetcher;
     
     public ForestScreen() {
         width = Gdx.graphics.getWidth();
@@ -27,14 +32,12 @@ public class ForestScreen extends DefaultScreen {
     }
 
     private void generateForest() { 
-        seed = System.currentTimeMillis();
-        forestGenerator = ForestGenerationImpl.Builder.create()
-                .withSize(240, 160)
-                .withRandomSeed(seed)
-                .withInitialTrees(20)
-                .withSeedParams(7, 0.1, 0.05)
-                .build();
-        forestGenerator.generate();
+        generate(prefetcher, new Callback<ForestGenerationImpl>() {
+            @Override
+            public void ready(ForestGenerationImpl forest) {
+                forestGenerator = forest;
+            }
+        });
     }
 
     /**
@@ -46,6 +49,26 @@ public class ForestScreen extends DefaultScreen {
 
         // TODO(wkerr): this is a bug and needs to be moved to show or resume.
         Gdx.input.setInputProcessor(new ForestGameplayInput(this));
+        prefetcher = createPrefetcher(
+                new SlicedGenerator<ForestGenerationImpl>() {
+            @Override
+            public SlicedJob<ForestGenerationImpl> create(long seed) {
+                final ForestGenerationImpl forest =
+                        ForestGenerationImpl.Builder.create()
+                        .withSize(240, 160)
+                        .withRandomSeed(seed)
+                        .withInitialTrees(20)
+                        .withSeedParams(7, 0.1, 0.05)
+                        .build();
+                return new LevelJob<ForestGenerationImpl>(
+                        LevelJob.forest(forest, seed)) {
+                    @Override
+                    public ForestGenerationImpl getLevel() {
+                        return forest;
+                    }
+                };
+            }
+        });
         generateForest();
     }
 
@@ -54,15 +77,18 @@ public class ForestScreen extends DefaultScreen {
         Gdx.gl.glClearColor(0, 0, 0.0f, 1);
         Gdx.gl.glClear(GL20.GL_COLOR_BUFFER_BIT);
 
+        if (forestGenerator == null) {
+            renderStatus();
+            return;
+        }
+
         camera.update();
         int gridx = width / forestGenerator.getForest()[0].length;
         int gridy = height / forestGenerator.getForest().length;
         int gridSize = Math.min(gridx, gridy);
-        renderForest(camera, gridSize, forestGenerator.getForest());
+        renderForest(camera, gridSize, forestGenerator);
 
-        batch.begin();
-        font.draw(batch, "FPS: " + Gdx.graphics.getFramesPerSecond(), 20, 20);
-        batch.end();
+        renderStatus();
     }
 
     class ForestGameplayInput extends DefaultGameplayInput {    
@@ -74,6 +100,9 @@ public class ForestScreen extends DefaultScreen {
         
         @Override
         public boolean keyDown(int keyCode) {
+            if (forestGenerator == null && keyCode != Keys.G) {
+                return false;
+            }
             switch (keyCode) {
             case Keys.G:
                 Gdx.app.log(TAG, "Regenerate forest!");
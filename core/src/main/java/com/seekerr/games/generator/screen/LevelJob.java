@@ -0,0 +1,179 @@
+package com.seekerr.games.generator.screen;
+
+import com.badlogic.gdx.utils.TimeUtils;
+import com.seekerr.games.generator.GenerationRequest;
+import com.seekerr.games.generator.GenerationService.SlicedJob;
+import com.seekerr.games.generator.LevelCache;
+import com.seekerr.games.generator.LevelCodecs;
+import com.seekerr.games.generator.ProceduralLevelGenerator;
+import com.seekerr.games.procedural.CaveGenerationImpl;
+import com.seekerr.games.procedural.ForestGenerationImpl;
+import com.seekerr.games.procedural.ProgressMonitor;
+
+/**
+ * Builds the parts of a level one after the other, all at once on a worker
+ * thread or a slice at a time on the render thread.  Each part is looked
+ * up in the level cache first and is stored there once it is generated.
+ * The progress is split evenly between the parts.
+ *
+ * @author wkerr
+ *
+ */
+abstract class LevelJob<T> implements SlicedJob<T> {
+    private final Part[] parts;
+    private int index;
+
+    /**
+     * @param parts - built, but not generated.
+     */
+    LevelJob(Part... parts) {
+        this.parts = parts;
+    }
+
+    @Override
+    public T generate(GenerationRequest request) {
+        for (; index < parts.length; ++index) {
+            ProgressMonitor monitor = request.range(
+                    (float) index / parts.length,
+                    (float) (index + 1) / parts.length);
+            if (!parts[index].generate(monitor)) {
+                break;
+            }
+        }
+        return getLevel();
+    }
+
+    @Override
+    public boolean generateFor(long budgetNanos, GenerationRequest request) {
+        long deadline = TimeUtils.nanoTime() + budgetNanos;
+        while (index < parts.length) {
+            if (!parts[index].generateFor(deadline - TimeUtils.nanoTime())) {
+                return false;
+            }
+            ++index;
+            request.setProgress((float) index / parts.length);
+            if (TimeUtils.nanoTime() >= deadline) {
+                break;
+            }
+        }
+        return index == parts.length;
+    }
+
+    /**
+     * A cave part of a level.
+     * @param cave - built, but not generated.
+     * @param seed - the seed the cave was built with.
+     * @return
+     */
+    static Part cave(final CaveGenerationImpl cave, long seed) {
+        return new Part(seed) {
+            @Override
+            boolean load(LevelCache cache) {
+                return cache.load(cave, seed, LevelCodecs.CAVE);
+            }
+
+            @Override
+            void store(LevelCache cache) {
+                cache.store(cave, seed, LevelCodecs.CAVE);
+            }
+
+            @Override
+            boolean run(ProgressMonitor monitor) {
+                return cave.generate(monitor);
+            }
+
+            @Override
+            boolean runFor(long budgetNanos) {
+                return cave.generateFor(budgetNanos);
+            }
+        };
+    }
+
+    /**
+     * A forest part of a level.
+     * @param forest - built, but not grown.
+     * @param seed - the seed the forest was built with.
+     * @return
+     */
+    static Part forest(final ForestGenerationImpl forest, long seed) {
+        return new Part(seed) {
+            @Override
+            boolean load(LevelCache cache) {
+                return cache.load(forest, seed, LevelCodecs.FOREST);
+            }
+
+            @Override
+            void store(LevelCache cache) {
+                cache.store(forest, seed, LevelCodecs.FOREST);
+            }
+
+            @Override
+            boolean run(ProgressMonitor monitor) {
+                return forest.generate(monitor);
+            }
+
+            @Override
+            boolean runFor(long budgetNanos) {
+                return forest.generateFor(budgetNanos);
+            }
+        };
+    }
+
+    /**
+     * One generator of a level and its place in the level cache.
+     */
+    abstract static class Part {
+        final long seed;
+        private boolean started;
+
+        Part(long seed) {
+            this.seed = seed;
+        }
+
+        /** @return true if the part was found in the cache. */
+        abstract boolean load(LevelCache cache);
+
+        abstract void store(LevelCache cache);
+
+        /** @return false if the monitor was cancelled. */
+        abstract boolean run(ProgressMonitor monitor);
+
+        /** @return true once the part is generated. */
+        abstract boolean runFor(long budgetNanos);
+
+        /**
+         * Load or generate the whole part.
+         * @return false if the monitor was cancelled.
+         */
+        boolean generate(ProgressMonitor monitor) {
+            LevelCache cache = ProceduralLevelGenerator.game.getLevelCache();
+            if (load(cache)) {
+                return true;
+            }
+            if (!run(monitor)) {
+                return false;
+            }
+            store(cache);
+            return true;
+        }
+
+        /**
+         * Load the part or generate it for about budgetNanos.
+         * @return true once the part is done.
+         */
+        boolean generateFor(long budgetNanos) {
+            LevelCache cache = ProceduralLevelGenerator.game.getLevelCache();
+            if (!started) {
+                started = true;
+                if (load(cache)) {
+                    return true;
+                }
+            }
+            if (!runFor(budgetNanos)) {
+                return false;
+            }
+            store(cache);
+            return true;
+        }
+    }
+}
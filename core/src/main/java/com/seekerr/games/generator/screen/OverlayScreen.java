@@ -1,7 +1,5 @@
 package com.seekerr.games.generator.screen;
 
-import java.util.List;
-
 import com.badlogic.gdx.Gdx;
 import com.badlogic.gdx.Input.Keys;
 import com.badlogic.gdx.graphics.Camera;
@@ -9,11 +7,13 @@ import com.badlogic.gdx.graphics.Color;
 import com.badlogic.gdx.graphics.GL20;
 import com.badlogic.gdx.graphics.glutils.ShapeRenderer.ShapeType;
 import com.seekerr.games.generator.DefaultGameplayInput;
+import com.seekerr.games.generator.GenerationService.Callback;
+import com.seekerr.games.generator.GenerationService.SlicedJob;
+import com.seekerr.games.generator.LevelPrefetcher;
+import com.seekerr.games.generator.LevelPrefetcher.SlicedGenerator;
 import com.seekerr.games.generator.ScreenshotFactory;
 import com.seekerr.games.procedural.CaveGenerationImpl;
 import com.seekerr.games.procedural.ForestGenerationImpl;
-import com.seekerr.games.procedural.LatticeFns;
-import com.seekerr.games.procedural.Point;
 
 /**
  * This screen is for rendering different levels and allowing a graphical
@@ -28,9 +28,9 @@ public class OverlayScreen extends DefaultScreen {
     private static final Color F_GREEN = new Color(0, 0.4f, 0, 1);
 
     private CaveGenerationImpl caveGenerator;
-    private List<Point> contour;
 
     private ForestGenerationImpl forestGenerator;
+    private LevelPrefetcher<Level> prefetcher;
     
     public OverlayScreen() {
         width = Gdx.graphics.getWidth();
@@ -38,33 +38,32 @@ public class OverlayScreen extends DefaultScreen {
     }
     
     private void generateLevel() { 
-        seed = System.currentTimeMillis();
-        Gdx.app.log(TAG, "generateLevel seed: " + seed);
-        
-        generateCave();
-        generateForest();
+        generate(prefetcher, new Callback<Level>() {
+            @Override
+            public void ready(Level level) {
+                // both maps are swapped in together
+                caveGenerator = level.cave;
+                forestGenerator = level.forest;
+            }
+        });
     }
     
-    private void generateCave() {
-        caveGenerator = CaveGenerationImpl.Builder.create()
+    private static CaveGenerationImpl createCave(long seed) {
+        return CaveGenerationImpl.Builder.create()
                 .withSize(60, 40)
                 .withRandomSeed(seed)
                 .addPhase(5, 2, 4)
                 .addPhase(5, -1, 5)
                 .build();
-        caveGenerator.generate();
-        contour = LatticeFns.getContour(caveGenerator.getMap());
     }
 
-    
-    private void generateForest() { 
-        forestGenerator = ForestGenerationImpl.Builder.create()
+    private static ForestGenerationImpl createForest(long seed) {
+        return ForestGenerationImpl.Builder.create()
                 .withSize(240, 160)
                 .withRandomSeed(seed)
                 .withInitialTrees(20)
                 .withSeedParams(7, 0.1, 0.05)
                 .build();
-        forestGenerator.generate();
     }
 
     /**
@@ -76,6 +75,21 @@ public class OverlayScreen extends DefaultScreen {
 
         // TODO(wkerr): this is a bug and needs to be moved to show or resume.
         Gdx.input.setInputProcessor(new OverlayGameplayInput(this));
+        prefetcher = createPrefetcher(new SlicedGenerator<Level>() {
+            @Override
+            public SlicedJob<Level> create(long seed) {
+                final Level level = new Level();
+                level.cave = createCave(seed);
+                level.forest = createForest(seed);
+                return new LevelJob<Level>(LevelJob.cave(level.cave, seed),
+                        LevelJob.forest(level.forest, seed)) {
+                    @Override
+                    public Level getLevel() {
+                        return level;
+                    }
+                };
+            }
+        });
         generateLevel();
     }
 
@@ -84,21 +98,29 @@ public class OverlayScreen extends DefaultScreen {
         Gdx.gl.glClearColor(0, 0, 0.0f, 1);
         Gdx.gl.glClear(GL20.GL_COLOR_BUFFER_BIT);
 
+        if (caveGenerator == null) {
+            renderStatus();
+            return;
+        }
+
         int gridx = width / caveGenerator.getMap()[0].length;
         int gridy = height / caveGenerator.getMap().length;
         int gridSize = Math.min(gridx, gridy);
-        renderSprites(camera, gridSize, caveGenerator.getMap());
-//        renderContour(camera, gridSize, contour);
+        renderSprites(camera, gridSize, caveGenerator);
         
         camera.update();
         gridx = width / forestGenerator.getForest()[0].length;
         gridy = height / forestGenerator.getForest().length;
         gridSize = Math.min(gridx, gridy);
-        renderForest(camera, gridSize, forestGenerator.getForest());
+        renderForest(camera, gridSize, forestGenerator);
+
+        renderStatus();
+    }
 
-        batch.begin();
-        font.draw(batch, "FPS: " + Gdx.graphics.getFramesPerSecond(), 20, 20);
-        batch.end();
+    /** The maps of one level, swapped in together. */
+    private static class Level {
+        CaveGenerationImpl cave;
+        ForestGenerationImpl forest;
     }
 
     class OverlayGameplayInput extends DefaultGameplayInput {    
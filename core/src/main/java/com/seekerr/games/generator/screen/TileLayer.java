@@ -0,0 +1,178 @@
+package com.seekerr.games.generator.screen;
+
+import static com.seekerr.games.procedural.LatticeFns.FILLED;
+
+import com.badlogic.gdx.graphics.Camera;
+import com.badlogic.gdx.graphics.g2d.SpriteCache;
+import com.badlogic.gdx.graphics.g2d.TextureRegion;
+import com.badlogic.gdx.utils.Disposable;
+import com.seekerr.games.procedural.CaveGenerationImpl;
+import com.seekerr.games.procedural.Log;
+
+/**
+ * The floor and wall sprites of a cave, built once into a
+ * {@link SpriteCache} instead of being batched cell by cell every frame.
+ * The map is split into chunks of CHUNK_SIZE x CHUNK_SIZE cells with one
+ * cache each.  When the generator reports a new version only the chunks
+ * whose cells changed are rebuilt, so stepping the automaton by hand does
+ * not redo the whole layer.
+ *
+ * @author wkerr
+ *
+ */
+public class TileLayer implements Disposable {
+    /** Tag used for logging purposes. */
+    private static final String TAG = "TileLayer";
+
+    public static final int CHUNK_SIZE = 64;
+
+    private final TextureRegion floor;
+    private final TextureRegion wall;
+
+    private SpriteCache cache;
+    private int[] cacheIds;
+    private int chunksX;
+    private int chunksY;
+
+    /** The cells the caches were built from. */
+    private boolean[][] shown;
+    private CaveGenerationImpl cave;
+    private int version;
+    private int gridSize;
+
+    private int chunksRebuilt;
+
+    public TileLayer(TextureRegion floor, TextureRegion wall) {
+        this.floor = floor;
+        this.wall = wall;
+    }
+
+    /**
+     * Bring the caches up to date with the cave.  This is cheap when
+     * nothing changed since the last call, so it can be called every
+     * frame.
+     * @param cave
+     * @param gridSize
+     * @return the number of chunks that were rebuilt.
+     */
+    public int update(CaveGenerationImpl cave, int gridSize) {
+        if (cache != null && cave == this.cave && gridSize == this.gridSize
+                && cave.getVersion() == version) {
+            return 0;
+        }
+        boolean[][] map = cave.getMap();
+        int rebuilt = 0;
+        if (cache == null || gridSize != this.gridSize
+                || map.length != shown.length
+                || map[0].length != shown[0].length) {
+            rebuilt = build(map, gridSize);
+        } else {
+            for (int cy = 0; cy < chunksY; ++cy) {
+                for (int cx = 0; cx < chunksX; ++cx) {
+                    if (chunkChanged(map, cx, cy)) {
+                        cache.beginCache(cacheIds[cy * chunksX + cx]);
+                        addChunk(map, cx, cy);
+                        cache.endCache();
+                        ++rebuilt;
+                    }
+                }
+            }
+        }
+        this.cave = cave;
+        this.version = cave.getVersion();
+        this.gridSize = gridSize;
+        chunksRebuilt += rebuilt;
+        if (rebuilt > 0) {
+            Log.debug(TAG, "Rebuilt ", rebuilt, " chunks of ", cacheIds.length);
+        }
+        return rebuilt;
+    }
+
+    /**
+     * Create a new cache holding every chunk of the map.
+     */
+    private int build(boolean[][] map, int gridSize) {
+        if (cache != null) {
+            cache.dispose();
+        }
+        int height = map.length;
+        int width = map[0].length;
+        chunksX = (width + CHUNK_SIZE - 1) / CHUNK_SIZE;
+        chunksY = (height + CHUNK_SIZE - 1) / CHUNK_SIZE;
+        cacheIds = new int[chunksX * chunksY];
+        shown = new boolean[height][width];
+
+        // without indices the cache is not limited to 8191 sprites.
+        cache = new SpriteCache(width * height, false);
+        this.gridSize = gridSize;
+        for (int cy = 0; cy < chunksY; ++cy) {
+            for (int cx = 0; cx < chunksX; ++cx) {
+                cache.beginCache();
+                addChunk(map, cx, cy);
+                cacheIds[cy * chunksX + cx] = cache.endCache();
+            }
+        }
+        return cacheIds.length;
+    }
+
+    private boolean chunkChanged(boolean[][] map, int cx, int cy) {
+        int rowEnd = Math.min(map.length, (cy + 1) * CHUNK_SIZE);
+        int colEnd = Math.min(map[0].length, (cx + 1) * CHUNK_SIZE);
+        for (int i = cy * CHUNK_SIZE; i < rowEnd; ++i) {
+            for (int j = cx * CHUNK_SIZE; j < colEnd; ++j) {
+                if (map[i][j] != shown[i][j]) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Add a sprite for every cell of the chunk to the cache being built.
+     * A chunk always has the same number of sprites, so its cache can be
+     * redefined in place.
+     */
+    private void addChunk(boolean[][] map, int cx, int cy) {
+        int rowEnd = Math.min(map.length, (cy + 1) * CHUNK_SIZE);
+        int colStart = cx * CHUNK_SIZE;
+        int colEnd = Math.min(map[0].length, colStart + CHUNK_SIZE);
+        for (int i = cy * CHUNK_SIZE; i < rowEnd; ++i) {
+            for (int j = colStart; j < colEnd; ++j) {
+                TextureRegion region = map[i][j] == FILLED ? wall : floor;
+                cache.add(region, j * gridSize, i * gridSize, gridSize, gridSize);
+            }
+            System.arraycopy(map[i], colStart, shown[i], colStart,
+                    colEnd - colStart);
+        }
+    }
+
+    /**
+     * Draw every chunk.
+     * @param camera
+     */
+    public void render(Camera camera) {
+        cache.setProjectionMatrix(camera.combined);
+        cache.begin();
+        for (int i = 0; i < cacheIds.length; ++i) {
+            cache.draw(cacheIds[i]);
+        }
+        cache.end();
+    }
+
+    /**
+     * Return the number of chunks rebuilt since the layer was created.
+     * @return
+     */
+    public int getChunksRebuilt() {
+        return chunksRebuilt;
+    }
+
+    @Override
+    public void dispose() {
+        if (cache != null) {
+            cache.dispose();
+            cache = null;
+        }
+    }
+}
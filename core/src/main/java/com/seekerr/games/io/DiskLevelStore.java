@@ -0,0 +1,96 @@
+package com.seekerr.games.io;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+import com.seekerr.games.generator.LevelCache;
+import com.seekerr.games.procedural.Log;
+
+/**
+ * Spills the levels evicted from a {@link LevelCache} into a directory, one
+ * file per key.  A file is written under a temporary name and renamed, so
+ * a level that is only partly written is never loaded, and several threads
+ * can store at once.  The cache is only an optimization, so a level that
+ * cannot be read or written is logged and treated as not stored.
+ *
+ * Uses java.io files and is not part of the GWT module.
+ *
+ * @author wkerr
+ *
+ */
+public class DiskLevelStore implements LevelCache.Store {
+    /** Tag used for logging purposes. */
+    private static final String TAG = "DiskLevelStore";
+
+    private static final String SUFFIX = ".level";
+
+    private final File directory;
+
+    /**
+     * @param directory - created if it does not exist.
+     */
+    public DiskLevelStore(File directory) {
+        this.directory = directory;
+    }
+
+    @Override
+    public byte[] load(String key) {
+        File file = file(key);
+        if (!file.isFile()) {
+            return null;
+        }
+        try {
+            RandomAccessFile raf = new RandomAccessFile(file, "r");
+            try {
+                byte[] level = new byte[(int) raf.length()];
+                raf.readFully(level);
+                return level;
+            } finally {
+                raf.close();
+            }
+        } catch (IOException e) {
+            Log.error(TAG, "Cannot read ", file, e);
+            return null;
+        }
+    }
+
+    @Override
+    public void store(String key, byte[] level) {
+        File file = file(key);
+        File tmp = null;
+        try {
+            if (!directory.isDirectory() && !directory.mkdirs()
+                    && !directory.isDirectory()) {
+                throw new IOException("Cannot create " + directory);
+            }
+            // a name of its own, the same key can be stored from two threads
+            tmp = File.createTempFile(key, ".tmp", directory);
+            FileOutputStream out = new FileOutputStream(tmp);
+            try {
+                out.write(level);
+            } finally {
+                out.close();
+            }
+            // renameTo does not replace on every platform.
+            if (!tmp.renameTo(file)
+                    && !(file.delete() && tmp.renameTo(file))) {
+                throw new IOException("Cannot rename " + tmp + " to " + file);
+            }
+        } catch (IOException e) {
+            Log.error(TAG, "Cannot write ", file, e);
+            if (tmp != null) {
+                tmp.delete();
+            }
+        }
+    }
+
+    private File file(String key) {
+        return new File(directory, key + SUFFIX);
+    }
+
+    public File getDirectory() {
+        return directory;
+    }
+}
@@ -0,0 +1,466 @@
+package com.seekerr.games.io;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.Map;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Maps;
+
+/**
+ * Compresses the level layers for storage.  The layer is cut into bands of
+ * 8 rows and each band into 8x8 tiles.  Every distinct tile goes into a
+ * dictionary the first time it is seen, after that it is written as its
+ * index, and a run of the same tile along a band is written once with its
+ * length.  The dictionary starts out with the tiles that are all one value,
+ * so the solid rock and open ground that make up most of a settled cave
+ * are just runs.
+ *
+ * The layout, after a version byte, the bits per cell and the width and
+ * height as varints, is a sequence of tokens band after band:
+ *
+ * <pre>
+ * varint (run - 1) << 1 | 1, then the new tile, each bit plane in turn
+ * varint (run - 1) << 1 | 0, then varint dictionary index
+ * </pre>
+ *
+ * A new tile is written row by row, a plane is a byte with bit ty set for
+ * each row that differs from the row above it, the row above the first
+ * being 0, followed by those rows a byte each.  The generated layers are
+ * made of blobs, so most rows repeat the one above.
+ *
+ * Bit ty * 8 + tx of a plane holds that bit of the cell at (tx, ty) in the
+ * tile.  Cells past the edge of the layer are 0, unless the plane is all
+ * ones inside of the layer, then they are 1 as well.  Runs do not cross
+ * bands.  The dictionary stops growing at {@link #MAX_TILES}, on both
+ * sides, new tiles after that are still written in full.
+ *
+ * Both directions stream, the encoder only holds one band and the
+ * dictionary, and the decoder writes straight into the grid.  Pass
+ * buffered streams, the codec reads and writes a few bytes at a time.
+ *
+ * @author wkerr
+ *
+ */
+public final class LevelCodec {
+    public static final byte VERSION = 1;
+
+    /** The width and height of a tile. */
+    public static final int TILE = 8;
+
+    public static final int MAX_TILES = 1 << 16;
+
+    private LevelCodec() {
+    }
+
+    /**
+     * Compress a cave map, FILLED cells are 1.
+     * @param map - indexed [y][x].
+     * @param out
+     * @throws IOException
+     */
+    public static void encodeCave(final boolean[][] map, OutputStream out)
+            throws IOException {
+        encode(new TileSource(width(map), map.length, 1) {
+            @Override
+            long plane(int x0, int y0, int plane) {
+                long bits = 0;
+                int rows = Math.min(TILE, height - y0);
+                int columns = Math.min(TILE, width - x0);
+                for (int ty = 0; ty < rows; ++ty) {
+                    boolean[] row = map[y0 + ty];
+                    for (int tx = 0; tx < columns; ++tx) {
+                        if (row[x0 + tx]) {
+                            bits |= 1L << (ty * TILE + tx);
+                        }
+                    }
+                }
+                return bits;
+            }
+        }, out);
+    }
+
+    /**
+     * Decompress a cave into an existing map of the same size.
+     * @param in
+     * @param map - indexed [y][x].
+     * @throws IOException if the stream is not a cave of this size.
+     */
+    public static void decodeCave(InputStream in, final boolean[][] map)
+            throws IOException {
+        decode(in, new TileSink(width(map), map.length, 1) {
+            @Override
+            void fill(int x0, int y0, int columns, int value) {
+                boolean filled = value != 0;
+                int rows = Math.min(TILE, height - y0);
+                for (int ty = 0; ty < rows; ++ty) {
+                    Arrays.fill(map[y0 + ty], x0, x0 + columns, filled);
+                }
+            }
+
+            @Override
+            void set(int x0, int y0, long[] planes, int offset) {
+                long bits = planes[offset];
+                int rows = Math.min(TILE, height - y0);
+                int columns = Math.min(TILE, width - x0);
+                for (int ty = 0; ty < rows; ++ty) {
+                    boolean[] row = map[y0 + ty];
+                    for (int tx = 0; tx < columns; ++tx) {
+                        row[x0 + tx] = ((bits >>> (ty * TILE + tx)) & 1) != 0;
+                    }
+                }
+            }
+        });
+    }
+
+    /**
+     * Compress a forest, cells are the ForestGenerationImpl values 0 to 3.
+     * @param forest - indexed [y][x].
+     * @param out
+     * @throws IOException
+     */
+    public static void encodeForest(final byte[][] forest, OutputStream out)
+            throws IOException {
+        encode(new TileSource(width(forest), forest.length, 2) {
+            @Override
+            long plane(int x0, int y0, int plane) {
+                long bits = 0;
+                int rows = Math.min(TILE, height - y0);
+                int columns = Math.min(TILE, width - x0);
+                for (int ty = 0; ty < rows; ++ty) {
+                    byte[] row = forest[y0 + ty];
+                    for (int tx = 0; tx < columns; ++tx) {
+                        bits |= (long) ((row[x0 + tx] >>> plane) & 1)
+                                << (ty * TILE + tx);
+                    }
+                }
+                return bits;
+            }
+        }, out);
+    }
+
+    /**
+     * Decompress a forest into an existing grid of the same size.
+     * @param in
+     * @param forest - indexed [y][x].
+     * @throws IOException if the stream is not a forest of this size.
+     */
+    public static void decodeForest(InputStream in, final byte[][] forest)
+            throws IOException {
+        decode(in, new TileSink(width(forest), forest.length, 2) {
+            @Override
+            void fill(int x0, int y0, int columns, int value) {
+                int rows = Math.min(TILE, height - y0);
+                for (int ty = 0; ty < rows; ++ty) {
+                    Arrays.fill(forest[y0 + ty], x0, x0 + columns,
+                            (byte) value);
+                }
+            }
+
+            @Override
+            void set(int x0, int y0, long[] planes, int offset) {
+                long low = planes[offset];
+                long high = planes[offset + 1];
+                int rows = Math.min(TILE, height - y0);
+                int columns = Math.min(TILE, width - x0);
+                for (int ty = 0; ty < rows; ++ty) {
+                    byte[] row = forest[y0 + ty];
+                    for (int tx = 0; tx < columns; ++tx) {
+                        int bit = ty * TILE + tx;
+                        row[x0 + tx] = (byte) (((low >>> bit) & 1)
+                                | (((high >>> bit) & 1) << 1));
+                    }
+                }
+            }
+        });
+    }
+
+    private static int width(boolean[][] grid) {
+        Preconditions.checkArgument(grid.length > 0, "empty grid");
+        return grid[0].length;
+    }
+
+    private static int width(byte[][] grid) {
+        Preconditions.checkArgument(grid.length > 0, "empty grid");
+        return grid[0].length;
+    }
+
+    private static void encode(TileSource layer, OutputStream stream)
+            throws IOException {
+        DataOutputStream out = new DataOutputStream(stream);
+        int bits = layer.bits;
+        out.writeByte(VERSION);
+        out.writeByte(bits);
+        writeVarint(out, layer.width);
+        writeVarint(out, layer.height);
+
+        Map<Tile, Integer> dictionary = Maps.newHashMap();
+        for (int value = 0; value < 1 << bits; ++value) {
+            dictionary.put(uniform(value, bits), value);
+        }
+        Tile probe = new Tile(new long[bits]);
+        Tile last = new Tile(new long[bits]);
+        int tiles = (layer.width + TILE - 1) / TILE;
+        for (int y0 = 0; y0 < layer.height; y0 += TILE) {
+            int rows = Math.min(TILE, layer.height - y0);
+            int run = 0;
+            for (int tile = 0; tile < tiles; ++tile) {
+                int x0 = tile * TILE;
+                long mask = mask(Math.min(TILE, layer.width - x0), rows);
+                for (int plane = 0; plane < bits; ++plane) {
+                    long bitsSet = layer.plane(x0, y0, plane);
+                    // a plane that is all ones inside of the layer is
+                    // stored as all ones, so edge tiles still match the
+                    // uniform tiles
+                    probe.planes[plane] = bitsSet == mask ? -1L : bitsSet;
+                }
+                probe.rehash();
+                if (run > 0 && probe.equals(last)) {
+                    ++run;
+                    continue;
+                }
+                if (run > 0) {
+                    writeRun(out, dictionary, last, run);
+                }
+                System.arraycopy(probe.planes, 0, last.planes, 0, bits);
+                last.rehash();
+                run = 1;
+            }
+            writeRun(out, dictionary, last, run);
+        }
+        out.flush();
+    }
+
+    private static void writeRun(DataOutputStream out,
+            Map<Tile, Integer> dictionary, Tile tile, int run)
+            throws IOException {
+        Integer index = dictionary.get(tile);
+        if (index != null) {
+            writeVarint(out, (run - 1) << 1);
+            writeVarint(out, index);
+            return;
+        }
+        writeVarint(out, (run - 1) << 1 | 1);
+        for (long plane : tile.planes) {
+            writePlane(out, plane);
+        }
+        if (dictionary.size() < MAX_TILES) {
+            dictionary.put(new Tile(tile.planes.clone()), dictionary.size());
+        }
+    }
+
+    private static void decode(InputStream stream, TileSink layer)
+            throws IOException {
+        DataInputStream in = new DataInputStream(stream);
+        int bits = layer.bits;
+        int version = in.readByte();
+        if (version != VERSION) {
+            throw new IOException("Unsupported level codec version "
+                    + version);
+        }
+        if (in.readByte() != bits) {
+            throw new IOException("Layer has a different number of bits");
+        }
+        int width = readVarint(in);
+        int height = readVarint(in);
+        if (width != layer.width || height != layer.height) {
+            throw new IOException("Layer is " + width + "x" + height
+                    + ", expected " + layer.width + "x" + layer.height);
+        }
+
+        int uniform = 1 << bits;
+        long[] dictionary = new long[64 * bits];
+        for (int value = 0; value < uniform; ++value) {
+            System.arraycopy(uniform(value, bits).planes, 0, dictionary,
+                    value * bits, bits);
+        }
+        int size = uniform;
+        int tiles = (width + TILE - 1) / TILE;
+        for (int y0 = 0; y0 < height; y0 += TILE) {
+            int tile = 0;
+            while (tile < tiles) {
+                int token = readVarint(in);
+                int run = (token >>> 1) + 1;
+                if (tile + run > tiles) {
+                    throw new IOException("Run past the end of a band");
+                }
+                int index;
+                if ((token & 1) != 0) {
+                    if ((size + 1) * bits > dictionary.length) {
+                        dictionary = Arrays.copyOf(dictionary,
+                                dictionary.length * 2);
+                    }
+                    index = size;
+                    for (int plane = 0; plane < bits; ++plane) {
+                        dictionary[index * bits + plane] = readPlane(in);
+                    }
+                    if (size < MAX_TILES) {
+                        ++size;
+                    }
+                } else {
+                    index = readVarint(in);
+                    if (index >= size) {
+                        throw new IOException("Unknown tile " + index);
+                    }
+                }
+                int x0 = tile * TILE;
+                if (index < uniform) {
+                    layer.fill(x0, y0, Math.min(run * TILE, width - x0), index);
+                } else {
+                    for (int i = 0; i < run; ++i) {
+                        layer.set(x0 + i * TILE, y0, dictionary, index * bits);
+                    }
+                }
+                tile += run;
+            }
+        }
+    }
+
+    private static Tile uniform(int value, int bits) {
+        long[] planes = new long[bits];
+        for (int plane = 0; plane < bits; ++plane) {
+            planes[plane] = ((value >>> plane) & 1) != 0 ? -1L : 0L;
+        }
+        return new Tile(planes);
+    }
+
+    /**
+     * Return the bits of the cells of a tile that are inside the layer.
+     */
+    private static long mask(int columns, int rows) {
+        long row = columns == 64 ? -1L : (1L << columns) - 1;
+        long mask = 0;
+        for (int ty = 0; ty < rows; ++ty) {
+            mask |= row << (ty * TILE);
+        }
+        return mask;
+    }
+
+    private static void writePlane(DataOutputStream out, long plane)
+            throws IOException {
+        int changed = 0;
+        long above = 0;
+        for (int ty = 0; ty < TILE; ++ty) {
+            long row = (plane >>> (ty * TILE)) & 0xff;
+            if (row != above) {
+                changed |= 1 << ty;
+            }
+            above = row;
+        }
+        out.writeByte(changed);
+        for (int ty = 0; ty < TILE; ++ty) {
+            if ((changed & (1 << ty)) != 0) {
+                out.writeByte((int) (plane >>> (ty * TILE)));
+            }
+        }
+    }
+
+    private static long readPlane(DataInputStream in) throws IOException {
+        int changed = in.readUnsignedByte();
+        long plane = 0;
+        long row = 0;
+        for (int ty = 0; ty < TILE; ++ty) {
+            if ((changed & (1 << ty)) != 0) {
+                row = in.readUnsignedByte();
+            }
+            plane |= row << (ty * TILE);
+        }
+        return plane;
+    }
+
+    private static void writeVarint(DataOutputStream out, int value)
+            throws IOException {
+        while ((value & ~0x7f) != 0) {
+            out.writeByte((value & 0x7f) | 0x80);
+            value >>>= 7;
+        }
+        out.writeByte(value);
+    }
+
+    private static int readVarint(DataInputStream in) throws IOException {
+        int value = 0;
+        for (int shift = 0; shift < 32; shift += 7) {
+            int b = in.read();
+            if (b < 0) {
+                throw new EOFException();
+            }
+            value |= (b & 0x7f) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("Malformed varint");
+    }
+
+    /**
+     * The size of a grid of cells and the number of bits in each cell.
+     */
+    private abstract static class Layer {
+        final int width;
+        final int height;
+        final int bits;
+
+        Layer(int width, int height, int bits) {
+            this.width = width;
+            this.height = height;
+            this.bits = bits;
+        }
+    }
+
+    /**
+     * A grid that the encoder reads a tile at a time.
+     */
+    private abstract static class TileSource extends Layer {
+        TileSource(int width, int height, int bits) {
+            super(width, height, bits);
+        }
+
+        /** Return one bit plane of the tile at (x0, y0). */
+        abstract long plane(int x0, int y0, int plane);
+    }
+
+    /**
+     * A grid that the decoder writes a tile or a run of tiles at a time.
+     */
+    private abstract static class TileSink extends Layer {
+        TileSink(int width, int height, int bits) {
+            super(width, height, bits);
+        }
+
+        /** Set columns cells of the band at y0 from x0 on to value. */
+        abstract void fill(int x0, int y0, int columns, int value);
+
+        /** Set the tile at (x0, y0) from the planes at offset. */
+        abstract void set(int x0, int y0, long[] planes, int offset);
+    }
+
+    private static class Tile {
+        final long[] planes;
+        private int hash;
+
+        Tile(long[] planes) {
+            this.planes = planes;
+            rehash();
+        }
+
+        void rehash() {
+            hash = Arrays.hashCode(planes);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            return obj instanceof Tile
+                    && Arrays.equals(planes, ((Tile) obj).planes);
+        }
+    }
+}
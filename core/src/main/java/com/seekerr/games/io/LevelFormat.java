@@ -0,0 +1,74 @@
+package com.seekerr.games.io;
+
+/**
+ * The layout of a binary level file.  Everything is little endian.
+ *
+ * <pre>
+ * header
+ *   int    MAGIC
+ *   short  VERSION
+ *   short  number of sections
+ *   int    width
+ *   int    height
+ *   long   seed
+ *   int    ALGORITHM_VERSION of the generator, since VERSION 2
+ *   short  length, then the UTF-8 bytes of the generator name
+ *   short  length, then the UTF-8 bytes of the generator parameters
+ * section table, starting at the next multiple of 8
+ *   int    section id
+ *   int    reserved, 0
+ *   long   offset of the section from the start of the file
+ *   long   length of the section in bytes
+ * sections, each starting at a multiple of 8
+ * </pre>
+ *
+ * The sections are:
+ *
+ * CAVE - the map packed like {@link
+ * com.seekerr.games.procedural.PackedLatticeFns}, each row is
+ * wordsPerRow(width) longs where bit (x & 63) of word (x >>> 6) is set when
+ * the cell is FILLED.
+ *
+ * FOREST - 2 bits per cell, each row is (width + 31) / 32 longs where bits
+ * 2 * (x & 31) and up of word (x >>> 5) hold the byte value of the cell.
+ *
+ * CONTOURS - int number of contours, then for each an int number of
+ * points, an int that is 1 for holes, and the x, y ints of every point.
+ *
+ * LABELS - the room label of every cell as an int, row by row.
+ *
+ * Rows are padded to whole words, so any row or tile can be read straight
+ * from the file without decoding the rest of it.
+ *
+ * @author wkerr
+ *
+ */
+public final class LevelFormat {
+    /** "SLVL" when read as bytes. */
+    public static final int MAGIC = 0x4c564c53;
+    public static final short VERSION = 2;
+
+    public static final int CAVE = 1;
+    public static final int FOREST = 2;
+    public static final int CONTOURS = 3;
+    public static final int LABELS = 4;
+
+    /** Bytes of one entry in the section table. */
+    static final int SECTION_ENTRY = 24;
+
+    private LevelFormat() {
+    }
+
+    /**
+     * Return the number of longs in a row of the FOREST section.
+     * @param width
+     * @return
+     */
+    public static int forestWordsPerRow(int width) {
+        return (width + 31) >>> 5;
+    }
+
+    static long align(long offset) {
+        return (offset + 7) & ~7L;
+    }
+}
@@ -0,0 +1,422 @@
+package com.seekerr.games.io;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UnsupportedEncodingException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.util.List;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Lists;
+import com.seekerr.games.procedural.MarchingSquares.Contour;
+import com.seekerr.games.procedural.PackedLatticeFns;
+import com.seekerr.games.procedural.Point;
+
+/**
+ * Reads a level in the {@link LevelFormat} through a memory mapped view of
+ * the file.  Opening only reads the header and the section table, the
+ * layers are read from the mapping when they are asked for, so a single
+ * cell, row or tile can be looked at without touching the rest of the
+ * file.  The reads are absolute, so one reader can be shared between
+ * threads.
+ *
+ * Uses java.nio channels and is not part of the GWT module.
+ *
+ * @author wkerr
+ *
+ */
+public class LevelReader implements Closeable {
+    private final RandomAccessFile file;
+    private final ByteBuffer buffer;
+
+    private int width;
+    private int height;
+    private long seed;
+    private int generatorVersion;
+    private String generator;
+    private String params;
+
+    private int caveOffset = -1;
+    private int caveWords;
+    private int forestOffset = -1;
+    private int forestWords;
+    private int contoursOffset = -1;
+    private int labelsOffset = -1;
+
+    private LevelReader(RandomAccessFile file, ByteBuffer buffer) {
+        this.file = file;
+        this.buffer = buffer;
+    }
+
+    /**
+     * Map the file and read its header.
+     * @param file
+     * @return
+     * @throws IOException if the file is not a level, has a newer version
+     *          or has a section that is too short for the size of the level.
+     */
+    public static LevelReader open(File file) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            FileChannel channel = raf.getChannel();
+            Preconditions.checkArgument(channel.size() <= Integer.MAX_VALUE,
+                    "levels are limited to 2GB");
+            ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0,
+                    channel.size());
+            buffer.order(ByteOrder.LITTLE_ENDIAN);
+            LevelReader reader = new LevelReader(raf, buffer);
+            reader.readHeader();
+            return reader;
+        } catch (IOException e) {
+            raf.close();
+            throw e;
+        } catch (RuntimeException e) {
+            raf.close();
+            throw new IOException("Corrupt level " + file, e);
+        }
+    }
+
+    private void readHeader() throws IOException {
+        ByteBuffer header = buffer.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+        try {
+            if (header.getInt() != LevelFormat.MAGIC) {
+                throw new IOException("Not a level file");
+            }
+            short version = header.getShort();
+            if (version > LevelFormat.VERSION) {
+                throw new IOException("Unsupported level version " + version);
+            }
+            int count = header.getShort();
+            width = header.getInt();
+            height = header.getInt();
+            if (width < 0 || height < 0) {
+                throw new IOException("Bad level size " + width + "x"
+                        + height);
+            }
+            seed = header.getLong();
+            if (version >= 2) {
+                generatorVersion = header.getInt();
+            }
+            generator = readString(header);
+            params = readString(header);
+
+            header.position((int) LevelFormat.align(header.position()));
+            for (int i = 0; i < count; ++i) {
+                int id = header.getInt();
+                header.getInt();
+                long offset = header.getLong();
+                long length = header.getLong();
+                if (offset < 0 || length < 0
+                        || offset + length > buffer.capacity()) {
+                    throw new IOException("Section " + id + " out of bounds");
+                }
+                switch (id) {
+                case LevelFormat.CAVE:
+                    caveOffset = (int) offset;
+                    caveWords = PackedLatticeFns.wordsPerRow(width);
+                    checkLength(id, length, 8L * caveWords * height);
+                    break;
+                case LevelFormat.FOREST:
+                    forestOffset = (int) offset;
+                    forestWords = LevelFormat.forestWordsPerRow(width);
+                    checkLength(id, length, 8L * forestWords * height);
+                    break;
+                case LevelFormat.CONTOURS:
+                    contoursOffset = (int) offset;
+                    checkLength(id, length, contoursLength(offset, length));
+                    break;
+                case LevelFormat.LABELS:
+                    labelsOffset = (int) offset;
+                    checkLength(id, length, 4L * width * height);
+                    break;
+                default:
+                    // sections from newer versions are skipped
+                }
+            }
+        } catch (BufferUnderflowException e) {
+            throw new IOException("Truncated level header", e);
+        }
+    }
+
+    private void checkLength(int id, long length, long expected)
+            throws IOException {
+        if (length < expected) {
+            throw new IOException("Section " + id + " is " + length
+                    + " bytes, a " + width + "x" + height + " level needs "
+                    + expected);
+        }
+    }
+
+    /**
+     * Return the bytes the contours need, walking their sizes only as far
+     * as the section goes.
+     */
+    private long contoursLength(long offset, long length)
+            throws IOException {
+        long end = offset + length;
+        long position = offset + 4;
+        if (position > end) {
+            return position - offset;
+        }
+        int count = buffer.getInt((int) offset);
+        for (int i = 0; i < count; ++i) {
+            if (position + 8 > end) {
+                return position + 8 - offset;
+            }
+            int size = buffer.getInt((int) position);
+            if (size < 0) {
+                throw new IOException("Contour " + i + " has " + size
+                        + " points");
+            }
+            position += 8 + 8L * size;
+        }
+        if (count < 0) {
+            throw new IOException(count + " contours");
+        }
+        return position - offset;
+    }
+
+    private static String readString(ByteBuffer header)
+            throws UnsupportedEncodingException {
+        byte[] bytes = new byte[header.getShort()];
+        header.get(bytes);
+        return new String(bytes, "UTF-8");
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    public long getSeed() {
+        return seed;
+    }
+
+    public String getGenerator() {
+        return generator;
+    }
+
+    /**
+     * Return the ALGORITHM_VERSION of the generator, 0 for files from
+     * before it was stored.
+     * @return
+     */
+    public int getGeneratorVersion() {
+        return generatorVersion;
+    }
+
+    public String getParams() {
+        return params;
+    }
+
+    public boolean hasCave() {
+        return caveOffset >= 0;
+    }
+
+    public boolean hasForest() {
+        return forestOffset >= 0;
+    }
+
+    public boolean hasContours() {
+        return contoursOffset >= 0;
+    }
+
+    public boolean hasLabels() {
+        return labelsOffset >= 0;
+    }
+
+    /**
+     * Return the cave cell at (x, y).
+     * @param x
+     * @param y
+     * @return
+     */
+    public boolean isFilled(int x, int y) {
+        long word = buffer.getLong(caveWordOffset(x, y));
+        return ((word >>> (x & 63)) & 1L) != 0;
+    }
+
+    /**
+     * Return the packed words of a cave row, bit (x & 63) of word (x >>> 6)
+     * is set when the cell is FILLED.
+     * @param y
+     * @param words - receives PackedLatticeFns.wordsPerRow(width) words.
+     */
+    public void readCaveRow(int y, long[] words) {
+        int offset = caveWordOffset(0, y);
+        for (int k = 0; k < caveWords; ++k) {
+            words[k] = buffer.getLong(offset + 8 * k);
+        }
+    }
+
+    /**
+     * Read the cells in [x, x + row.length) of a cave row.
+     * @param x
+     * @param y
+     * @param row
+     */
+    public void readCaveRow(int x, int y, boolean[] row) {
+        Preconditions.checkPositionIndexes(x, x + row.length, width);
+        int offset = caveWordOffset(0, y);
+        long word = 0;
+        int loaded = -1;
+        for (int i = 0; i < row.length; ++i) {
+            int column = x + i;
+            if (column >>> 6 != loaded) {
+                loaded = column >>> 6;
+                word = buffer.getLong(offset + 8 * loaded);
+            }
+            row[i] = ((word >>> (column & 63)) & 1L) != 0;
+        }
+    }
+
+    /**
+     * Read a rectangle of the cave.
+     * @param x
+     * @param y
+     * @param tileWidth
+     * @param tileHeight
+     * @return the cells as [row][column] like the generator's map.
+     */
+    public boolean[][] readCaveTile(int x, int y, int tileWidth,
+            int tileHeight) {
+        Preconditions.checkPositionIndexes(y, y + tileHeight, height);
+        boolean[][] tile = new boolean[tileHeight][tileWidth];
+        for (int i = 0; i < tileHeight; ++i) {
+            readCaveRow(x, y + i, tile[i]);
+        }
+        return tile;
+    }
+
+    /**
+     * Decode the whole cave.
+     * @return
+     */
+    public boolean[][] readCave() {
+        return readCaveTile(0, 0, width, height);
+    }
+
+    private int caveWordOffset(int x, int y) {
+        Preconditions.checkState(hasCave(), "level has no cave");
+        Preconditions.checkElementIndex(x, width);
+        Preconditions.checkElementIndex(y, height);
+        return caveOffset + 8 * (y * caveWords + (x >>> 6));
+    }
+
+    /**
+     * Return the forest cell at (x, y), one of the ForestGenerationImpl
+     * cell values.
+     * @param x
+     * @param y
+     * @return
+     */
+    public byte getForest(int x, int y) {
+        long word = buffer.getLong(forestWordOffset(x, y));
+        return (byte) ((word >>> ((x & 31) << 1)) & 3);
+    }
+
+    /**
+     * Read the cells in [x, x + row.length) of a forest row.
+     * @param x
+     * @param y
+     * @param row
+     */
+    public void readForestRow(int x, int y, byte[] row) {
+        Preconditions.checkPositionIndexes(x, x + row.length, width);
+        int offset = forestWordOffset(0, y);
+        long word = 0;
+        int loaded = -1;
+        for (int i = 0; i < row.length; ++i) {
+            int column = x + i;
+            if (column >>> 5 != loaded) {
+                loaded = column >>> 5;
+                word = buffer.getLong(offset + 8 * loaded);
+            }
+            row[i] = (byte) ((word >>> ((column & 31) << 1)) & 3);
+        }
+    }
+
+    /**
+     * Read a rectangle of the forest.
+     * @param x
+     * @param y
+     * @param tileWidth
+     * @param tileHeight
+     * @return
+     */
+    public byte[][] readForestTile(int x, int y, int tileWidth,
+            int tileHeight) {
+        Preconditions.checkPositionIndexes(y, y + tileHeight, height);
+        byte[][] tile = new byte[tileHeight][tileWidth];
+        for (int i = 0; i < tileHeight; ++i) {
+            readForestRow(x, y + i, tile[i]);
+        }
+        return tile;
+    }
+
+    /**
+     * Decode the whole forest.
+     * @return
+     */
+    public byte[][] readForest() {
+        return readForestTile(0, 0, width, height);
+    }
+
+    private int forestWordOffset(int x, int y) {
+        Preconditions.checkState(hasForest(), "level has no forest");
+        Preconditions.checkElementIndex(x, width);
+        Preconditions.checkElementIndex(y, height);
+        return forestOffset + 8 * (y * forestWords + (x >>> 5));
+    }
+
+    /**
+     * Return every contour, holes included.
+     * @return
+     */
+    public List<Contour> readContours() {
+        Preconditions.checkState(hasContours(), "level has no contours");
+        int offset = contoursOffset;
+        int count = buffer.getInt(offset);
+        offset += 4;
+        List<Contour> contours = Lists.newArrayListWithCapacity(count);
+        for (int i = 0; i < count; ++i) {
+            int size = buffer.getInt(offset);
+            boolean hole = buffer.getInt(offset + 4) != 0;
+            offset += 8;
+            List<Point> points = Lists.newArrayListWithCapacity(size);
+            for (int j = 0; j < size; ++j) {
+                points.add(new Point(buffer.getInt(offset),
+                        buffer.getInt(offset + 4)));
+                offset += 8;
+            }
+            contours.add(new Contour(points, hole));
+        }
+        return contours;
+    }
+
+    /**
+     * Return the room label of the cell at (x, y).
+     * @param x
+     * @param y
+     * @return
+     */
+    public int getLabel(int x, int y) {
+        Preconditions.checkState(hasLabels(), "level has no labels");
+        Preconditions.checkElementIndex(x, width);
+        Preconditions.checkElementIndex(y, height);
+        return buffer.getInt(labelsOffset + 4 * (y * width + x));
+    }
+
+    @Override
+    public void close() throws IOException {
+        file.close();
+    }
+}
@@ -0,0 +1,248 @@
+package com.seekerr.games.io;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UnsupportedEncodingException;
+import java.nio.ByteOrder;
+import java.nio.LongBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.List;
+
+import com.google.common.base.Preconditions;
+import com.seekerr.games.procedural.MarchingSquares.Contour;
+import com.seekerr.games.procedural.PackedLatticeFns;
+import com.seekerr.games.procedural.Point;
+import com.seekerr.games.procedural.RoomLabels;
+
+/**
+ * Writes a level in the {@link LevelFormat}.  Every layer is optional,
+ * add the ones the level has and call {@link #write}.
+ *
+ * @author wkerr
+ *
+ */
+public class LevelWriter {
+    private final int width;
+    private final int height;
+    private long seed;
+    private int generatorVersion;
+    private String generator = "";
+    private String params = "";
+
+    private boolean[][] cave;
+    private byte[][] forest;
+    private List<Contour> contours;
+    private RoomLabels labels;
+
+    private LevelWriter(int width, int height) {
+        Preconditions.checkArgument(width > 0 && height > 0,
+                "width and height must be > 0");
+        this.width = width;
+        this.height = height;
+    }
+
+    public static LevelWriter create(int width, int height) {
+        return new LevelWriter(width, height);
+    }
+
+    /**
+     * @param generator - e.g. "cave" or "forest".
+     * @param generatorVersion - the ALGORITHM_VERSION of the generator.
+     * @param params - the builder parameters in a form that can be read
+     *          back, the format does not look into it.
+     * @param seed
+     * @return
+     */
+    public LevelWriter withGenerator(String generator, int generatorVersion,
+            String params, long seed) {
+        this.generator = Preconditions.checkNotNull(generator);
+        this.generatorVersion = generatorVersion;
+        this.params = Preconditions.checkNotNull(params);
+        this.seed = seed;
+        return this;
+    }
+
+    public LevelWriter withCave(boolean[][] map) {
+        checkSize(map.length, map[0].length);
+        this.cave = map;
+        return this;
+    }
+
+    public LevelWriter withForest(byte[][] forest) {
+        checkSize(forest.length, forest[0].length);
+        this.forest = forest;
+        return this;
+    }
+
+    public LevelWriter withContours(List<Contour> contours) {
+        this.contours = contours;
+        return this;
+    }
+
+    public LevelWriter withLabels(RoomLabels labels) {
+        checkSize(labels.getHeight(), labels.getWidth());
+        this.labels = labels;
+        return this;
+    }
+
+    private void checkSize(int rows, int columns) {
+        Preconditions.checkArgument(rows == height && columns == width,
+                "layer is " + columns + "x" + rows + ", level is "
+                + width + "x" + height);
+    }
+
+    /**
+     * Write the level, replacing the file if it exists.
+     * @param file
+     * @return the size of the file in bytes.
+     * @throws IOException
+     */
+    public long write(File file) throws IOException {
+        byte[] generatorBytes = utf8(generator);
+        byte[] paramsBytes = utf8(params);
+
+        int count = (cave != null ? 1 : 0) + (forest != null ? 1 : 0)
+                + (contours != null ? 1 : 0) + (labels != null ? 1 : 0);
+        int[] ids = new int[count];
+        long[] lengths = new long[count];
+        int n = 0;
+        if (cave != null) {
+            ids[n] = LevelFormat.CAVE;
+            lengths[n++] = 8L * PackedLatticeFns.wordsPerRow(width) * height;
+        }
+        if (forest != null) {
+            ids[n] = LevelFormat.FOREST;
+            lengths[n++] = 8L * LevelFormat.forestWordsPerRow(width) * height;
+        }
+        if (contours != null) {
+            long length = 4;
+            for (Contour contour : contours) {
+                length += 8 + 8L * contour.size();
+            }
+            ids[n] = LevelFormat.CONTOURS;
+            lengths[n++] = length;
+        }
+        if (labels != null) {
+            ids[n] = LevelFormat.LABELS;
+            lengths[n++] = 4L * width * height;
+        }
+
+        long tableOffset = LevelFormat.align(32 + generatorBytes.length
+                + paramsBytes.length);
+        long[] offsets = new long[count];
+        long end = tableOffset + (long) LevelFormat.SECTION_ENTRY * count;
+        for (int i = 0; i < count; ++i) {
+            offsets[i] = LevelFormat.align(end);
+            end = offsets[i] + lengths[i];
+        }
+        Preconditions.checkArgument(end <= Integer.MAX_VALUE,
+                "levels are limited to 2GB");
+
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        try {
+            raf.setLength(0);
+            raf.setLength(end);
+            FileChannel channel = raf.getChannel();
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE,
+                    0, end);
+            buffer.order(ByteOrder.LITTLE_ENDIAN);
+
+            buffer.putInt(LevelFormat.MAGIC);
+            buffer.putShort(LevelFormat.VERSION);
+            buffer.putShort((short) count);
+            buffer.putInt(width);
+            buffer.putInt(height);
+            buffer.putLong(seed);
+            buffer.putInt(generatorVersion);
+            buffer.putShort((short) generatorBytes.length);
+            buffer.put(generatorBytes);
+            buffer.putShort((short) paramsBytes.length);
+            buffer.put(paramsBytes);
+
+            buffer.position((int) tableOffset);
+            for (int i = 0; i < count; ++i) {
+                buffer.putInt(ids[i]);
+                buffer.putInt(0);
+                buffer.putLong(offsets[i]);
+                buffer.putLong(lengths[i]);
+            }
+            for (int i = 0; i < count; ++i) {
+                buffer.position((int) offsets[i]);
+                switch (ids[i]) {
+                case LevelFormat.CAVE:
+                    putCave(buffer);
+                    break;
+                case LevelFormat.FOREST:
+                    putForest(buffer);
+                    break;
+                case LevelFormat.CONTOURS:
+                    putContours(buffer);
+                    break;
+                case LevelFormat.LABELS:
+                    putLabels(buffer);
+                    break;
+                }
+            }
+        } finally {
+            raf.close();
+        }
+        return end;
+    }
+
+    private void putCave(MappedByteBuffer buffer) {
+        LongBuffer longs = buffer.asLongBuffer();
+        long[] row = new long[PackedLatticeFns.wordsPerRow(width)];
+        boolean[][] one = new boolean[1][];
+        long[][] packed = new long[][] { row };
+        for (int y = 0; y < height; ++y) {
+            one[0] = cave[y];
+            PackedLatticeFns.pack(one, packed);
+            longs.put(row);
+        }
+    }
+
+    private void putForest(MappedByteBuffer buffer) {
+        LongBuffer longs = buffer.asLongBuffer();
+        int words = LevelFormat.forestWordsPerRow(width);
+        for (int y = 0; y < height; ++y) {
+            byte[] cells = forest[y];
+            for (int w = 0; w < words; ++w) {
+                long word = 0;
+                int end = Math.min(width, (w + 1) << 5);
+                for (int x = w << 5; x < end; ++x) {
+                    word |= (long) (cells[x] & 3) << ((x & 31) << 1);
+                }
+                longs.put(word);
+            }
+        }
+    }
+
+    private void putContours(MappedByteBuffer buffer) {
+        buffer.putInt(contours.size());
+        for (Contour contour : contours) {
+            buffer.putInt(contour.size());
+            buffer.putInt(contour.isHole() ? 1 : 0);
+            for (Point p : contour.getPoints()) {
+                buffer.putInt(p.getX());
+                buffer.putInt(p.getY());
+            }
+        }
+    }
+
+    private void putLabels(MappedByteBuffer buffer) {
+        buffer.asIntBuffer().put(labels.getLabels());
+    }
+
+    static byte[] utf8(String s) {
+        try {
+            byte[] bytes = s.getBytes("UTF-8");
+            Preconditions.checkArgument(bytes.length <= Short.MAX_VALUE,
+                    "string too long");
+            return bytes;
+        } catch (UnsupportedEncodingException e) {
+            throw new AssertionError(e);
+        }
+    }
+}
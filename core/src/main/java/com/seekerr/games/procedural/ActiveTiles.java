@@ -0,0 +1,120 @@
+package com.seekerr.games.procedural;
+
+import java.util.Arrays;
+
+/**
+ * Keeps track of which parts of the map still need to be recomputed by the
+ * cellular automaton.  The map is split into tiles, and a tile is dirty for
+ * the next round only when a cell within the rule's radius changed during
+ * the last round.  Every other cell would just compute the same value again.
+ *
+ * Tiles are one bit-packed word wide so that the packed backend can work on
+ * whole words.
+ *
+ * @author wkerr
+ *
+ */
+class ActiveTiles {
+    static final int TILE_WIDTH = 64;
+    static final int TILE_HEIGHT = 16;
+
+    private int tilesX;
+    private int tilesY;
+
+    private boolean[] dirty;
+    private boolean[] changed;
+
+    private int dirtyCount;
+
+    public ActiveTiles(int width, int height) {
+        this.tilesX = (width + TILE_WIDTH - 1) / TILE_WIDTH;
+        this.tilesY = (height + TILE_HEIGHT - 1) / TILE_HEIGHT;
+        this.dirty = new boolean[tilesX * tilesY];
+        this.changed = new boolean[tilesX * tilesY];
+    }
+
+    public int getTilesX() {
+        return tilesX;
+    }
+
+    public int getTilesY() {
+        return tilesY;
+    }
+
+    /**
+     * Return the number of tiles that will be recomputed this round.
+     * @return
+     */
+    public int getDirtyCount() {
+        return dirtyCount;
+    }
+
+    /**
+     * Force every tile to be recomputed, e.g. after the map was modified
+     * outside of the automaton or the rule changed.
+     */
+    public void markAll() {
+        Arrays.fill(dirty, true);
+        Arrays.fill(changed, false);
+        dirtyCount = dirty.length;
+    }
+
+    public boolean isDirty(int tx, int ty) {
+        return dirty[ty * tilesX + tx];
+    }
+
+    /**
+     * Record whether a dirty tile changed this round.  Different rows of
+     * tiles can be updated from different threads.
+     * @param tx
+     * @param ty
+     * @param value
+     */
+    public void setChanged(int tx, int ty, boolean value) {
+        changed[ty * tilesX + tx] = value;
+    }
+
+    public boolean isChanged(int tx, int ty) {
+        return changed[ty * tilesX + tx];
+    }
+
+    /**
+     * Finish the round.  The tiles that changed, and every tile that has a
+     * cell within radius of them, become the dirty tiles for the next round.
+     * @param radius
+     * @return the number of tiles that changed this round.
+     */
+    public int advance(int radius) {
+        int reachX = (radius + TILE_WIDTH - 1) / TILE_WIDTH;
+        int reachY = (radius + TILE_HEIGHT - 1) / TILE_HEIGHT;
+
+        Arrays.fill(dirty, false);
+        int changedCount = 0;
+        for (int ty = 0; ty < tilesY; ++ty) {
+            for (int tx = 0; tx < tilesX; ++tx) {
+                if (!changed[ty * tilesX + tx]) {
+                    continue;
+                }
+                ++changedCount;
+                int y0 = Math.max(0, ty - reachY);
+                int y1 = Math.min(tilesY - 1, ty + reachY);
+                int x0 = Math.max(0, tx - reachX);
+                int x1 = Math.min(tilesX - 1, tx + reachX);
+                for (int y = y0; y <= y1; ++y) {
+                    for (int x = x0; x <= x1; ++x) {
+                        dirty[y * tilesX + x] = true;
+                    }
+                }
+            }
+        }
+        Arrays.fill(changed, false);
+
+        dirtyCount = 0;
+        for (int i = 0; i < dirty.length; ++i) {
+            if (dirty[i]) {
+                ++dirtyCount;
+            }
+        }
+        return changedCount;
+    }
+}
@@ -0,0 +1,42 @@
+package com.seekerr.games.procedural;
+
+/**
+ * Runs a task over a range of rows, possibly splitting the range into
+ * bands that are processed at the same time.  {@link #execute} does not
+ * return until every band has finished, so callers can treat it as a
+ * barrier between rounds.
+ *
+ * The interface itself does not depend on any threading classes so that the
+ * generators can still be compiled by GWT, see {@link ForkJoinBandExecutor}
+ * for the multi-threaded version.
+ *
+ * @author wkerr
+ *
+ */
+public interface BandExecutor {
+
+    /**
+     * Work on the rows in [start, end).
+     */
+    public static interface Task {
+        void run(int start, int end);
+    }
+
+    /** Runs the whole range on the calling thread. */
+    public static final BandExecutor SERIAL = new BandExecutor() {
+        @Override
+        public void execute(int start, int end, Task task) {
+            if (start < end) {
+                task.run(start, end);
+            }
+        }
+    };
+
+    /**
+     * Run the task over every row in [start, end) and wait for it to finish.
+     * @param start
+     * @param end
+     * @param task
+     */
+    void execute(int start, int end, Task task);
+}
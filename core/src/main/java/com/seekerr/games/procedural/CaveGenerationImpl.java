@@ -6,13 +6,15 @@ import static com.seekerr.games.procedural.LatticeFns.FILLED;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.List;
+import java.util.Map;
 import java.util.Random;
 import java.util.Set;
 
-import com.badlogic.gdx.Gdx;
+import com.badlogic.gdx.utils.TimeUtils;
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Preconditions;
 import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
 
 /**
  * This is the implementation of a cave generation algorithm detailed:
@@ -31,20 +33,74 @@ public class CaveGenerationImpl {
     /** Tag used for logging purposes. */
     private static final String TAG = "CaveGenerationImpl";
 
+    /**
+     * Bump whenever a change makes the same seed and parameters generate a
+     * different map, so that stored and cached caves from before are told
+     * apart.
+     */
+    public static final int ALGORITHM_VERSION = 1;
+
     private long seed;
     private Random random;
 
     private boolean[][] map;
     private boolean[][] bufferMap;
 
+    private Backend backend;
+    private BandExecutor executor;
+
+    /** Bit-packed copies of map and bufferMap used by BIT_PACKED. */
+    private long[][] packedMap;
+    private long[][] packedBuffer;
+    private long[] interiorMask;
+    /** True when packedMap holds a newer state than map. */
+    private boolean mapStale;
+
+    /** Integral image of map used by SUMMED_AREA. */
+    private SummedAreaTable summedArea;
+
+    /** Only recompute the tiles whose neighborhood changed last round. */
+    private boolean activeTracking;
+    private ActiveTiles activeTiles;
+    /** The rule that activeTiles was computed for, null forces a full round. */
+    private RuleTable activeRule;
+    private int roundsSaved;
+
+    /** Bumped every time the map may have changed. */
+    private int version;
+
+    /** The map for the debug log, only built when debug is on. */
+    private final Log.Message mapDump = new Log.Message() {
+        @Override
+        public String get() {
+            return "\n" + CaveGenerationImpl.toString(getMap());
+        }
+    };
+
+    /** Where generateFor resumes. */
+    private Stage stage;
+    private int phaseIndex;
+    private int round;
+    private RoomLabels rooms;
+    private List<Integer> roomOrder;
+    private int roomIndex;
+
     private int width;
     private int height;
+    /** Chance of an interior cell starting out FILLED. */
+    private double fillProbability;
 
     private List<Phase> phases;
+    /** The phases of step(min, max), so each rule is only compiled once. */
+    private final Map<Long, Phase> thresholdPhases = Maps.newHashMap();
 
     private CaveGenerationImpl() {
         this.seed = 7;
+        this.fillProbability = 0.4;
         this.phases = Lists.newArrayList();
+        this.backend = Backend.LATTICE;
+        this.executor = BandExecutor.SERIAL;
+        this.stage = Stage.NEW;
     }
 
     /**
@@ -53,9 +109,56 @@ public class CaveGenerationImpl {
      * @return
      */
     public boolean[][] getMap() {
+        syncMap();
         return map;
     }
 
+    /**
+     * Bring the boolean map up to date with the packed copy.
+     */
+    private void syncMap() {
+        if (mapStale) {
+            PackedLatticeFns.unpack(packedMap, map);
+            mapStale = false;
+        }
+    }
+
+    /**
+     * Return a number that changes every time the map does, so that
+     * renderers can tell when what they built from {@link #getMap()} is
+     * out of date.  Rounds that leave the map as it was may still bump it.
+     * @return
+     */
+    public int getVersion() {
+        return version;
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    public Backend getBackend() {
+        return backend;
+    }
+
+    public boolean isActiveTracking() {
+        return activeTracking;
+    }
+
+    /**
+     * Return the number of rounds that phases run with
+     * {@link Phase#isUntilStable()} skipped because the map stopped
+     * changing during the last call to {@link #iterate()}.
+     * @return
+     */
+    public int getRoundsSaved() {
+        return roundsSaved;
+    }
+
     /**
      * Return the parameters for the phase.
      * 
@@ -81,68 +184,486 @@ public class CaveGenerationImpl {
                     continue;
                 }
 
-                if (random.nextDouble() < 0.4) {
+                if (random.nextDouble() < fillProbability) {
                     map[i][j] = FILLED;
                 }
             }
         }
-        Gdx.app.debug(TAG, "Initial");
-        Gdx.app.debug(TAG, toString(map));
+        packedMap = null;
+        packedBuffer = null;
+        mapStale = false;
+        activeRule = null;
+        ++version;
+
+        Log.debug(TAG, "Initial");
+        Log.debug(TAG, mapDump);
     }
 
     public void step(int minCount, int maxCount) {
+        Long key = (long) minCount << 32 | (maxCount & 0xffffffffL);
+        Phase phase = thresholdPhases.get(key);
+        if (phase == null) {
+            phase = new Phase(minCount, maxCount, 1);
+            thresholdPhases.put(key, phase);
+        }
+        step(phase);
+    }
+
+    /**
+     * Perform a single round of the cellular automaton with the rule and
+     * radius from the given phase.
+     * @param phase
+     */
+    public void step(Phase phase) {
+        RuleTable table = phase.table;
         // if we haven't called initialize yet
         // go ahead and do it it ourselves.
         if (bufferMap == null) {
             initialize();
         }
-        boolean[][] tmpMap;
-        for (int i = 1; i < height - 1; ++i) {
-            for (int j = 1; j < width - 1; ++j) {
+        // every cell is recomputed here, so whatever activeTiles knew
+        // about the last round no longer holds.
+        activeRule = null;
+        ++version;
+
+        // the packed counters are hard wired for the 5x5 neighborhood, so
+        // any other radius is handed to the summed area table instead.
+        if (usePacked(table)) {
+            stepPacked(table);
+            return;
+        }
+        syncMap();
+        packedMap = null;
+
+        if (backend == Backend.LATTICE) {
+            stepLattice(table);
+        } else {
+            stepSummedArea(table);
+        }
+        boolean[][] tmpMap = map;
+        map = bufferMap;
+        bufferMap = tmpMap;
+    }
+
+    private void stepLattice(final RuleTable table) {
+        executor.execute(1, height - 1, new BandExecutor.Task() {
+            @Override
+            public void run(int start, int end) {
+                computeLattice(table, start, end, 1, width - 1);
+            }
+        });
+    }
+
+    /**
+     * Write the next state of the cells in rows [rowStart, rowEnd) and
+     * columns [colStart, colEnd) into bufferMap.
+     * @return true if any of the cells changed.
+     */
+    private boolean computeLattice(RuleTable table,
+            int rowStart, int rowEnd, int colStart, int colEnd) {
+        int radius = table.getRadius();
+        boolean changed = false;
+        for (int i = rowStart; i < rowEnd; ++i) {
+            for (int j = colStart; j < colEnd; ++j) {
                 int count1 = LatticeFns.getNeighborCount(map, i, j);
-                int count2 = LatticeFns.getTwoStepNeighborCount(map, i, j);
-                if (count1 >= minCount || count2 <= maxCount) {
-                    bufferMap[i][j] = FILLED;
-                } else {
-                    bufferMap[i][j] = EMPTY;
+                int count2 = radius == Phase.DEFAULT_RADIUS
+                        ? LatticeFns.getTwoStepNeighborCount(map, i, j)
+                        : LatticeFns.getRadiusNeighborCount(map, i, j, radius);
+                boolean value = table.isFilled(map[i][j], count1, count2);
+                bufferMap[i][j] = value;
+                changed |= value != map[i][j];
+            }
+        }
+        return changed;
+    }
+
+    /**
+     * Same as {@link #stepLattice(RuleTable)}, but the counts are read from
+     * an integral image that is built once per round, so each cell costs the
+     * same no matter how large the radius is.
+     * @param table
+     */
+    private void stepSummedArea(final RuleTable table) {
+        if (summedArea == null) {
+            summedArea = new SummedAreaTable(width, height);
+        }
+        summedArea.build(map);
+
+        executor.execute(1, height - 1, new BandExecutor.Task() {
+            @Override
+            public void run(int start, int end) {
+                computeSummedArea(table, start, end, 1, width - 1);
+            }
+        });
+    }
+
+    /**
+     * Same as {@link #computeLattice} but the counts are read from the
+     * summed area table, which must already be built from map.
+     * @return true if any of the cells changed.
+     */
+    private boolean computeSummedArea(RuleTable table,
+            int rowStart, int rowEnd, int colStart, int colEnd) {
+        int radius = table.getRadius();
+        boolean changed = false;
+        for (int i = rowStart; i < rowEnd; ++i) {
+            for (int j = colStart; j < colEnd; ++j) {
+                int count1 = summedArea.getNeighborCount(i, j, 1);
+                int count2 = summedArea.getRadiusNeighborCount(i, j, radius);
+                boolean value = table.isFilled(map[i][j], count1, count2);
+                bufferMap[i][j] = value;
+                changed |= value != map[i][j];
+            }
+        }
+        return changed;
+    }
+
+    /**
+     * Same as {@link #stepLattice(RuleTable)}, but computed on the
+     * bit-packed copy of the map 64 cells at a time.  The boolean map is
+     * only brought up to date when someone asks for it through
+     * {@link #getMap()}.
+     * @param table
+     */
+    private void stepPacked(final RuleTable table) {
+        ensurePacked();
+        executor.execute(0, height, new BandExecutor.Task() {
+            @Override
+            public void run(int start, int end) {
+                stepPacked(table, start, end, 0, interiorMask.length);
+            }
+        });
+
+        long[][] tmpMap = packedMap;
+        packedMap = packedBuffer;
+        packedBuffer = tmpMap;
+        mapStale = true;
+    }
+
+    /**
+     * Threshold rules are evaluated with the bitwise comparators, any other
+     * rule reads the packed counts one cell at a time from its table.
+     */
+    private void stepPacked(RuleTable table, int rowStart, int rowEnd,
+            int wordStart, int wordEnd) {
+        if (table.getRule() instanceof Rule.Threshold) {
+            Rule.Threshold rule = (Rule.Threshold) table.getRule();
+            PackedLatticeFns.step(packedMap, packedBuffer, interiorMask,
+                    rule.getMin(), rule.getMax(), rowStart, rowEnd,
+                    wordStart, wordEnd);
+        } else {
+            PackedLatticeFns.step(packedMap, packedBuffer, interiorMask,
+                    table, rowStart, rowEnd, wordStart, wordEnd);
+        }
+    }
+
+    private boolean usePacked(RuleTable table) {
+        return backend == Backend.BIT_PACKED
+                && table.getRadius() == Phase.DEFAULT_RADIUS;
+    }
+
+    private void ensurePacked() {
+        if (packedMap == null) {
+            packedMap = PackedLatticeFns.pack(map);
+            packedBuffer = PackedLatticeFns.pack(map);
+            interiorMask = PackedLatticeFns.interiorMask(width);
+        }
+    }
+
+    /**
+     * Perform a single round of the cellular automaton, but only recompute
+     * the tiles that had a cell change within the radius during the last
+     * round.  The first round after the map or the rule changes recomputes
+     * every tile.  Changed tiles are copied back into the map in place, so
+     * the untouched tiles never have to be copied.
+     * @param phase
+     * @return the number of tiles that changed.
+     */
+    @VisibleForTesting int stepActive(Phase phase) {
+        if (bufferMap == null) {
+            initialize();
+        }
+        final RuleTable table = phase.table;
+
+        if (activeTiles == null) {
+            activeTiles = new ActiveTiles(width, height);
+        }
+        if (activeRule == null || activeRule.getRadius() != table.getRadius()
+                || !activeRule.getRule().equals(table.getRule())) {
+            activeTiles.markAll();
+            activeRule = table;
+        }
+        if (activeTiles.getDirtyCount() == 0) {
+            return 0;
+        }
+
+        final boolean packed = usePacked(table);
+        if (packed) {
+            ensurePacked();
+        } else {
+            syncMap();
+            packedMap = null;
+            if (backend == Backend.SUMMED_AREA || backend == Backend.BIT_PACKED) {
+                if (summedArea == null) {
+                    summedArea = new SummedAreaTable(width, height);
                 }
+                summedArea.build(map);
             }
         }
-        tmpMap = map;
-        map = bufferMap;
-        bufferMap = tmpMap;
+
+        executor.execute(0, activeTiles.getTilesY(), new BandExecutor.Task() {
+            @Override
+            public void run(int start, int end) {
+                for (int ty = start; ty < end; ++ty) {
+                    for (int tx = 0; tx < activeTiles.getTilesX(); ++tx) {
+                        if (activeTiles.isDirty(tx, ty)) {
+                            activeTiles.setChanged(tx, ty, packed
+                                    ? computePackedTile(table, tx, ty)
+                                    : computeTile(table, tx, ty));
+                        }
+                    }
+                }
+            }
+        });
+
+        // every tile has been computed from the old map, so now it is safe
+        // to write the changes back.
+        boolean changed = false;
+        for (int ty = 0; ty < activeTiles.getTilesY(); ++ty) {
+            int rowStart = ty * ActiveTiles.TILE_HEIGHT;
+            int rowEnd = Math.min(height, rowStart + ActiveTiles.TILE_HEIGHT);
+            for (int tx = 0; tx < activeTiles.getTilesX(); ++tx) {
+                if (!activeTiles.isChanged(tx, ty)) {
+                    continue;
+                }
+                changed = true;
+                int colStart = tx * ActiveTiles.TILE_WIDTH;
+                int colEnd = Math.min(width, colStart + ActiveTiles.TILE_WIDTH);
+                for (int i = rowStart; i < rowEnd; ++i) {
+                    if (packed) {
+                        packedMap[i][tx] = packedBuffer[i][tx];
+                    } else {
+                        System.arraycopy(bufferMap[i], colStart, map[i],
+                                colStart, colEnd - colStart);
+                    }
+                }
+            }
+        }
+        if (packed) {
+            mapStale = true;
+        }
+        if (changed) {
+            ++version;
+        }
+        return activeTiles.advance(table.getRadius());
+    }
+
+    /**
+     * Compute the interior cells of the tile into bufferMap.
+     * @return true if any of the cells changed.
+     */
+    private boolean computeTile(RuleTable table, int tx, int ty) {
+        int rowStart = Math.max(1, ty * ActiveTiles.TILE_HEIGHT);
+        int rowEnd = Math.min(height - 1, (ty + 1) * ActiveTiles.TILE_HEIGHT);
+        int colStart = Math.max(1, tx * ActiveTiles.TILE_WIDTH);
+        int colEnd = Math.min(width - 1, (tx + 1) * ActiveTiles.TILE_WIDTH);
+        if (backend == Backend.LATTICE) {
+            return computeLattice(table, rowStart, rowEnd, colStart, colEnd);
+        }
+        return computeSummedArea(table, rowStart, rowEnd, colStart, colEnd);
+    }
+
+    /**
+     * Compute the word of the tile into packedBuffer.  A tile is exactly
+     * one word wide.
+     * @return true if any of the cells changed.
+     */
+    private boolean computePackedTile(RuleTable table, int tx, int ty) {
+        int rowStart = ty * ActiveTiles.TILE_HEIGHT;
+        int rowEnd = Math.min(height, rowStart + ActiveTiles.TILE_HEIGHT);
+        stepPacked(table, rowStart, rowEnd, tx, tx + 1);
+        for (int i = rowStart; i < rowEnd; ++i) {
+            if (packedBuffer[i][tx] != packedMap[i][tx]) {
+                return true;
+            }
+        }
+        return false;
     }
 
     public void iterate() { 
+        iterate(ProgressMonitor.NONE);
+    }
+
+    /**
+     * Run every phase, reporting the fraction of rounds done after each
+     * round.
+     * @param monitor
+     * @return false if the monitor cancelled before all rounds were run.
+     */
+    public boolean iterate(ProgressMonitor monitor) { 
+        startRounds();
+        int total = 0;
         for (Phase p : phases) {
-            for (int i = 0; i < p.rounds; ++i) {
-                step(p.min, p.max);
-                Gdx.app.debug(TAG, "Round: " + i);
-                Gdx.app.debug(TAG, "\n" + toString(map));
+            total += p.rounds;
+        }
+        while (!monitor.isCancelled()) {
+            if (!nextRound()) {
+                return true;
             }
+            monitor.setProgress((float) getRoundsDone() / total);
+        }
+        return false;
+    }
+
+    private void startRounds() {
+        roundsSaved = 0;
+        phaseIndex = 0;
+        round = 0;
+    }
+
+    /**
+     * Run the next round of the current phase.  A phase that became stable
+     * skips its remaining rounds.
+     * @return false if every phase was already done.
+     */
+    private boolean nextRound() {
+        while (phaseIndex < phases.size()
+                && round >= phases.get(phaseIndex).rounds) {
+            ++phaseIndex;
+            round = 0;
         }
+        if (phaseIndex == phases.size()) {
+            return false;
+        }
+        Phase p = phases.get(phaseIndex);
+        boolean active = activeTracking || p.untilStable;
+        if (!active) {
+            step(p);
+        } else if (stepActive(p) == 0 && p.untilStable) {
+            int saved = p.rounds - round - 1;
+            roundsSaved += saved;
+            Log.debug(TAG, "Stable after round ", round, ", rounds saved: ",
+                    saved);
+            round = p.rounds;
+            return true;
+        }
+        Log.debug(TAG, "Round: ", round);
+        Log.debug(TAG, mapDump);
+        ++round;
+        return true;
+    }
+
+    /**
+     * Return the number of rounds run or skipped so far.
+     */
+    private int getRoundsDone() {
+        int done = round;
+        for (int i = 0; i < phaseIndex; ++i) {
+            done += phases.get(i).rounds;
+        }
+        return done;
     }
     
     @VisibleForTesting void fixRooms() { 
-        List<Set<Point>> rooms = LatticeFns.getRooms(map, EMPTY);
-        Collections.sort(rooms, new Comparator<Set<Point>>() {
+        startFixRooms();
+        while (fixNextRoom()) {
+        }
+    }
+
+    /**
+     * Label the rooms and order them from largest to smallest, every room
+     * but the largest is then fixed one at a time by fixNextRoom.
+     */
+    private void startFixRooms() {
+        rooms = RoomLabels.label(getMap(), EMPTY);
+        roomOrder = Lists.newArrayListWithCapacity(rooms.getCount());
+        for (int i = 0; i < rooms.getCount(); ++i) {
+            roomOrder.add(i);
+        }
+        Collections.sort(roomOrder, new Comparator<Integer>() {
             @Override
-            public int compare(Set<Point> set1, Set<Point> set2) {
-                return Integer.compare(set2.size(), set1.size());
+            public int compare(Integer label1, Integer label2) {
+                return Integer.compare(rooms.getSize(label2), 
+                        rooms.getSize(label1));
             } 
         });
-        for (int i = 1; i < rooms.size(); ++i) {
-            fixRoom(rooms.get(i));
+        roomIndex = 1;
+    }
+
+    /**
+     * @return false once every room has been fixed.
+     */
+    private boolean fixNextRoom() {
+        if (roomIndex >= roomOrder.size()) {
+            rooms = null;
+            roomOrder = null;
+            return false;
         }
+        fixRoom(rooms.asSet(roomOrder.get(roomIndex++)));
+        return true;
     }
     
     public void generate() {
+        generate(ProgressMonitor.NONE);
+    }
+
+    /**
+     * Same as {@link #generate()} but reports progress per round and stops
+     * as soon as the monitor is cancelled.
+     * @param monitor
+     * @return false if the generation was cancelled, the map is then only
+     *          partly generated.
+     */
+    public boolean generate(ProgressMonitor monitor) {
         initialize();
-        iterate();
+        if (!iterate(monitor)) {
+            return false;
+        }
 
-        Gdx.app.debug(TAG, "\n" + toString(map));
+        Log.debug(TAG, mapDump);
         bufferMap = null;
         fixRooms();
+        stage = Stage.DONE;
+        return true;
+    }
+
+    /**
+     * Advance the generation until it is done or the budget runs out, so
+     * that it can be spread over several frames on backends without
+     * threads.  Every call does at least one unit of work, the unit being
+     * the initialization, one round of a phase or fixing one room, so a
+     * call can overrun the budget by one unit.  The map ends up the same
+     * as after {@link #generate()}.  Setting a new seed starts over.
+     * @param budgetNanos
+     * @return true once the generation is done.
+     */
+    public boolean generateFor(long budgetNanos) {
+        long deadline = TimeUtils.nanoTime() + budgetNanos;
+        do {
+            switch (stage) {
+            case NEW:
+                initialize();
+                startRounds();
+                stage = Stage.ROUNDS;
+                break;
+            case ROUNDS:
+                if (!nextRound()) {
+                    Log.debug(TAG, mapDump);
+                    bufferMap = null;
+                    startFixRooms();
+                    stage = Stage.ROOMS;
+                }
+                break;
+            case ROOMS:
+                if (!fixNextRoom()) {
+                    stage = Stage.DONE;
+                }
+                break;
+            case DONE:
+                return true;
+            }
+        } while (TimeUtils.nanoTime() < deadline);
+        return stage == Stage.DONE;
     }
 
     /**
@@ -158,6 +679,13 @@ public class CaveGenerationImpl {
      *            - all of the points in this room.
      */
     @VisibleForTesting void fixRoom(Set<Point> room) {
+        // the room is carved directly into the boolean map, so the packed
+        // copy has to be rebuilt if we step again.
+        syncMap();
+        packedMap = null;
+        activeRule = null;
+        ++version;
+
         Point point = room.iterator().next();
 
         Point delta = new Point(
@@ -179,8 +707,8 @@ public class CaveGenerationImpl {
             
         }
 
-        Gdx.app.error(TAG, "Encountered a boundary before finding an open space!");
-        Gdx.app.error(TAG, ".. last location: " + point.x + ", " + point.y);
+        Log.error(TAG, "Encountered a boundary before finding an open space!");
+        Log.error(TAG, ".. last location: ", point);
     }
     
     /**
@@ -207,11 +735,52 @@ public class CaveGenerationImpl {
      */
     public void setSeed(long seed) { 
         this.seed = seed;
+        this.stage = Stage.NEW;
+    }
+
+    /**
+     * Replace the map with a finished one, e.g. one that was generated
+     * before and kept in a cache.  The cave is left as if it had just been
+     * generated with the current seed.
+     * @param map - taken over, not copied.
+     */
+    public void restore(boolean[][] map) {
+        Preconditions.checkArgument(map.length == height
+                && map[0].length == width, "map is not %sx%s", width, height);
+        this.random = new Random(seed);
+        this.map = map;
+        this.bufferMap = null;
+        packedMap = null;
+        packedBuffer = null;
+        mapStale = false;
+        activeRule = null;
+        stage = Stage.DONE;
+        ++version;
+    }
+
+    /**
+     * Return everything besides the seed that decides which map is
+     * generated, in a canonical form.  The backend, the executor and
+     * active tracking only change how fast it is generated and are left
+     * out.
+     * @return
+     */
+    public String getParams() {
+        StringBuilder buf = new StringBuilder();
+        buf.append(width).append('x').append(height)
+                .append(";fill=").append(fillProbability);
+        for (Phase phase : phases) {
+            buf.append(";phase=").append(phase.rule)
+                    .append(',').append(phase.rounds)
+                    .append(',').append(phase.radius)
+                    .append(phase.untilStable ? ",stable" : "");
+        }
+        return buf.toString();
     }
 
     @Override
     public String toString() {
-        return toString(map);
+        return toString(getMap());
     }
 
     public static String toString(boolean[][] map) {
@@ -228,28 +797,104 @@ public class CaveGenerationImpl {
         return buf.toString();
     }
 
+    /**
+     * The different ways that a round of the cellular automaton can be
+     * computed.  Every backend produces the same map for the same seed and
+     * phases, they only differ in how quickly they get there.
+     */
+    public static enum Backend {
+        /** One cell at a time using {@link LatticeFns}. */
+        LATTICE,
+        /** 
+         * 64 cells at a time using {@link PackedLatticeFns}.  Only the
+         * default radius is packed, phases with any other radius fall back
+         * to SUMMED_AREA.  Threshold rules are fully bitwise, other rules
+         * look up each cell of the packed counts in their table.
+         */
+        BIT_PACKED,
+        /** One cell at a time using a {@link SummedAreaTable}. */
+        SUMMED_AREA
+    }
+
+    /** The parts of {@link #generateFor} in the order they run. */
+    private static enum Stage {
+        NEW, ROUNDS, ROOMS, DONE
+    }
+
     public static class Phase {
-        int min;
-        int max;
+        /** Radius of the 5x5 minus corners neighborhood. */
+        public static final int DEFAULT_RADIUS = 2;
+
+        Rule rule;
+        RuleTable table;
         int rounds;
+        int radius;
+        boolean untilStable;
 
         public Phase(int min, int max, int rounds) {
-            this.min = min;
-            this.max = max;
+            this(min, max, rounds, DEFAULT_RADIUS);
+        }
+
+        /**
+         * @param min - fill the cell if the 3x3 count is at least min.
+         * @param max - fill the cell if the count of the (2r+1)x(2r+1)
+         *          window minus its corners is at most max.
+         * @param rounds
+         * @param radius
+         */
+        public Phase(int min, int max, int rounds, int radius) {
+            this(Rule.threshold(min, max), rounds, radius, false);
+        }
+
+        /**
+         * @param rule - compiled into a {@link RuleTable} for the radius.
+         * @param rounds - the number of rounds, or the most rounds that
+         *          will be run when untilStable is set.
+         * @param radius
+         * @param untilStable - stop as soon as a round changes nothing.
+         */
+        public Phase(Rule rule, int rounds, int radius, boolean untilStable) {
+            Preconditions.checkArgument(radius >= 1, "radius must be >= 1");
+            this.rule = Preconditions.checkNotNull(rule);
+            this.table = rule.compile(radius);
             this.rounds = rounds;
+            this.radius = radius;
+            this.untilStable = untilStable;
+        }
+
+        public Rule getRule() {
+            return rule;
+        }
+
+        public RuleTable getTable() {
+            return table;
         }
 
+        /**
+         * Only defined for phases with a threshold rule.
+         * @return
+         */
         public int getMin() {
-            return min;
+            Preconditions.checkState(rule instanceof Rule.Threshold);
+            return ((Rule.Threshold) rule).getMin();
         }
 
         public int getMax() {
-            return max;
+            Preconditions.checkState(rule instanceof Rule.Threshold);
+            return ((Rule.Threshold) rule).getMax();
         }
 
         public int getRounds() {
             return rounds;
         }
+
+        public int getRadius() {
+            return radius;
+        }
+
+        public boolean isUntilStable() {
+            return untilStable;
+        }
     }
 
     public static class Builder {
@@ -280,11 +925,89 @@ public class CaveGenerationImpl {
             return this;
         }
 
+        public Builder withBackend(Backend backend) {
+            cave.backend = Preconditions.checkNotNull(backend);
+            return this;
+        }
+
+        /**
+         * Split each round into bands of rows and hand them to the
+         * executor, e.g. a {@link ForkJoinBandExecutor}.  The map is the
+         * same as the serial one no matter how the rows are split.
+         * @param executor
+         * @return
+         */
+        public Builder withExecutor(BandExecutor executor) {
+            cave.executor = Preconditions.checkNotNull(executor);
+            return this;
+        }
+
+        /**
+         * Set the chance of an interior cell starting out FILLED, 0.4 by
+         * default.
+         * @param fillProbability
+         * @return
+         */
+        public Builder withFillProbability(double fillProbability) {
+            Preconditions.checkArgument(fillProbability >= 0
+                    && fillProbability <= 1, "fillProbability must be in [0, 1]");
+            cave.fillProbability = fillProbability;
+            return this;
+        }
+
         public Builder addPhase(int min, int max, int rounds) {
             cave.phases.add(new Phase(min, max, rounds));
             return this;
         }
 
+        public Builder addPhase(int min, int max, int rounds, int radius) {
+            cave.phases.add(new Phase(min, max, rounds, radius));
+            return this;
+        }
+
+        /**
+         * Add a phase that runs until the map stops changing, but never
+         * more than maxRounds.
+         * @param min
+         * @param max
+         * @param maxRounds
+         * @return
+         */
+        public Builder addStablePhase(int min, int max, int maxRounds) {
+            cave.phases.add(new Phase(Rule.threshold(min, max), maxRounds,
+                    Phase.DEFAULT_RADIUS, true));
+            return this;
+        }
+
+        /**
+         * Add a phase with an arbitrary rule, e.g. one parsed from B/S
+         * notation with {@link Rule#parse(String)}.
+         * @param rule
+         * @param rounds
+         * @param radius
+         * @return
+         */
+        public Builder addPhase(Rule rule, int rounds, int radius) {
+            cave.phases.add(new Phase(rule, rounds, radius, false));
+            return this;
+        }
+
+        public Builder addPhase(Phase phase) {
+            cave.phases.add(Preconditions.checkNotNull(phase));
+            return this;
+        }
+
+        /**
+         * Only recompute the parts of the map whose neighborhood changed in
+         * the previous round.  The map is the same either way.
+         * @param activeTracking
+         * @return
+         */
+        public Builder withActiveTracking(boolean activeTracking) {
+            cave.activeTracking = activeTracking;
+            return this;
+        }
+
         public CaveGenerationImpl build() {
             Preconditions.checkNotNull(cave);
             CaveGenerationImpl tmp = cave;
@@ -0,0 +1,291 @@
+package com.seekerr.games.procedural;
+
+import java.util.List;
+
+import com.badlogic.gdx.physics.box2d.Body;
+import com.badlogic.gdx.physics.box2d.BodyDef;
+import com.badlogic.gdx.physics.box2d.BodyDef.BodyType;
+import com.badlogic.gdx.physics.box2d.ChainShape;
+import com.badlogic.gdx.physics.box2d.World;
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Lists;
+
+/**
+ * Turns the walls of a map into Box2D collision geometry.  The contours from
+ * {@link MarchingSquares} are reduced in two stages before they become
+ * fixtures:
+ *
+ * 1. collinear runs of cell edges are merged into a single segment.
+ * 2. Douglas-Peucker removes every vertex that is within the tolerance of
+ *    the simplified outline, which smooths the stair steps on diagonal
+ *    walls.
+ *
+ * Each contour then becomes one looped {@link ChainShape}, so the world
+ * gets a handful of long edges instead of one fixture per cell edge.
+ * Coordinates are in cells with x along the columns and y along the rows
+ * of the map.
+ *
+ * @author wkerr
+ *
+ */
+public class CollisionGeometry {
+    /** Tag used for logging purposes. */
+    private static final String TAG = "CollisionGeometry";
+
+    /** x0, y0, x1, y1, ... for each loop. */
+    private List<float[]> loops;
+
+    private int edgeCount;
+    private int cornerCount;
+    private int vertexCount;
+
+    private CollisionGeometry() {
+        this.loops = Lists.newArrayList();
+    }
+
+    /**
+     * Build the collision loops for the walls of the map.
+     * @param map
+     * @param tolerance - the furthest, in cells, that the simplified outline
+     *          may stray from the cell edges.  Zero only merges collinear
+     *          edges.
+     * @return
+     */
+    public static CollisionGeometry build(boolean[][] map, float tolerance) {
+        return build(MarchingSquares.getContours(map), tolerance);
+    }
+
+    /**
+     * Build the collision loops for the given contours.
+     * @param contours
+     * @param tolerance
+     * @return
+     */
+    public static CollisionGeometry build(List<MarchingSquares.Contour> contours,
+            float tolerance) {
+        Preconditions.checkArgument(tolerance >= 0, "tolerance must be >= 0");
+        CollisionGeometry geometry = new CollisionGeometry();
+        for (MarchingSquares.Contour contour : contours) {
+            float[] corners = mergeCollinear(contour.getPoints());
+            geometry.edgeCount += perimeter(corners);
+            geometry.cornerCount += corners.length / 2;
+
+            float[] loop = simplify(corners, tolerance);
+            geometry.vertexCount += loop.length / 2;
+            geometry.loops.add(loop);
+        }
+        Log.debug(TAG, geometry);
+        return geometry;
+    }
+
+    /**
+     * Drop every vertex of the closed loop that sits on the straight line
+     * between its neighbors.
+     * @param points
+     * @return x0, y0, x1, y1, ... of the remaining vertices.
+     */
+    static float[] mergeCollinear(List<Point> points) {
+        int n = points.size();
+        float[] merged = new float[n * 2];
+        int count = 0;
+        for (int i = 0; i < n; ++i) {
+            Point prev = points.get((i + n - 1) % n);
+            Point p = points.get(i);
+            Point next = points.get((i + 1) % n);
+            long cross = (long) (p.x - prev.x) * (next.y - p.y)
+                    - (long) (p.y - prev.y) * (next.x - p.x);
+            if (cross != 0) {
+                merged[count++] = p.x;
+                merged[count++] = p.y;
+            }
+        }
+        float[] result = new float[count];
+        System.arraycopy(merged, 0, result, 0, count);
+        return result;
+    }
+
+    /**
+     * Douglas-Peucker over a closed loop.  The loop is split at its first
+     * vertex and the vertex furthest from it, and both halves are
+     * simplified on their own.  Loops that would collapse below three
+     * vertices are returned unchanged.
+     * @param loop - x0, y0, x1, y1, ...
+     * @param tolerance
+     * @return
+     */
+    static float[] simplify(float[] loop, float tolerance) {
+        int n = loop.length / 2;
+        if (tolerance <= 0 || n <= 3) {
+            return loop;
+        }
+
+        int far = 0;
+        float farDist = -1;
+        for (int i = 1; i < n; ++i) {
+            float dx = loop[2 * i] - loop[0];
+            float dy = loop[2 * i + 1] - loop[1];
+            float dist = dx * dx + dy * dy;
+            if (dist > farDist) {
+                far = i;
+                farDist = dist;
+            }
+        }
+
+        boolean[] keep = new boolean[n + 1];
+        keep[0] = true;
+        keep[far] = true;
+        keep[n] = true;
+        int[] stack = new int[2 * (n + 1)];
+        int top = 0;
+        stack[top++] = 0;
+        stack[top++] = far;
+        stack[top++] = far;
+        stack[top++] = n;
+        while (top > 0) {
+            int end = stack[--top];
+            int start = stack[--top];
+            float maxDist = -1;
+            int index = -1;
+            for (int i = start + 1; i < end; ++i) {
+                float dist = distance(loop, i % n, start % n, end % n);
+                if (dist > maxDist) {
+                    maxDist = dist;
+                    index = i;
+                }
+            }
+            if (index >= 0 && maxDist > tolerance) {
+                keep[index] = true;
+                stack[top++] = start;
+                stack[top++] = index;
+                stack[top++] = index;
+                stack[top++] = end;
+            }
+        }
+
+        int count = 0;
+        for (int i = 0; i < n; ++i) {
+            if (keep[i]) {
+                ++count;
+            }
+        }
+        if (count < 3) {
+            return loop;
+        }
+        float[] result = new float[count * 2];
+        int j = 0;
+        for (int i = 0; i < n; ++i) {
+            if (keep[i]) {
+                result[j++] = loop[2 * i];
+                result[j++] = loop[2 * i + 1];
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Distance from vertex p to the segment between vertices a and b.
+     */
+    private static float distance(float[] loop, int p, int a, int b) {
+        float px = loop[2 * p];
+        float py = loop[2 * p + 1];
+        float ax = loop[2 * a];
+        float ay = loop[2 * a + 1];
+        float dx = loop[2 * b] - ax;
+        float dy = loop[2 * b + 1] - ay;
+        float lengthSq = dx * dx + dy * dy;
+        float t = 0;
+        if (lengthSq > 0) {
+            t = Math.max(0, Math.min(1, ((px - ax) * dx + (py - ay) * dy) / lengthSq));
+        }
+        float ex = ax + t * dx - px;
+        float ey = ay + t * dy - py;
+        return (float) Math.sqrt(ex * ex + ey * ey);
+    }
+
+    /**
+     * Return the number of unit cell edges around an axis aligned loop.
+     */
+    private static int perimeter(float[] loop) {
+        int n = loop.length / 2;
+        int length = 0;
+        for (int i = 0; i < n; ++i) {
+            int j = (i + 1) % n;
+            length += (int) (Math.abs(loop[2 * j] - loop[2 * i])
+                    + Math.abs(loop[2 * j + 1] - loop[2 * i + 1]));
+        }
+        return length;
+    }
+
+    /**
+     * Create a static body with one looped chain fixture per contour.
+     * @param world
+     * @param cellSize - the size of a cell in world units.
+     * @return
+     */
+    public Body createBody(World world, float cellSize) {
+        BodyDef bodyDef = new BodyDef();
+        bodyDef.type = BodyType.StaticBody;
+        Body body = world.createBody(bodyDef);
+
+        for (float[] loop : loops) {
+            float[] vertices = new float[loop.length];
+            for (int i = 0; i < loop.length; ++i) {
+                vertices[i] = loop[i] * cellSize;
+            }
+            ChainShape shape = new ChainShape();
+            shape.createLoop(vertices);
+            body.createFixture(shape, 0);
+            shape.dispose();
+        }
+        return body;
+    }
+
+    /**
+     * Return the vertices of each loop as x0, y0, x1, y1, ... in cells.
+     * @return
+     */
+    public List<float[]> getLoops() {
+        return loops;
+    }
+
+    /**
+     * Return the number of unit cell edges, i.e. the number of edges we
+     * would have with one fixture per cell edge.
+     * @return
+     */
+    public int getEdgeCount() {
+        return edgeCount;
+    }
+
+    /**
+     * Return the number of vertices after merging collinear edges.
+     * @return
+     */
+    public int getCornerCount() {
+        return cornerCount;
+    }
+
+    /**
+     * Return the number of vertices in the final loops.
+     * @return
+     */
+    public int getVertexCount() {
+        return vertexCount;
+    }
+
+    /**
+     * Return how many vertices were saved compared to one vertex per cell
+     * edge.
+     * @return
+     */
+    public int getVerticesSaved() {
+        return edgeCount - vertexCount;
+    }
+
+    @Override
+    public String toString() {
+        return loops.size() + " loops, " + edgeCount + " cell edges, "
+                + cornerCount + " corners, " + vertexCount + " vertices ("
+                + getVerticesSaved() + " saved)";
+    }
+}
@@ -1,14 +1,14 @@
 package com.seekerr.games.procedural;
 
+import java.util.Arrays;
 import java.util.List;
-import java.util.Map;
 import java.util.Random;
 
-import com.badlogic.gdx.Gdx;
+import com.badlogic.gdx.utils.IntArray;
+import com.badlogic.gdx.utils.TimeUtils;
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Preconditions;
 import com.google.common.collect.Lists;
-import com.google.common.collect.Maps;
 /**
  * The forest generation algorithm is based on a paper written in 2005:
  * 
@@ -23,11 +23,30 @@ import com.google.common.collect.Maps;
  */
 public class ForestGenerationImpl {
     public static final String TAG  = "ForestGenerationImpl";
+
+    /**
+     * Bump whenever a change makes the same seed and parameters grow a
+     * different forest, so that stored and cached forests from before are
+     * told apart.
+     */
+    public static final int ALGORITHM_VERSION = 1;
     
     // forest constants
     public static final byte EMPTY  = 0;
     public static final byte FOREST = 1;
     public static final byte SEEDED = 2;
+
+    private static final long GOLDEN_GAMMA = 0x9e3779b97f4a7c15L;
+
+    /** 
+     * Cost of a cell of the convolution relative to a cell of a disk.  From
+     * ForestSeedingBenchmark on a 480x320 forest, where convolving wins
+     * above about 750 trees at radius 30 and 2700 trees at radius 7.
+     */
+    private static final double CONVOLUTION_COST = 0.2;
+
+    /** Smallest LAZY scale before it is folded into the seeds. */
+    private static final double MIN_SCALE = 1e-30;
     
     public int initialTrees         = 10;
     
@@ -44,155 +63,717 @@ public class ForestGenerationImpl {
     private int height              = 100;
         
     private byte[][] forest         = null;
-    private List<Point> trees       = null;
-    private Map<String,Double> seeds = null;
+
+    /** Cell y * width + x of every tree in the order they were added. */
+    private IntArray trees          = null;
+
+    /** Seed strength of the cell at y * width + x. */
+    private double[] seeds          = null;
+    /** True while the cell has a seed, i.e. it is in the active list. */
+    private boolean[] seeded        = null;
+    /** Cells with a seed in the order they were first seeded. */
+    private IntArray active         = null;
+
+    /** Half width of each row of the seed disk, for the radius below. */
+    private int[] stencil           = null;
+    private int stencilRadius       = -1;
+    /** Number of cells in the seed disk. */
+    private int stencilArea         = 0;
+
+    private Seeding seeding         = Seeding.DISKS;
+    /** Per row prefix sums of the trees being convolved. */
+    private int[] treeSums          = null;
+    private int[] rowTrees          = null;
+    private int[] rowCounts         = null;
+
+    private Growth growth           = Growth.STAMP;
+    /** Number of trees covering the cell at y * width + x. */
+    private int[] coverCount        = null;
+    /** Cells with a cover count that are not FOREST yet. */
+    private IntArray covered        = null;
+    /** Trees before this index have been added to the cover counts. */
+    private int coveredTrees        = 0;
+
+    /** 
+     * With LAZY growth the seed of a cell is worth base + seeds[c] * scale,
+     * where base is the value the seed converges to, see {@link #getBase}.
+     */
+    private double scale            = 1;
+    /** seedDecay and seedStrength when LAZY growth was initialized. */
+    private double lazyDecay        = 0;
+    private double lazyStrength     = 0;
+
+    /** Number of FOREST cells. */
+    private int forestCount         = 0;
+    /** Number of steps since initialize. */
+    private int stepCount           = 0;
+    /** Bumped every time a cell becomes FOREST. */
+    private int version             = 0;
+
+    private GrowthListener listener = null;
+    /** Where generateFor resumes. */
+    private Stage stage             = Stage.NEW;
+
+    /** Draw from {@link #hashDraw} instead of rand. */
+    private boolean hashedDraws     = false;
+    private BandExecutor executor   = BandExecutor.SERIAL;
+    /** Whether the seed at the same index of the active list germinated. */
+    private boolean[] born          = new boolean[0];
+    private IntArray births         = new IntArray();
+    private final BandExecutor.Task drawTask = new BandExecutor.Task() {
+        @Override
+        public void run(int start, int end) {
+            drawBand(start, end);
+        }
+    };
     
     private ForestGenerationImpl() {
 
     }
+
+    /**
+     * Allocate the grids on the first call, which {@link Builder#build()}
+     * makes, and clear them on every call after that, so that initialize
+     * and restore do not throw away a forest's worth of arrays.
+     */
+    private void allocate() {
+        if (forest == null) {
+            forest = new byte[height][width];
+            trees = new IntArray();
+            seeds = new double[width * height];
+            seeded = new boolean[width * height];
+            active = new IntArray();
+        } else {
+            for (byte[] row : forest) {
+                Arrays.fill(row, EMPTY);
+            }
+            trees.clear();
+            Arrays.fill(seeds, 0);
+            Arrays.fill(seeded, false);
+            active.clear();
+        }
+        forestCount = 0;
+        stepCount = 0;
+        ++version;
+        if (growth != Growth.STAMP) {
+            if (coverCount == null) {
+                coverCount = new int[width * height];
+            } else {
+                Arrays.fill(coverCount, 0);
+            }
+            if (growth == Growth.INCREMENTAL) {
+                if (covered == null) {
+                    covered = new IntArray();
+                } else {
+                    covered.clear();
+                }
+            }
+            coveredTrees = 0;
+        }
+        if (growth == Growth.LAZY) {
+            Preconditions.checkArgument(seedDecay > 0 && seedDecay < 1,
+                    "LAZY growth needs 0 < seedDecay < 1");
+            scale = 1;
+            lazyDecay = seedDecay;
+            lazyStrength = seedStrength;
+        }
+    }
     
     /**
      * Initialize the forest.
      */
     public void initialize() {
         rand = new Random(seed);
-        
-        forest = new byte[height][width];
-        trees = Lists.newLinkedList();
-        seeds = Maps.newHashMap();
+        allocate();
 
-        Gdx.app.debug(TAG, "...Initializing forest generation");
+        Log.debug(TAG, "...Initializing forest generation");
         for (int i = 0; i < initialTrees; ++i) {
             while (true) { 
                 int x = rand.nextInt(width);
                 int y = rand.nextInt(height);
                 if (forest[y][x] == EMPTY) { 
-                    forest[y][x] = FOREST;
                     addTree(x,y);
                     break;
                 }
             }
         }
-        Gdx.app.debug(TAG, "...Finished Initialization");
+        Log.debug(TAG, "...Finished Initialization");
     }
     
+    /**
+     * Grow the forest by one step.  Every seed decays, then each seed gets
+     * one draw to become a tree, and finally every tree spreads seeds over
+     * the disk around it.  Seeds are drawn in the order they were first
+     * seeded, so the same random seed always grows the same forest, and
+     * every {@link Growth} mode draws for the same seeds in the same order.
+     * With hashed draws the order does not matter, the seeds are drawn in
+     * bands on the executor and the new trees are added in row major order.
+     */
     public void step() { 
+        int treeCount = trees.size;
+        int forestBefore = forestCount;
+        int[] cells = active.items;
+        int size = active.size;
+
         // decay existing seeds.
-        Map<String,Double> tmpMap = Maps.newHashMap();
-        for (Map.Entry<String,Double> entry : seeds.entrySet()) {
-            double value = entry.getValue();
-            tmpMap.put(entry.getKey(), value - (seedDecay*value));
-        }
-        seeds = tmpMap;
-
-        // create new trees.
-        for (Map.Entry<String,Double> entry : seeds.entrySet()) {
-            if (rand.nextDouble() < entry.getValue()) {
-                String[] tokens = entry.getKey().split(",");
-                addTree(Integer.parseInt(tokens[0]),
-                        Integer.parseInt(tokens[1]));
+        if (growth == Growth.LAZY) {
+            scale *= 1 - lazyDecay;
+        } else if (!hashedDraws) {
+            for (int i = 0; i < size; ++i) {
+                int c = cells[i];
+                seeds[c] -= seedDecay * seeds[c];
+            }
+        }
+
+        // create new trees and remove the seeds they grew from.
+        int kept = 0;
+        if (hashedDraws) {
+            if (born.length < size) {
+                born = new boolean[active.items.length];
+            }
+            executor.execute(0, size, drawTask);
+
+            births.clear();
+            for (int i = 0; i < size; ++i) {
+                int c = cells[i];
+                if (born[i]) {
+                    births.add(c);
+                } else {
+                    cells[kept++] = c;
+                }
+            }
+            births.sort();
+            for (int i = 0; i < births.size; ++i) {
+                int c = births.items[i];
+                addTree(c % width, c / width);
+                seeds[c] = 0;
+                seeded[c] = false;
+            }
+        } else {
+            for (int i = 0; i < size; ++i) {
+                int c = cells[i];
+                double value = seeds[c];
+                if (growth == Growth.LAZY) {
+                    value = (1 - lazyDecay) * getBase(c) + value * scale;
+                }
+                if (rand.nextDouble() < value) {
+                    addTree(c % width, c / width);
+                    seeds[c] = 0;
+                    seeded[c] = false;
+                } else {
+                    cells[kept++] = c;
+                }
+            }
+        }
+        active.size = kept;
+
+        if (growth == Growth.LAZY) {
+            coverNewTrees();
+            if (scale < MIN_SCALE) {
+                normalize();
             }
+        } else if (growth == Growth.INCREMENTAL) {
+            coverNewTrees();
+            seedCovered();
+        } else {
+            seedTrees();
         }
 
-        // remove seeds if tree exists.
-        for (Point p : trees) {
-            String key = p.x + "," + p.y;
-            if (seeds.containsKey(key))
-                seeds.remove(key);
+        ++stepCount;
+        if (listener != null) {
+            double area = width * height;
+            listener.onStep(stepCount, trees.size - treeCount, active.size,
+                    forestCount / area, (forestCount - forestBefore) / area);
         }
+    }
 
-        seedTrees();
+    /**
+     * Decay and draw the seeds at [start, end) of the active list.  Each
+     * seed only touches its own cell, so the bands can run at the same
+     * time.
+     */
+    private void drawBand(int start, int end) {
+        int[] cells = active.items;
+        int step = stepCount + 1;
+        for (int i = start; i < end; ++i) {
+            int c = cells[i];
+            double value;
+            if (growth == Growth.LAZY) {
+                value = (1 - lazyDecay) * getBase(c) + seeds[c] * scale;
+            } else {
+                seeds[c] -= seedDecay * seeds[c];
+                value = seeds[c];
+            }
+            born[i] = hashDraw(seed, step, c % width, c / width) < value;
+        }
+    }
+
+    /**
+     * A uniform draw in [0, 1) that only depends on its arguments, made by
+     * running the SplitMix64 finalizer over each of them in turn.
+     * @param seed
+     * @param step
+     * @param x
+     * @param y
+     * @return
+     */
+    @VisibleForTesting static double hashDraw(long seed, int step, int x, int y) {
+        long h = mix(seed + GOLDEN_GAMMA);
+        h = mix(h + step * GOLDEN_GAMMA);
+        h = mix(h + x * GOLDEN_GAMMA);
+        h = mix(h + y * GOLDEN_GAMMA);
+        return (h >>> 11) * 0x1.0p-53;
+    }
+
+    private static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+        z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+        return z ^ (z >>> 31);
     }
 
     public void generate() {
-        initialize();
-        Gdx.app.debug(TAG, "\n" + toString());
+        generate(ProgressMonitor.NONE);
+    }
 
+    /**
+     * Same as {@link #generate()} but reports the coverage as a fraction of
+     * the desired coverage after every step and stops as soon as the
+     * monitor is cancelled.
+     * @param monitor
+     * @return false if the generation was cancelled, the seeds are then
+     *          left in place.
+     */
+    public boolean generate(ProgressMonitor monitor) {
+        startGrowth();
         double currentlyCovered = getCoverage();
-        Gdx.app.debug(TAG, "...Growing Forest, inital coverage "
-                + currentlyCovered);
         while (currentlyCovered < desiredCoverage) {
+            if (monitor.isCancelled()) {
+                return false;
+            }
             step();
             currentlyCovered = getCoverage();
+            monitor.setProgress((float) Math.min(1,
+                    currentlyCovered / desiredCoverage));
         }
+        finishGrowth();
+        return true;
+    }
+
+    private void startGrowth() {
+        initialize();
+        Log.debug(TAG, "\n", this);
+        Log.debug(TAG, "...Growing Forest, inital coverage ", getCoverage());
+    }
+
+    private void finishGrowth() {
         removeSeeds();
-        Gdx.app.debug(TAG, "...Forest Growth Complete, final coverage "
-                + currentlyCovered);
+        Log.debug(TAG, "...Forest Growth Complete, final coverage ",
+                getCoverage());
+        stage = Stage.DONE;
+    }
+
+    /**
+     * Advance the generation until it is done or the budget runs out, so
+     * that it can be spread over several frames on backends without
+     * threads.  Every call does at least one unit of work, the unit being
+     * the initialization or one step, so a call can overrun the budget by
+     * one step.  The forest ends up the same as after {@link #generate()}.
+     * Setting a new seed starts over.
+     * @param budgetNanos
+     * @return true once the generation is done.
+     */
+    public boolean generateFor(long budgetNanos) {
+        long deadline = TimeUtils.nanoTime() + budgetNanos;
+        do {
+            switch (stage) {
+            case NEW:
+                startGrowth();
+                stage = Stage.GROW;
+                break;
+            case GROW:
+                if (getCoverage() < desiredCoverage) {
+                    step();
+                } else {
+                    finishGrowth();
+                }
+                break;
+            case DONE:
+                return true;
+            }
+        } while (TimeUtils.nanoTime() < deadline);
+        return stage == Stage.DONE;
     }
     
     /**
-     * Return the forest.
+     * Return the forest.  Cells should only be turned into FOREST through
+     * the generator, otherwise the coverage count goes stale.
      * @return
      */
     public byte[][] getForest() {
         return forest;
     }
     
-    @VisibleForTesting Map<String,Double> getSeeds() { 
+    /**
+     * Return the seed strength of every cell, stored at y * width + x.
+     * @return
+     */
+    @VisibleForTesting double[] getSeeds() { 
+        if (growth == Growth.LAZY) {
+            double[] values = new double[seeds.length];
+            for (int i = 0; i < active.size; ++i) {
+                int c = active.items[i];
+                values[c] = getBase(c) + seeds[c] * scale;
+            }
+            return values;
+        }
         return seeds;
     }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    /**
+     * Return the number of cells that currently have a seed.
+     * @return
+     */
+    public int getLiveSeeds() {
+        return active.size;
+    }
     
     @VisibleForTesting List<Point> getTrees() { 
-        return trees;
+        List<Point> list = Lists.newArrayListWithCapacity(trees.size);
+        for (int i = 0; i < trees.size; ++i) {
+            int c = trees.get(i);
+            list.add(new Point(c % width, c / width));
+        }
+        return list;
     }
     
+    /**
+     * Return the fraction of the cells that are FOREST.  The count is kept
+     * up to date as trees are added, so this does not scan the forest.
+     * @return
+     */
     @VisibleForTesting double getCoverage() {
         double size = width * height;
-        double count = 0;
-        for (int i = 0; i < height; ++i) {
-            for (int j = 0; j < width; ++j) {
-                if (forest[i][j] == FOREST)
-                    ++count;
-            }
-        }
-        return count / size;
+        return forestCount / size;
+    }
+
+    /**
+     * Return a number that changes every time a cell becomes FOREST or the
+     * forest is initialized, so that renderers can tell when what they
+     * built from {@link #getForest()} is out of date.
+     * @return
+     */
+    public int getVersion() {
+        return version;
+    }
+
+    /**
+     * Return the number of steps since the forest was initialized.
+     * @return
+     */
+    public int getStepCount() {
+        return stepCount;
     }
     
+    /**
+     * Every tree adds seedStrength to the cells in the disk around it.  The
+     * rows are visited in the same order as {@link #findRange}.
+     */
     @VisibleForTesting void seedTrees() {
-        for (Point p : trees) { 
-            List<Range> ranges = findRange(p.x, p.y, seedRadius);
-            for (Range r : ranges) {
-                Point p1 = r.p1;
-                Point p2 = r.p2;
-                
-                for (int x = p1.x; x <= p2.x; ++x) {
-                    if (forest[p1.y][x] == FOREST)
-                        continue;
-                    
-                    forest[p1.y][x] = SEEDED;
-                    String key = x + "," + p1.y;
-                    Double value = seeds.get(key);
-                    if (value == null) 
-                        value = 0.0d;
-                    seeds.put(key, value + seedStrength);
+        stampTrees(0, trees.size, false);
+    }
+
+    /**
+     * Add the trees that were added since the last step to the cover
+     * counts.  Each tree's disk is only stamped once, with the seedRadius
+     * at the time.
+     */
+    private void coverNewTrees() {
+        stampTrees(coveredTrees, trees.size, true);
+        coveredTrees = trees.size;
+    }
+
+    /**
+     * Stamp the disks of the trees in [from, to) of the tree list, one disk
+     * at a time or with {@link #convolveTrees} depending on the seeding.
+     */
+    private void stampTrees(int from, int to, boolean cover) {
+        if (useConvolution(to - from)) {
+            convolveTrees(from, to, cover);
+            return;
+        }
+        for (int t = from; t < to; ++t) { 
+            stampDisk(trees.get(t), cover);
+        }
+    }
+
+    /**
+     * Return true if convolving is cheaper than stamping the disks of that
+     * many trees.  Stamping visits every cell of every disk, convolving
+     * does one subtraction per cell of the forest for every row of the
+     * disk.
+     */
+    @VisibleForTesting boolean useConvolution(int treeCount) {
+        if (seeding != Seeding.AUTO) {
+            return seeding == Seeding.CONVOLUTION;
+        }
+        int[] spans = getStencil();
+        double stampCost = (double) treeCount * stencilArea;
+        double convolveCost = (double) width * height * (2 * spans.length - 1);
+        return stampCost > CONVOLUTION_COST * convolveCost;
+    }
+
+    /**
+     * Count how many of the trees in [from, to) cover each cell, and seed
+     * or cover the cells with that count.  Each row of the disk is a run of
+     * cells, so with prefix sums over the trees in every row the count for
+     * a cell is one subtraction per row of the disk, however many trees
+     * there are.  Cells are visited in row major order.
+     */
+    private void convolveTrees(int from, int to, boolean cover) {
+        int[] spans = getStencil();
+        int R = spans.length - 1;
+        int stride = width + 1;
+        if (treeSums == null) {
+            treeSums = new int[height * stride];
+            rowTrees = new int[height];
+            rowCounts = new int[width];
+        } else {
+            Arrays.fill(treeSums, 0);
+            Arrays.fill(rowTrees, 0);
+        }
+
+        for (int t = from; t < to; ++t) {
+            int c = trees.get(t);
+            int y = c / width;
+            ++treeSums[y * stride + c - y * width + 1];
+            ++rowTrees[y];
+        }
+        for (int y = 0; y < height; ++y) {
+            if (rowTrees[y] == 0)
+                continue;
+            int offset = y * stride;
+            for (int x = 1; x <= width; ++x) {
+                treeSums[offset + x] += treeSums[offset + x - 1];
+            }
+        }
+
+        for (int y = 0; y < height; ++y) {
+            Arrays.fill(rowCounts, 0);
+            boolean any = false;
+            for (int dy = -R; dy <= R; ++dy) {
+                int yy = y + dy;
+                if (yy < 0 || yy >= height || rowTrees[yy] == 0)
+                    continue;
+                int r = spans[Math.abs(dy)];
+                int offset = yy * stride;
+                int rowTotal = treeSums[offset + width];
+                // cells whose span is clipped at either edge, then the
+                // cells in between where it is not.
+                for (int x = 0; x < width && x < r; ++x) {
+                    int max = Math.min(width - 1, x + r);
+                    rowCounts[x] += treeSums[offset + max + 1];
+                }
+                for (int x = Math.max(r, width - r); x < width; ++x) {
+                    rowCounts[x] += rowTotal - treeSums[offset + x - r];
+                }
+                for (int x = r; x < width - r; ++x) {
+                    rowCounts[x] += treeSums[offset + x + r + 1] - treeSums[offset + x - r];
+                }
+                any = true;
+            }
+            if (!any)
+                continue;
+
+            byte[] row = forest[y];
+            int offset = y * width;
+            for (int x = 0; x < width; ++x) {
+                if (rowCounts[x] > 0 && row[x] != FOREST) {
+                    seedCell(row, x, offset + x, rowCounts[x], cover);
                 }
             }
         }
     }
+
+    /**
+     * Every covered cell that is not FOREST gets seedStrength from each of
+     * the trees covering it, which is what {@link #seedTrees} adds one tree
+     * at a time.  FOREST cells never take seeds again, so they are dropped
+     * from the covered list.
+     */
+    private void seedCovered() {
+        int[] cells = covered.items;
+        int size = covered.size;
+        int kept = 0;
+        for (int i = 0; i < size; ++i) {
+            int c = cells[i];
+            int y = c / width;
+            int x = c - y * width;
+            if (forest[y][x] == FOREST)
+                continue;
+
+            cells[kept++] = c;
+            forest[y][x] = SEEDED;
+            addSeed(c, seedStrength * coverCount[c]);
+        }
+        covered.size = kept;
+    }
+
+    /**
+     * Visit the rows of the seed disk around the tree in the same order as
+     * {@link #findRange}, either seeding the cells or adding one to their
+     * cover counts.
+     */
+    private void stampDisk(int c, boolean cover) {
+        int[] spans = getStencil();
+        int x = c % width;
+        int y = c / width;
+        stampRow(x, y, spans[0], cover);
+        for (int i = 1; i < spans.length; ++i) {
+            stampRow(x, y - i, spans[i], cover);
+            stampRow(x, y + i, spans[i], cover);
+        }
+    }
+
+    /**
+     * Stamp the cells of row y that are within r of x.
+     */
+    private void stampRow(int x, int y, int r, boolean cover) {
+        if (y < 0 || y >= height)
+            return;
+        byte[] row = forest[y];
+        int min = Math.max(0, x - r);
+        int max = Math.min(width - 1, x + r);
+        int offset = y * width;
+        for (int i = min; i <= max; ++i) {
+            if (row[i] == FOREST)
+                continue;
+
+            seedCell(row, i, offset + i, 1, cover);
+        }
+    }
+
+    /**
+     * Seed the cell x of the row, cell c of the forest, from count trees,
+     * or add count to its cover count.
+     */
+    private void seedCell(byte[] row, int x, int c, int count, boolean cover) {
+        if (cover && growth == Growth.LAZY) {
+            // the base goes up by strength / decay per tree, and the seed
+            // still has to decay once before it gets this step's seeds.
+            row[x] = SEEDED;
+            addSeed(c, -count * (1 - lazyDecay) * lazyStrength / lazyDecay / scale);
+            coverCount[c] += count;
+        } else if (cover) {
+            if (coverCount[c] == 0) {
+                covered.add(c);
+            }
+            coverCount[c] += count;
+        } else {
+            row[x] = SEEDED;
+            addSeed(c, seedStrength * count);
+        }
+    }
+
+    /**
+     * Return the value the seed of the cell converges to under LAZY growth,
+     * strength * cover count / decay while the cell is not FOREST and 0
+     * once it is.
+     */
+    private double getBase(int c) {
+        if (forest[c / width][c % width] == FOREST)
+            return 0;
+        return lazyStrength * coverCount[c] / lazyDecay;
+    }
+
+    /**
+     * Fold the scale into the stored seeds before it gets small enough to
+     * lose precision.
+     */
+    private void normalize() {
+        for (int i = 0; i < active.size; ++i) {
+            seeds[active.items[i]] *= scale;
+        }
+        scale = 1;
+    }
+
+    private void addSeed(int c, double strength) {
+        if (!seeded[c]) {
+            seeded[c] = true;
+            active.add(c);
+        }
+        seeds[c] += strength;
+    }
+
+    /**
+     * Return the half width of every row of the seed disk, row 0 being the
+     * row of the tree.  The stencil is rebuilt when seedRadius changes.
+     * @return
+     */
+    private int[] getStencil() {
+        if (stencil == null || stencilRadius != seedRadius) {
+            int R = seedRadius;
+            stencil = new int[R + 1];
+            stencil[0] = R;
+            stencilArea = 2 * R + 1;
+            for (int i = 1; i <= R; ++i) {
+                stencil[i] = (int) Math.sqrt(R * R - i * i);
+                stencilArea += 2 * (2 * stencil[i] + 1);
+            }
+            stencilRadius = R;
+        }
+        return stencil;
+    }
     
     @VisibleForTesting void addTree(int x, int y) {
-        trees.add(new Point(x, y));
+        trees.add(y * width + x);
         for (int i = x-2; i <= x+2; ++i) {
             if (i < 0 || i >= width)
                 continue;
-            forest[y][i] = FOREST;
+            plant(i, y);
         }
         
         for (int i = y-2; i <= y+2; ++i) {
             if (i <0 || i >= height)
                 continue;
-            forest[i][x] = FOREST;
+            plant(x, i);
         }
             
         if (x-1 >= 0 && y-1 >= 0)
-            forest[y-1][x-1] = FOREST;
+            plant(x-1, y-1);
         if (x+1 < width && y-1 >= 0)
-            forest[y-1][x+1] = FOREST;
+            plant(x+1, y-1);
         
         if (x-1 >= 0 && y+1 < height)
-            forest[y+1][x-1] = FOREST;
+            plant(x-1, y+1);
         if (x+1 < width && y+1 < height)
-            forest[y+1][x+1] = FOREST;
+            plant(x+1, y+1);
+    }
+
+    /**
+     * Turn the cell into FOREST.  Every cell that becomes FOREST goes
+     * through here so that the count behind {@link #getCoverage} stays
+     * current.
+     */
+    private void plant(int x, int y) {
+        if (forest[y][x] != FOREST) {
+            int c = y * width + x;
+            if (growth == Growth.LAZY && seeded[c]) {
+                // the base drops to 0, keep the value the seed has after
+                // this step's decay.
+                seeds[c] += (1 - lazyDecay) * getBase(c) / scale;
+            }
+            forest[y][x] = FOREST;
+            ++forestCount;
+            ++version;
+        }
     }
     
     @VisibleForTesting public void removeSeeds() {
@@ -241,6 +822,61 @@ public class ForestGenerationImpl {
      */
     public void setSeed(long seed) { 
         this.seed = seed;
+        this.stage = Stage.NEW;
+    }
+
+    /**
+     * Return the cell y * width + x of every tree in the order they were
+     * added, for {@link #restore}.
+     * @return
+     */
+    public int[] getTreeCells() {
+        return trees.toArray();
+    }
+
+    /**
+     * Replace the forest with a finished one, e.g. one that was generated
+     * before and kept in a cache.  The trees are added back in the same
+     * order, so stepping the forest keeps growing it.  The seeds are not
+     * restored, the trees spread new ones on the first step, and the draws
+     * start over from the current seed.
+     * @param cells - copied into the forest.
+     * @param treeCells - from {@link #getTreeCells()}.
+     * @param steps - the step count the forest was generated with.
+     */
+    public void restore(byte[][] cells, int[] treeCells, int steps) {
+        Preconditions.checkArgument(cells.length == height
+                && cells[0].length == width, "forest is not %sx%s", width,
+                height);
+        rand = new Random(seed);
+        allocate();
+        for (int y = 0; y < height; ++y) {
+            System.arraycopy(cells[y], 0, forest[y], 0, width);
+            for (int x = 0; x < width; ++x) {
+                if (forest[y][x] == FOREST) {
+                    ++forestCount;
+                }
+            }
+        }
+        for (int c : treeCells) {
+            Preconditions.checkElementIndex(c, width * height);
+            trees.add(c);
+        }
+        stepCount = steps;
+        stage = Stage.DONE;
+    }
+
+    /**
+     * Return everything besides the seed that decides which forest is
+     * grown, in a canonical form.  The executor only changes how fast it
+     * grows and is left out.
+     * @return
+     */
+    public String getParams() {
+        return width + "x" + height + ";trees=" + initialTrees
+                + ";seed=" + seedRadius + "," + seedDecay + "," + seedStrength
+                + ";coverage=" + desiredCoverage + ";growth=" + growth
+                + ";seeding=" + seeding + ";hashed=" + hashedDraws;
     }
     
     public String toString() { 
@@ -282,6 +918,70 @@ public class ForestGenerationImpl {
         }
     }
 
+    /**
+     * Called at the end of every {@link #step} so that growth can be watched
+     * without rescanning the forest.
+     */
+    public static interface GrowthListener {
+        /**
+         * @param step - the number of steps since initialize.
+         * @param newTrees - trees that germinated during the step.
+         * @param liveSeeds - cells that have a seed after the step.
+         * @param coverage - fraction of the cells that are FOREST.
+         * @param coverageDelta - change in coverage during the step.
+         */
+        void onStep(int step, int newTrees, int liveSeeds, double coverage,
+                double coverageDelta);
+    }
+
+    /**
+     * How the trees spread their seeds at the end of each step.  All three
+     * modes follow the same model, they only differ in how much work a step
+     * takes.
+     */
+    public static enum Growth {
+        /** Every tree stamps its whole seed disk on every step. */
+        STAMP,
+        /**
+         * Each tree stamps its disk once, into a count of the trees covering
+         * every cell, and a step adds seedStrength times that count to the
+         * covered cells.  The seeds only differ from STAMP by rounding.
+         */
+        INCREMENTAL,
+        /**
+         * Like INCREMENTAL, but neither decay nor seeding touch the seeds
+         * that did not change.  Every seed is stored relative to the value
+         * it converges to and scaled by one global decay factor, so a step
+         * only updates the cells around new trees.  The draw for each live
+         * seed is still made every step.  seedDecay and seedStrength are
+         * read when the forest is initialized.
+         */
+        LAZY
+    }
+
+    /**
+     * How the disks of many trees are stamped at once.  Both ways give the
+     * same seeds up to rounding, but they visit the cells in a different
+     * order, so with rand the draws land on other seeds.  With hashed
+     * draws the forest is the same either way.
+     */
+    public static enum Seeding {
+        /** One disk per tree, in the order the trees were added. */
+        DISKS,
+        /** 
+         * The tree map convolved with the disk, one row of the disk at a
+         * time over prefix sums of every row of trees.
+         */
+        CONVOLUTION,
+        /** Whichever of the two is cheaper for the number of trees. */
+        AUTO
+    }
+
+    /** The parts of {@link #generateFor} in the order they run. */
+    private static enum Stage {
+        NEW, GROW, DONE
+    }
+
     public static class Builder {
         ForestGenerationImpl forest;
         
@@ -327,9 +1027,53 @@ public class ForestGenerationImpl {
             return this;
         }
                 
+        public Builder withGrowth(Growth growth) {
+            forest.growth = Preconditions.checkNotNull(growth);
+            return this;
+        }
+
+        /**
+         * Choose how the disks of the trees are stamped, DISKS by default.
+         * @param seeding
+         * @return
+         */
+        public Builder withSeeding(Seeding seeding) {
+            forest.seeding = Preconditions.checkNotNull(seeding);
+            return this;
+        }
+
+        /**
+         * Draw each seed from a hash of (seed, step, x, y) instead of rand.
+         * The forest then no longer depends on the order the seeds are
+         * drawn in, which lets the draws run in parallel.
+         * @param hashedDraws
+         * @return
+         */
+        public Builder withHashedDraws(boolean hashedDraws) {
+            forest.hashedDraws = hashedDraws;
+            return this;
+        }
+
+        /**
+         * Split the draws of each step into bands of the live seeds and hand
+         * them to the executor.  Only used with hashed draws.
+         * @param executor
+         * @return
+         */
+        public Builder withExecutor(BandExecutor executor) {
+            forest.executor = Preconditions.checkNotNull(executor);
+            return this;
+        }
+
+        public Builder withGrowthListener(GrowthListener listener) {
+            forest.listener = listener;
+            return this;
+        }
+                
         public ForestGenerationImpl build() { 
             Preconditions.checkNotNull(forest);
             ForestGenerationImpl tmp = forest;
+            tmp.allocate();
             forest = null;
             return tmp;
         }
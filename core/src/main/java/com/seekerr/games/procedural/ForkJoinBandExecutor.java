@@ -0,0 +1,82 @@
+package com.seekerr.games.procedural;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * A {@link BandExecutor} that splits the rows into bands and runs them on a
+ * {@link ForkJoinPool}.  Each band only writes its own rows, so the output
+ * is the same as running the task serially.
+ *
+ * This class is not available under GWT.
+ *
+ * @author wkerr
+ *
+ */
+public class ForkJoinBandExecutor implements BandExecutor {
+    /** Split the rows into roughly this many bands per thread. */
+    private static final int BANDS_PER_THREAD = 4;
+    /** Never hand out bands smaller than this. */
+    private static final int MIN_BAND_ROWS = 8;
+
+    private ForkJoinPool pool;
+
+    /**
+     * Create an executor with its own pool of the given size.
+     * @param parallelism
+     */
+    public ForkJoinBandExecutor(int parallelism) {
+        this(new ForkJoinPool(parallelism));
+    }
+
+    /**
+     * Create an executor that shares an existing pool.
+     * @param pool
+     */
+    public ForkJoinBandExecutor(ForkJoinPool pool) {
+        this.pool = Preconditions.checkNotNull(pool);
+    }
+
+    public ForkJoinPool getPool() {
+        return pool;
+    }
+
+    @Override
+    public void execute(int start, int end, Task task) {
+        if (start >= end) {
+            return;
+        }
+        int bands = pool.getParallelism() * BANDS_PER_THREAD;
+        int bandRows = Math.max(MIN_BAND_ROWS, (end - start + bands - 1) / bands);
+        pool.invoke(new BandAction(start, end, bandRows, task));
+    }
+
+    private static class BandAction extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private int start;
+        private int end;
+        private int bandRows;
+        private Task task;
+
+        public BandAction(int start, int end, int bandRows, Task task) {
+            this.start = start;
+            this.end = end;
+            this.bandRows = bandRows;
+            this.task = task;
+        }
+
+        @Override
+        protected void compute() {
+            if (end - start <= bandRows) {
+                task.run(start, end);
+                return;
+            }
+            int middle = (start + end) >>> 1;
+            invokeAll(new BandAction(start, middle, bandRows, task),
+                    new BandAction(middle, end, bandRows, task));
+        }
+    }
+}
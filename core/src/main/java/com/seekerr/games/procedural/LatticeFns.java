@@ -1,13 +1,10 @@
 package com.seekerr.games.procedural;
 
-import java.util.Iterator;
-import java.util.LinkedHashSet;
-import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
-import com.badlogic.gdx.Gdx;
+import com.badlogic.gdx.utils.IntArray;
 import com.google.common.base.Preconditions;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
@@ -70,7 +67,7 @@ public class LatticeFns {
      * @return
      */
     public static Point findEmptyNeighbor(boolean[][] map, Point p) { 
-        Gdx.app.log(TAG, "Point" + p.x + "," + p.y);
+        Log.debug(TAG, "Point ", p);
         for (int index = 0; index < MOORE_HOOD.length; ++index) {
             Point current = Point.add(p, MOORE_HOOD[index]);
             if (!current.valid(0, map[0].length, 0, map.length))
@@ -95,11 +92,11 @@ public class LatticeFns {
             Point currentPoint, Point backtrackPoint) {
 
         if (backtrackPoint == null) {
-            Gdx.app.error(TAG, "Missing backtrack point");
+            Log.error(TAG, "Missing backtrack point");
             throw new RuntimeException("Missing backtrack point. current:" + currentPoint);
         }
         if (currentPoint == null) {
-            Gdx.app.error(TAG, "Missing current point");
+            Log.error(TAG, "Missing current point");
             throw new RuntimeException("Missing current point.  backtrack:" + backtrackPoint);
         }
         
@@ -166,7 +163,35 @@ public class LatticeFns {
         }
         return count;
     }
-    
+
+    /**
+     * Count the (2r+1)x(2r+1) window centered on the cell without the four
+     * corner cells.  A radius of 2 is the same as getTwoStepNeighborCount.
+     * We count the cell that is requested as well.
+     *
+     * @param map
+     * @param y
+     * @param x
+     * @param radius
+     * @return
+     */
+    public static int getRadiusNeighborCount(boolean[][] map, int y, int x,
+            int radius) {
+        int count = 0;
+        for (int i = y - radius; i <= y + radius; ++i) {
+            for (int j = x - radius; j <= x + radius; ++j) {
+                if (Math.abs(i - y) == radius && Math.abs(j - x) == radius) {
+                    continue;
+                }
+                if (i < 0 || j < 0 || i >= map.length || j >= map[i].length) {
+                    continue;
+                }
+                count += map[i][j] == FILLED ? 1 : 0;
+            }
+        }
+        return count;
+    }
+
     /**
      * This is an implementation of the Moore-Neighborhood tracing algorithm.
      * http://en.wikipedia.org/wiki/Moore_neighborhood
@@ -177,22 +202,24 @@ public class LatticeFns {
      */
     public static List<Point> getContour(boolean[][] map) { 
         List<Point> allBoundaryPoints = Lists.newArrayList();
-        List<Set<Point>> rooms = getRooms(map, FILLED);
-        Gdx.app.log(TAG, "Number of rooms: " + rooms.size());
-        for (Set<Point> points : rooms) {
-            Point startPoint = null;
-            for (Point p : points) { 
-                if (isBorderPoint(map, p.y, p.x, LatticeFns.FILLED)) {
-                    startPoint = p;
-                    break;
-                }
-            }
+        RoomLabels rooms = RoomLabels.label(map, FILLED);
+        // checked once, the tracing below runs for every boundary cell.
+        boolean trace = Log.isDebug();
+        Log.debug(TAG, "Number of rooms: ", rooms.getCount());
+        // the cells findBorderPoint has queued, stamped with label + 1.
+        int[] queued = new int[rooms.getWidth() * rooms.getHeight()];
+        IntArray queue = new IntArray();
+        for (int label = 0; label < rooms.getCount(); ++label) {
+            Point startPoint = findBorderPoint(map, rooms, label, queued,
+                    queue);
             if (startPoint == null) { 
-                Gdx.app.log(TAG, "WTF: " + points);
+                Log.debug(TAG, "No border point in room ", label);
+                continue;
             }
             
 //            Point startPoint = LatticeFns.findStartPoint(map);
-            Gdx.app.log(TAG, "Start Point: " + startPoint + " type: " + map[startPoint.y][startPoint.x]);
+            Log.debug(TAG, "Start Point: ", startPoint, " type: ",
+                    map[startPoint.y][startPoint.x]);
             Point backtrack = LatticeFns.findEmptyNeighbor(map, startPoint);
 
             List<Point> boundaryPoints = Lists.newArrayList(); 
@@ -206,7 +233,10 @@ public class LatticeFns {
                 } 
                 pixel = LatticeFns.getNextClockwisePoint(map, pixel.point,
                         pixel.backtrack);
-                Gdx.app.log(TAG, " start " + startPoint + " -- next " + pixel.point + ", backtrack " + pixel.backtrack);
+                if (trace) {
+                    Log.debug(TAG, " start " + startPoint + " -- next "
+                            + pixel.point + ", backtrack " + pixel.backtrack);
+                }
             }
 //            return boundaryPoints;
             allBoundaryPoints.addAll(boundaryPoints);
@@ -214,6 +244,51 @@ public class LatticeFns {
         return allBoundaryPoints;
     }
 
+    /**
+     * Return the first cell of the room that borders a cell of the other
+     * type, or null if the room has no border.  The cells are visited
+     * breadth first from the first cell of the room, in the order of
+     * {@link #VON_NEUMANN_HOOD}, which is where the flood fill that used to
+     * find the rooms put the start of each contour.
+     * @param map
+     * @param rooms
+     * @param label
+     * @param queued - stamped with label + 1 for every cell queued.
+     * @param queue - cleared and used as the queue of cells.
+     * @return
+     */
+    private static Point findBorderPoint(boolean[][] map, RoomLabels rooms,
+            int label, int[] queued, IntArray queue) {
+        int width = rooms.getWidth();
+        int height = rooms.getHeight();
+        Point first = rooms.getFirst(label);
+        queue.clear();
+        queue.add(first.y * width + first.x);
+        queued[first.y * width + first.x] = label + 1;
+        for (int head = 0; head < queue.size; ++head) {
+            int cell = queue.get(head);
+            int x = cell % width;
+            int y = cell / width;
+            if (isBorderPoint(map, y, x, map[y][x])) {
+                return new Point(x, y);
+            }
+            for (Point p : VON_NEUMANN_HOOD) {
+                int x1 = x + p.x;
+                int y1 = y + p.y;
+                if (x1 < 0 || y1 < 0 || x1 >= width || y1 >= height) {
+                    continue;
+                }
+                int neighbor = y1 * width + x1;
+                if (queued[neighbor] != label + 1
+                        && rooms.getLabel(x1, y1) == label) {
+                    queued[neighbor] = label + 1;
+                    queue.add(neighbor);
+                }
+            }
+        }
+        return null;
+    }
+
     /**
      * Converts each of the points into edge lines depending on whether or
      * not the space in the map is free.
@@ -295,77 +370,19 @@ public class LatticeFns {
         return lines;
     }
     
-    public static void addNeighbor(Point neighbor, 
-            boolean[][] map,
-            boolean type, 
-            LinkedHashSet<Point> notVisited, 
-            LinkedList<Point> frontier) {
-        
-        if (!neighbor.valid(0, map[0].length, 0, map.length))
-            return;
-
-        if (map[neighbor.y][neighbor.x] == type
-                && notVisited.contains(neighbor)) {
-            notVisited.remove(neighbor);
-            frontier.addLast(neighbor);
-        }
-    }
-
     /**
      * Return a list containing a representation of each room.  Rooms
      * are a collection of points, one for each cell in the room.
+     *
+     * The sets are read only views over a {@link RoomLabels}, so no points
+     * are created until the sets are iterated.  Callers that only need the
+     * sizes or bounds should use {@link RoomLabels#label} directly.
      * @param map
      * @param type
      * @return
      */
     public static List<Set<Point>> getRooms(boolean[][] map, boolean type) {
-        int height = map.length;
-        int width = map[0].length;
-        
-        Point start = null;
-        LinkedHashSet<Point> notVisited = new LinkedHashSet<Point>();
-        for (int y = 0; y < height; ++y) {
-            for (int x = 0; x < width; ++x) {
-                if (map[y][x] == type) {
-                    if (start == null)
-                        start = new Point(x, y);
-                    else
-                        notVisited.add(new Point(x, y));
-                }
-            }
-        }
-        Gdx.app.log(TAG, "Number of points: " + notVisited.size());
-        List<Set<Point>> rooms = Lists.newArrayList();
-        LinkedList<Point> frontier = Lists.newLinkedList();
-        frontier.add(start);
-        while (!notVisited.isEmpty()) {
-            Set<Point> room = new LinkedHashSet<Point>();
-            while (!frontier.isEmpty()) {
-                Point current = frontier.removeFirst();
-                room.add(current);
-
-                for (Point p : VON_NEUMANN_HOOD) {
-                    addNeighbor(Point.add(current, p), map, type, 
-                            notVisited, frontier);
-                }
-            }
-            rooms.add(room);
-
-            if (notVisited.size() > 0) {
-                Iterator<Point> iterator = notVisited.iterator();
-                frontier.add(iterator.next());
-                iterator.remove();
-            }
-        }
-        
-        if (!frontier.isEmpty()) { 
-            Gdx.app.log(TAG, "Frontier not empty! " + frontier.size());
-            Set<Point> room = new LinkedHashSet<Point>();
-            room.add(frontier.getFirst());
-            rooms.add(room);
-        }
-        
-        return rooms;
+        return RoomLabels.label(map, type).asSets();
     }
     
     private static class Points {
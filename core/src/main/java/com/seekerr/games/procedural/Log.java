@@ -0,0 +1,136 @@
+package com.seekerr.games.procedural;
+
+import com.badlogic.gdx.Application;
+import com.badlogic.gdx.Gdx;
+
+/**
+ * Logging for the generators that costs nothing when the level is off.
+ * Gdx.app.debug only checks the level after the caller has already built
+ * the message, which in a tracing loop or for a whole map dump is most of
+ * the work.  Here the message is only put together once the level is
+ * known to be on, either from the parts handed in or from a
+ * {@link Message}.
+ *
+ * Passing parts is the cheapest, nothing is allocated unless the message is
+ * logged, the int and double parts have overloads of their own so they are
+ * not boxed.  A Message is for output that is expensive to build, like
+ * {@link CaveGenerationImpl#toString(boolean[][])}.  For several calls in a
+ * row check {@link #isDebug()} once around them.
+ *
+ * @author wkerr
+ *
+ */
+public final class Log {
+
+    /**
+     * Builds a log message, only called if it is going to be logged.
+     */
+    public static interface Message {
+        String get();
+    }
+
+    private Log() {
+    }
+
+    public static boolean isDebug() {
+        return Gdx.app.getLogLevel() >= Application.LOG_DEBUG;
+    }
+
+    public static boolean isInfo() {
+        return Gdx.app.getLogLevel() >= Application.LOG_INFO;
+    }
+
+    public static boolean isError() {
+        return Gdx.app.getLogLevel() >= Application.LOG_ERROR;
+    }
+
+    public static void debug(String tag, String message) {
+        if (isDebug()) {
+            Gdx.app.debug(tag, message);
+        }
+    }
+
+    public static void debug(String tag, Object message) {
+        if (isDebug()) {
+            Gdx.app.debug(tag, String.valueOf(message));
+        }
+    }
+
+    public static void debug(String tag, Object part1, Object part2) {
+        if (isDebug()) {
+            Gdx.app.debug(tag, String.valueOf(part1) + part2);
+        }
+    }
+
+    public static void debug(String tag, String part1, int part2) {
+        if (isDebug()) {
+            Gdx.app.debug(tag, part1 + part2);
+        }
+    }
+
+    public static void debug(String tag, String part1, double part2) {
+        if (isDebug()) {
+            Gdx.app.debug(tag, part1 + part2);
+        }
+    }
+
+    public static void debug(String tag, Object part1, Object part2,
+            Object part3, Object part4) {
+        if (isDebug()) {
+            Gdx.app.debug(tag, String.valueOf(part1) + part2 + part3 + part4);
+        }
+    }
+
+    public static void debug(String tag, String part1, int part2,
+            String part3, int part4) {
+        if (isDebug()) {
+            Gdx.app.debug(tag, part1 + part2 + part3 + part4);
+        }
+    }
+
+    public static void debug(String tag, Message message) {
+        if (isDebug()) {
+            Gdx.app.debug(tag, message.get());
+        }
+    }
+
+    public static void info(String tag, String message) {
+        if (isInfo()) {
+            Gdx.app.log(tag, message);
+        }
+    }
+
+    public static void info(String tag, Object part1, Object part2) {
+        if (isInfo()) {
+            Gdx.app.log(tag, String.valueOf(part1) + part2);
+        }
+    }
+
+    public static void info(String tag, Message message) {
+        if (isInfo()) {
+            Gdx.app.log(tag, message.get());
+        }
+    }
+
+    public static void error(String tag, String message) {
+        if (isError()) {
+            Gdx.app.error(tag, message);
+        }
+    }
+
+    public static void error(String tag, Object part1, Object part2) {
+        if (isError()) {
+            Gdx.app.error(tag, String.valueOf(part1) + part2);
+        }
+    }
+
+    /**
+     * Log the message with the stack trace of exception.
+     */
+    public static void error(String tag, String part1, Object part2,
+            Throwable exception) {
+        if (isError()) {
+            Gdx.app.error(tag, part1 + part2, exception);
+        }
+    }
+}
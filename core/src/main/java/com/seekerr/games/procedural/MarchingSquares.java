@@ -0,0 +1,216 @@
+package com.seekerr.games.procedural;
+
+import static com.seekerr.games.procedural.LatticeFns.FILLED;
+
+import java.util.List;
+
+import com.google.common.collect.Lists;
+
+/**
+ * Extracts the boundary between FILLED and EMPTY cells as closed polylines
+ * by walking the grid of cell corners once.  Every unit edge between a
+ * FILLED and an EMPTY cell is visited a single time, and a vertex is only
+ * emitted where the boundary turns, so each side of a wall comes out as
+ * one segment.
+ *
+ * Cells outside of the map count as FILLED so that every contour is
+ * closed.  For maps with a FILLED border, like the caves, this gives the
+ * same edges as {@link LatticeFns#getEdgeLines}.  Where two EMPTY cells
+ * only touch at a corner the boundary turns towards them, so EMPTY regions
+ * stay connected through the Von Neumann neighborhood like they are in
+ * {@link LatticeFns#getRooms}.
+ *
+ * @author wkerr
+ *
+ */
+public class MarchingSquares {
+    private static final int EAST = 0;
+    private static final int SOUTH = 1;
+    private static final int WEST = 2;
+    private static final int NORTH = 3;
+
+    private static final int[] DX = { 1, 0, -1, 0 };
+    private static final int[] DY = { 0, 1, 0, -1 };
+
+    /**
+     * Return every contour in the map.  Each contour is walked with the
+     * EMPTY cells on its left.
+     * @param map
+     * @return
+     */
+    public static List<Contour> getContours(boolean[][] map) {
+        int height = map.length;
+        int width = map[0].length;
+        // horizontal edge x along the top of row y is at y * width + x
+        boolean[] visited = new boolean[width * (height + 1)];
+
+        List<Contour> contours = Lists.newArrayList();
+        for (int y = 0; y <= height; ++y) {
+            for (int x = 0; x < width; ++x) {
+                if (visited[y * width + x]) {
+                    continue;
+                }
+                boolean above = isFilled(map, x, y - 1);
+                boolean below = isFilled(map, x, y);
+                if (above == below) {
+                    continue;
+                }
+                if (below) {
+                    contours.add(trace(map, visited, x, y, EAST));
+                } else {
+                    contours.add(trace(map, visited, x + 1, y, WEST));
+                }
+            }
+        }
+        return contours;
+    }
+
+    /**
+     * A drop in replacement for {@link LatticeFns#getContourLines}.  Every
+     * straight run of a contour becomes one line from its smaller point to
+     * its larger point.
+     * @param map
+     * @return
+     */
+    public static List<Line> getContourLines(boolean[][] map) {
+        List<Line> lines = Lists.newArrayList();
+        for (Contour contour : getContours(map)) {
+            contour.addLines(lines);
+        }
+        return lines;
+    }
+
+    private static boolean isFilled(boolean[][] map, int x, int y) {
+        if (y < 0 || y >= map.length || x < 0 || x >= map[y].length) {
+            return FILLED;
+        }
+        return map[y][x];
+    }
+
+    /**
+     * Follow the boundary from the corner (x, y) until we come back to the
+     * starting edge.
+     */
+    private static Contour trace(boolean[][] map, boolean[] visited,
+            int startX, int startY, int startDir) {
+        int width = map[0].length;
+        List<Point> points = Lists.newArrayList();
+
+        int x = startX;
+        int y = startY;
+        int dir = startDir;
+        do {
+            if (dir == EAST) {
+                visited[y * width + x] = true;
+            } else if (dir == WEST) {
+                visited[y * width + x - 1] = true;
+            }
+            x += DX[dir];
+            y += DY[dir];
+
+            int next = nextDirection(map, x, y, dir);
+            if (next != dir) {
+                points.add(new Point(x, y));
+            }
+            dir = next;
+        } while (x != startX || y != startY || dir != startDir);
+
+        return new Contour(points);
+    }
+
+    /**
+     * Return the direction to leave the corner (x, y) in, given the
+     * direction we arrived in.
+     */
+    private static int nextDirection(boolean[][] map, int x, int y, int dir) {
+        boolean nw = isFilled(map, x - 1, y - 1);
+        boolean ne = isFilled(map, x, y - 1);
+        boolean sw = isFilled(map, x - 1, y);
+        boolean se = isFilled(map, x, y);
+
+        if (nw == se && ne == sw && nw != ne) {
+            // a saddle, turn left towards the EMPTY cell we are following
+            return (dir + 3) % 4;
+        }
+        if (!ne && se) {
+            return EAST;
+        }
+        if (sw && !se) {
+            return SOUTH;
+        }
+        if (nw && !sw) {
+            return WEST;
+        }
+        return NORTH;
+    }
+
+    /**
+     * A closed loop of corner points.  The last point connects back to the
+     * first one.
+     */
+    public static class Contour {
+        private List<Point> points;
+        private boolean hole;
+
+        Contour(List<Point> points) {
+            this.points = points;
+
+            long area = 0;
+            for (int i = 0; i < points.size(); ++i) {
+                Point a = points.get(i);
+                Point b = points.get((i + 1) % points.size());
+                area += (long) a.x * b.y - (long) b.x * a.y;
+            }
+            this.hole = area > 0;
+        }
+
+        /**
+         * A contour that was already traced, e.g. read back from a file.
+         * @param points
+         * @param hole - see {@link #isHole()}.
+         */
+        public Contour(List<Point> points, boolean hole) {
+            this.points = points;
+            this.hole = hole;
+        }
+
+        public List<Point> getPoints() {
+            return points;
+        }
+
+        public int size() {
+            return points.size();
+        }
+
+        /**
+         * Return true if the contour goes around FILLED cells that sit inside
+         * of an EMPTY region, e.g. a pillar in the middle of a cave, and
+         * false if it goes around an EMPTY region.
+         * @return
+         */
+        public boolean isHole() {
+            return hole;
+        }
+
+        /**
+         * Add one line per segment of the contour.
+         * @param lines
+         */
+        public void addLines(List<Line> lines) {
+            for (int i = 0; i < points.size(); ++i) {
+                Point a = points.get(i);
+                Point b = points.get((i + 1) % points.size());
+                if (a.x < b.x || a.y < b.y) {
+                    lines.add(new Line(a, b));
+                } else {
+                    lines.add(new Line(b, a));
+                }
+            }
+        }
+
+        @Override
+        public String toString() {
+            return (hole ? "Hole" : "Contour") + points;
+        }
+    }
+}
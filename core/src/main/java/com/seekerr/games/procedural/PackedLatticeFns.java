@@ -0,0 +1,310 @@
+package com.seekerr.games.procedural;
+
+import static com.seekerr.games.procedural.LatticeFns.FILLED;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * Bit-packed versions of the lattice functions used by the cave generator.
+ * Each row of the map is stored as a run of 64 bit words where bit
+ * (x & 63) of word (x >>> 6) is set when the cell is FILLED.  Neighbor
+ * counts are computed for 64 cells at a time by shifting the neighboring
+ * words into place and summing them with bitwise adders, so every bit
+ * position holds a small binary counter spread across several words.
+ *
+ * Cells that fall outside of the map count as empty, which matches the
+ * bounds checks in {@link LatticeFns#getNeighborCount} and
+ * {@link LatticeFns#getTwoStepNeighborCount}.
+ *
+ * @author wkerr
+ *
+ */
+public class PackedLatticeFns {
+    /** Number of bits needed to hold a 3x3 count (max 9). */
+    static final int COUNT1_BITS = 4;
+    /** Number of bits needed to hold a 5x5 minus corners count (max 21). */
+    static final int COUNT2_BITS = 5;
+
+    /**
+     * Return the number of words required to store a row of the given width.
+     * @param width
+     * @return
+     */
+    public static int wordsPerRow(int width) {
+        return (width + 63) >>> 6;
+    }
+
+    /**
+     * Pack the map into a newly allocated array of words.
+     * @param map
+     * @return
+     */
+    public static long[][] pack(boolean[][] map) {
+        long[][] packed = new long[map.length][wordsPerRow(map[0].length)];
+        pack(map, packed);
+        return packed;
+    }
+
+    /**
+     * Pack the map into an existing array of words.
+     * @param map
+     * @param packed
+     */
+    public static void pack(boolean[][] map, long[][] packed) {
+        for (int i = 0; i < map.length; ++i) {
+            long[] row = packed[i];
+            for (int k = 0; k < row.length; ++k) {
+                row[k] = 0L;
+            }
+            for (int j = 0; j < map[i].length; ++j) {
+                if (map[i][j] == FILLED) {
+                    row[j >>> 6] |= 1L << (j & 63);
+                }
+            }
+        }
+    }
+
+    /**
+     * Unpack the words back into the boolean map.
+     * @param packed
+     * @param map
+     */
+    public static void unpack(long[][] packed, boolean[][] map) {
+        for (int i = 0; i < map.length; ++i) {
+            long[] row = packed[i];
+            for (int j = 0; j < map[i].length; ++j) {
+                map[i][j] = ((row[j >>> 6] >>> (j & 63)) & 1L) != 0;
+            }
+        }
+    }
+
+    /**
+     * Return a mask for each word in the row with the bits set for every
+     * column that is not on the left or right edge of the map.
+     * @param width
+     * @return
+     */
+    public static long[] interiorMask(int width) {
+        long[] mask = new long[wordsPerRow(width)];
+        for (int j = 1; j < width - 1; ++j) {
+            mask[j >>> 6] |= 1L << (j & 63);
+        }
+        return mask;
+    }
+
+    /**
+     * Perform one round of the cellular automaton for the rows in
+     * [rowStart, rowEnd).  A cell becomes FILLED when its 3x3 count is at
+     * least minCount or its 5x5 minus corners count is at most maxCount.
+     * The first and last rows and columns are copied over unchanged.
+     *
+     * @param src - the current state of the map.
+     * @param dst - where the next state is written.
+     * @param interior - the mask returned by {@link #interiorMask(int)}.
+     * @param minCount
+     * @param maxCount
+     * @param rowStart
+     * @param rowEnd
+     */
+    public static void step(long[][] src, long[][] dst, long[] interior,
+            int minCount, int maxCount, int rowStart, int rowEnd) {
+        step(src, dst, interior, minCount, maxCount, rowStart, rowEnd,
+                0, interior.length);
+    }
+
+    /**
+     * Same as {@link #step(long[][], long[][], long[], int, int, int, int)}
+     * but only the words in [wordStart, wordEnd) of each row are written.
+     */
+    public static void step(long[][] src, long[][] dst, long[] interior,
+            int minCount, int maxCount, int rowStart, int rowEnd,
+            int wordStart, int wordEnd) {
+        int height = src.length;
+        long[] count1 = new long[COUNT1_BITS];
+        long[] count2 = new long[COUNT2_BITS];
+        long[] h3 = new long[2];
+        long[] h5 = new long[3];
+
+        for (int i = rowStart; i < rowEnd; ++i) {
+            if (i == 0 || i == height - 1) {
+                System.arraycopy(src[i], wordStart, dst[i], wordStart,
+                        wordEnd - wordStart);
+                continue;
+            }
+            long[] out = dst[i];
+            for (int k = wordStart; k < wordEnd; ++k) {
+                count(src, i, k, count1, count2, h3, h5);
+                long filled = atLeast(count1, minCount)
+                        | ~atLeast(count2, maxCount + 1L);
+                out[k] = (filled & interior[k]) | (src[i][k] & ~interior[k]);
+            }
+        }
+    }
+
+    /**
+     * Perform one round of the cellular automaton with an arbitrary rule.
+     * The counts are still computed 64 cells at a time, but the next state
+     * of each cell is read from the table one bit at a time.  The first and
+     * last rows and columns are copied over unchanged.
+     *
+     * @param src - the current state of the map.
+     * @param dst - where the next state is written.
+     * @param interior - the mask returned by {@link #interiorMask(int)}.
+     * @param table - a rule compiled for the default radius of 2.
+     * @param rowStart
+     * @param rowEnd
+     * @param wordStart
+     * @param wordEnd
+     */
+    public static void step(long[][] src, long[][] dst, long[] interior,
+            RuleTable table, int rowStart, int rowEnd,
+            int wordStart, int wordEnd) {
+        Preconditions.checkArgument(table.getRadius() == 2,
+                "Only the radius 2 neighborhood is packed");
+        int height = src.length;
+        long[] count1 = new long[COUNT1_BITS];
+        long[] count2 = new long[COUNT2_BITS];
+        long[] h3 = new long[2];
+        long[] h5 = new long[3];
+
+        for (int i = rowStart; i < rowEnd; ++i) {
+            if (i == 0 || i == height - 1) {
+                System.arraycopy(src[i], wordStart, dst[i], wordStart,
+                        wordEnd - wordStart);
+                continue;
+            }
+            long[] out = dst[i];
+            for (int k = wordStart; k < wordEnd; ++k) {
+                count(src, i, k, count1, count2, h3, h5);
+                long cells = src[i][k];
+                long mask = interior[k];
+                long filled = 0L;
+                while (mask != 0L) {
+                    int b = Long.numberOfTrailingZeros(mask);
+                    mask &= mask - 1;
+                    if (table.isFilled(((cells >>> b) & 1L) != 0,
+                            bitCount(count1, b), bitCount(count2, b))) {
+                        filled |= 1L << b;
+                    }
+                }
+                out[k] = filled | (cells & ~interior[k]);
+            }
+        }
+    }
+
+    /**
+     * Compute the bit sliced 3x3 and 5x5 minus corners counts for the 64
+     * cells of word k in row i.
+     */
+    private static void count(long[][] src, int i, int k, long[] count1,
+            long[] count2, long[] h3, long[] h5) {
+        clear(count1);
+        clear(count2);
+        for (int r = i - 1; r <= i + 1; ++r) {
+            horizontal(src[r], k, h3, h5);
+            add(count1, h3);
+            add(count2, h5);
+        }
+        if (i - 2 >= 0) {
+            horizontal(src[i - 2], k, h3, h5);
+            add(count2, h3);
+        }
+        if (i + 2 < src.length) {
+            horizontal(src[i + 2], k, h3, h5);
+            add(count2, h3);
+        }
+    }
+
+    /**
+     * Read the count held by bit position b of the bit sliced counter.
+     * @param slices
+     * @param b
+     * @return
+     */
+    static int bitCount(long[] slices, int b) {
+        int value = 0;
+        for (int i = slices.length - 1; i >= 0; --i) {
+            value = (value << 1) | (int) ((slices[i] >>> b) & 1L);
+        }
+        return value;
+    }
+
+    /**
+     * Compute the horizontal sums of the 3 and 5 cells centered on each bit
+     * of word k in the row.
+     * @param row
+     * @param k
+     * @param h3 - receives the 2 bit sum of columns x-1..x+1.
+     * @param h5 - receives the 3 bit sum of columns x-2..x+2.
+     */
+    private static void horizontal(long[] row, int k, long[] h3, long[] h5) {
+        long c = row[k];
+        long prev = k > 0 ? row[k - 1] : 0L;
+        long next = k + 1 < row.length ? row[k + 1] : 0L;
+
+        long w1 = (c << 1) | (prev >>> 63);
+        long e1 = (c >>> 1) | (next << 63);
+        long w2 = (c << 2) | (prev >>> 62);
+        long e2 = (c >>> 2) | (next << 62);
+
+        h3[0] = w1 ^ c ^ e1;
+        h3[1] = (w1 & c) | (e1 & (w1 ^ c));
+
+        long p0 = w2 ^ e2;
+        long p1 = w2 & e2;
+        long carry = h3[0] & p0;
+        h5[0] = h3[0] ^ p0;
+        h5[1] = h3[1] ^ p1 ^ carry;
+        h5[2] = (h3[1] & p1) | (carry & (h3[1] ^ p1));
+    }
+
+    private static void clear(long[] slices) {
+        for (int i = 0; i < slices.length; ++i) {
+            slices[i] = 0L;
+        }
+    }
+
+    /**
+     * Add the bit sliced operand into the accumulator.  Any carry out of
+     * the top bit of the accumulator is dropped, so the accumulator must be
+     * wide enough to hold the total.
+     * @param acc
+     * @param operand
+     */
+    static void add(long[] acc, long[] operand) {
+        long carry = 0L;
+        for (int i = 0; i < acc.length; ++i) {
+            long b = i < operand.length ? operand[i] : 0L;
+            long a = acc[i];
+            acc[i] = a ^ b ^ carry;
+            carry = (a & b) | (carry & (a ^ b));
+        }
+    }
+
+    /**
+     * Return a word with a bit set wherever the bit sliced count is greater
+     * than or equal to the threshold.
+     * @param slices
+     * @param threshold
+     * @return
+     */
+    static long atLeast(long[] slices, long threshold) {
+        if (threshold <= 0) {
+            return ~0L;
+        }
+        if (threshold >= (1L << slices.length)) {
+            return 0L;
+        }
+        long less = 0L;
+        long equal = ~0L;
+        for (int i = slices.length - 1; i >= 0; --i) {
+            if (((threshold >>> i) & 1L) != 0) {
+                less |= equal & ~slices[i];
+                equal &= slices[i];
+            } else {
+                equal &= ~slices[i];
+            }
+        }
+        return ~less;
+    }
+}
@@ -0,0 +1,39 @@
+package com.seekerr.games.procedural;
+
+/**
+ * Receives progress from a generator while it runs and lets the caller
+ * stop it early.  Generators only check {@link #isCancelled} between rounds
+ * or steps, so a cancelled generator is left part way through and should be
+ * thrown away.
+ *
+ * Like {@link BandExecutor} this does not depend on any threading classes,
+ * implementations that are shared between threads are responsible for their
+ * own visibility.
+ *
+ * @author wkerr
+ *
+ */
+public interface ProgressMonitor {
+
+    /** Ignores progress and never cancels. */
+    public static final ProgressMonitor NONE = new ProgressMonitor() {
+        @Override
+        public void setProgress(float fraction) {
+        }
+
+        @Override
+        public boolean isCancelled() {
+            return false;
+        }
+    };
+
+    /**
+     * @param fraction - how much of the work is done, from 0 to 1.
+     */
+    void setProgress(float fraction);
+
+    /**
+     * @return true if the generator should stop.
+     */
+    boolean isCancelled();
+}
@@ -0,0 +1,340 @@
+package com.seekerr.games.procedural;
+
+import java.util.AbstractSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Lists;
+
+/**
+ * Connected components of the map computed with a two pass scanline
+ * labeling backed by a union-find over plain int arrays.  The first pass
+ * gives every cell a provisional label from its left and upper neighbors
+ * and records which labels touch, the second pass replaces every label with
+ * its final one.  Cells are connected through the Von Neumann neighborhood,
+ * the same as {@link LatticeFns#getRooms}.
+ *
+ * Rooms are numbered from 0 in the order their first cell appears when
+ * scanning the map row by row.  Cells of the other type have the label
+ * {@link #NONE}.
+ *
+ * @author wkerr
+ *
+ */
+public class RoomLabels {
+    /** Label of the cells that do not belong to any room. */
+    public static final int NONE = -1;
+
+    private int width;
+    private int height;
+
+    /** Label of the cell at (x, y) is stored at y * width + x. */
+    private int[] labels;
+    private int count;
+
+    private int[] sizes;
+    private int[] minX;
+    private int[] minY;
+    private int[] maxX;
+    private int[] maxY;
+    /** Index of the first cell of each room in scan order. */
+    private int[] first;
+
+    private RoomLabels(int width, int height) {
+        this.width = width;
+        this.height = height;
+        this.labels = new int[width * height];
+    }
+
+    /**
+     * Label every room made up of cells of the given type.
+     * @param map
+     * @param type
+     * @return
+     */
+    public static RoomLabels label(boolean[][] map, boolean type) {
+        int height = map.length;
+        int width = map[0].length;
+        RoomLabels rooms = new RoomLabels(width, height);
+        int[] labels = rooms.labels;
+
+        int[] parent = new int[Math.max(16, width * height / 4)];
+        int next = 0;
+        for (int y = 0; y < height; ++y) {
+            boolean[] row = map[y];
+            int offset = y * width;
+            for (int x = 0; x < width; ++x) {
+                if (row[x] != type) {
+                    labels[offset + x] = NONE;
+                    continue;
+                }
+                int left = x > 0 ? labels[offset + x - 1] : NONE;
+                int up = y > 0 ? labels[offset - width + x] : NONE;
+                if (left == NONE && up == NONE) {
+                    if (next == parent.length) {
+                        parent = grow(parent);
+                    }
+                    parent[next] = next;
+                    labels[offset + x] = next++;
+                } else if (left == NONE) {
+                    labels[offset + x] = up;
+                } else {
+                    labels[offset + x] = left;
+                    if (up != NONE && up != left) {
+                        union(parent, left, up);
+                    }
+                }
+            }
+        }
+
+        // number the roots in the order they first appear.  A root is
+        // always smaller than the labels below it, so resolving the labels
+        // in increasing order assigns the final numbers in scan order.
+        int[] remap = new int[next];
+        for (int i = 0; i < next; ++i) {
+            int root = find(parent, i);
+            remap[i] = root == i ? rooms.count++ : remap[root];
+        }
+
+        int count = rooms.count;
+        rooms.sizes = new int[count];
+        rooms.minX = new int[count];
+        rooms.minY = new int[count];
+        rooms.maxX = new int[count];
+        rooms.maxY = new int[count];
+        rooms.first = new int[count];
+        for (int i = 0; i < count; ++i) {
+            rooms.minX[i] = Integer.MAX_VALUE;
+            rooms.minY[i] = Integer.MAX_VALUE;
+            rooms.maxX[i] = -1;
+            rooms.maxY[i] = -1;
+            rooms.first[i] = -1;
+        }
+        for (int y = 0; y < height; ++y) {
+            int offset = y * width;
+            for (int x = 0; x < width; ++x) {
+                int label = labels[offset + x];
+                if (label == NONE) {
+                    continue;
+                }
+                label = remap[label];
+                labels[offset + x] = label;
+                if (rooms.first[label] < 0) {
+                    rooms.first[label] = offset + x;
+                }
+                ++rooms.sizes[label];
+                rooms.minX[label] = Math.min(rooms.minX[label], x);
+                rooms.maxX[label] = Math.max(rooms.maxX[label], x);
+                rooms.minY[label] = Math.min(rooms.minY[label], y);
+                rooms.maxY[label] = y;
+            }
+        }
+        return rooms;
+    }
+
+    private static int[] grow(int[] array) {
+        int[] bigger = new int[array.length * 2];
+        System.arraycopy(array, 0, bigger, 0, array.length);
+        return bigger;
+    }
+
+    private static int find(int[] parent, int i) {
+        while (parent[i] != i) {
+            parent[i] = parent[parent[i]];
+            i = parent[i];
+        }
+        return i;
+    }
+
+    /**
+     * Join the two sets, keeping the smaller label as the root.
+     */
+    private static void union(int[] parent, int a, int b) {
+        a = find(parent, a);
+        b = find(parent, b);
+        if (a < b) {
+            parent[b] = a;
+        } else if (b < a) {
+            parent[a] = b;
+        }
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    /**
+     * Return the number of rooms.
+     * @return
+     */
+    public int getCount() {
+        return count;
+    }
+
+    /**
+     * Return the room the cell belongs to or {@link #NONE}.
+     * @param x
+     * @param y
+     * @return
+     */
+    public int getLabel(int x, int y) {
+        return labels[y * width + x];
+    }
+
+    /**
+     * Return the label of every cell.  The label of (x, y) is stored at
+     * y * width + x.
+     * @return
+     */
+    public int[] getLabels() {
+        return labels;
+    }
+
+    /**
+     * Return the number of cells in the room.
+     * @param label
+     * @return
+     */
+    public int getSize(int label) {
+        return sizes[label];
+    }
+
+    public int getMinX(int label) {
+        return minX[label];
+    }
+
+    public int getMinY(int label) {
+        return minY[label];
+    }
+
+    public int getMaxX(int label) {
+        return maxX[label];
+    }
+
+    public int getMaxY(int label) {
+        return maxY[label];
+    }
+
+    /**
+     * Return the first cell of the room in scan order.
+     * @param label
+     * @return
+     */
+    public Point getFirst(int label) {
+        return new Point(first[label] % width, first[label] / width);
+    }
+
+    /**
+     * Return the label of the room with the most cells.  Ties go to the
+     * room that appears first.
+     * @return the label or {@link #NONE} if there are no rooms.
+     */
+    public int getLargest() {
+        int largest = NONE;
+        for (int i = 0; i < count; ++i) {
+            if (largest == NONE || sizes[i] > sizes[largest]) {
+                largest = i;
+            }
+        }
+        return largest;
+    }
+
+    /**
+     * Return a read only view of the room as a set of points.  Nothing is
+     * copied, contains is answered from the label map and iteration walks
+     * the room's bounding box in scan order.
+     * @param label
+     * @return
+     */
+    public Set<Point> asSet(int label) {
+        Preconditions.checkElementIndex(label, count);
+        return new RoomSet(label);
+    }
+
+    /**
+     * Return a view of every room, in the same order as
+     * {@link LatticeFns#getRooms}.
+     * @return
+     */
+    public List<Set<Point>> asSets() {
+        List<Set<Point>> rooms = Lists.newArrayListWithCapacity(count);
+        for (int i = 0; i < count; ++i) {
+            rooms.add(new RoomSet(i));
+        }
+        return rooms;
+    }
+
+    private class RoomSet extends AbstractSet<Point> {
+        private final int label;
+
+        RoomSet(int label) {
+            this.label = label;
+        }
+
+        @Override
+        public int size() {
+            return sizes[label];
+        }
+
+        @Override
+        public boolean contains(Object o) {
+            if (!(o instanceof Point)) {
+                return false;
+            }
+            Point p = (Point) o;
+            if (p.x < 0 || p.y < 0 || p.x >= width || p.y >= height) {
+                return false;
+            }
+            return labels[p.y * width + p.x] == label;
+        }
+
+        @Override
+        public Iterator<Point> iterator() {
+            return new Iterator<Point>() {
+                int index = first[label];
+                int remaining = sizes[label];
+
+                @Override
+                public boolean hasNext() {
+                    return remaining > 0;
+                }
+
+                @Override
+                public Point next() {
+                    if (remaining == 0) {
+                        throw new NoSuchElementException();
+                    }
+                    // stay inside of the bounding box
+                    while (true) {
+                        int x = index % width;
+                        if (x < minX[label]) {
+                            index += minX[label] - x;
+                        } else if (x > maxX[label]) {
+                            index += width - x + minX[label];
+                        } else if (labels[index] == label) {
+                            break;
+                        } else {
+                            ++index;
+                        }
+                    }
+                    Point p = new Point(index % width, index / width);
+                    ++index;
+                    --remaining;
+                    return p;
+                }
+
+                @Override
+                public void remove() {
+                    throw new UnsupportedOperationException();
+                }
+            };
+        }
+    }
+}
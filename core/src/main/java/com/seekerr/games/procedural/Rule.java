@@ -0,0 +1,231 @@
+package com.seekerr.games.procedural;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * Decides whether a cell is FILLED after a round of the cave automaton.  A
+ * rule only sees the current state of the cell, the 3x3 count (including
+ * the cell itself) and the count of the phase's (2r+1)x(2r+1) window minus
+ * its corners.
+ *
+ * Rules are never called while the map is being stepped.  Each phase
+ * compiles its rule into a {@link RuleTable} up front, so the inner loop is
+ * a single array lookup no matter how complicated the rule is.
+ *
+ * @author wkerr
+ *
+ */
+public abstract class Rule {
+
+    /**
+     * @param filled - the current state of the cell.
+     * @param count1 - FILLED cells in the 3x3 window, including the cell.
+     * @param count2 - FILLED cells in the larger window minus its corners.
+     * @return true if the cell should be FILLED next round.
+     */
+    public abstract boolean isFilled(boolean filled, int count1, int count2);
+
+    /**
+     * Evaluate the rule for every possible neighborhood of the given radius.
+     * @param radius
+     * @return
+     */
+    public RuleTable compile(int radius) {
+        return new RuleTable(this, radius);
+    }
+
+    /**
+     * The original cave rule: FILLED when the 3x3 count is at least min or
+     * the larger count is at most max.
+     * @param min
+     * @param max
+     * @return
+     */
+    public static Threshold threshold(int min, int max) {
+        return new Threshold(min, max);
+    }
+
+    /**
+     * Parse a rule in birth/survival notation, e.g. "B678/S345678".  The
+     * digits count the FILLED cells in the Moore neighborhood, the cell
+     * itself is not included.
+     * @param notation
+     * @return
+     */
+    public static BirthSurvival parse(String notation) {
+        Preconditions.checkNotNull(notation);
+        int birth = 0;
+        int survival = 0;
+        boolean sawBirth = false;
+        boolean sawSurvival = false;
+        for (String part : notation.trim().toUpperCase().split("/")) {
+            Preconditions.checkArgument(part.length() > 0,
+                    "Malformed rule: " + notation);
+            int mask = 0;
+            for (int i = 1; i < part.length(); ++i) {
+                int digit = part.charAt(i) - '0';
+                Preconditions.checkArgument(digit >= 0 && digit <= 8,
+                        "Malformed rule: " + notation);
+                mask |= 1 << digit;
+            }
+            if (part.charAt(0) == 'B' && !sawBirth) {
+                birth = mask;
+                sawBirth = true;
+            } else if (part.charAt(0) == 'S' && !sawSurvival) {
+                survival = mask;
+                sawSurvival = true;
+            } else {
+                throw new IllegalArgumentException("Malformed rule: " + notation);
+            }
+        }
+        Preconditions.checkArgument(sawBirth && sawSurvival,
+                "Malformed rule: " + notation);
+        return new BirthSurvival(birth, survival);
+    }
+
+    /**
+     * FILLED when inner * count1 + outer * (count2 - count1) is at least the
+     * threshold, i.e. the 3x3 window and the ring around it are weighted
+     * separately.
+     * @param inner
+     * @param outer
+     * @param threshold
+     * @return
+     */
+    public static Weighted weighted(int inner, int outer, int threshold) {
+        return new Weighted(inner, outer, threshold);
+    }
+
+    public static class Threshold extends Rule {
+        private final int min;
+        private final int max;
+
+        public Threshold(int min, int max) {
+            this.min = min;
+            this.max = max;
+        }
+
+        public int getMin() {
+            return min;
+        }
+
+        public int getMax() {
+            return max;
+        }
+
+        @Override
+        public boolean isFilled(boolean filled, int count1, int count2) {
+            return count1 >= min || count2 <= max;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof Threshold)) {
+                return false;
+            }
+            Threshold other = (Threshold) obj;
+            return min == other.min && max == other.max;
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * min + max;
+        }
+
+        @Override
+        public String toString() {
+            return "Threshold(" + min + ", " + max + ")";
+        }
+    }
+
+    public static class BirthSurvival extends Rule {
+        private final int birth;
+        private final int survival;
+
+        /**
+         * @param birth - bit n is set if an empty cell with n FILLED
+         *          neighbors becomes FILLED.
+         * @param survival - bit n is set if a FILLED cell with n FILLED
+         *          neighbors stays FILLED.
+         */
+        public BirthSurvival(int birth, int survival) {
+            this.birth = birth;
+            this.survival = survival;
+        }
+
+        @Override
+        public boolean isFilled(boolean filled, int count1, int count2) {
+            int neighbors = filled ? count1 - 1 : count1;
+            int mask = filled ? survival : birth;
+            return ((mask >>> neighbors) & 1) != 0;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof BirthSurvival)) {
+                return false;
+            }
+            BirthSurvival other = (BirthSurvival) obj;
+            return birth == other.birth && survival == other.survival;
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * birth + survival;
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder buf = new StringBuilder("B");
+            for (int i = 0; i <= 8; ++i) {
+                if (((birth >>> i) & 1) != 0) {
+                    buf.append(i);
+                }
+            }
+            buf.append("/S");
+            for (int i = 0; i <= 8; ++i) {
+                if (((survival >>> i) & 1) != 0) {
+                    buf.append(i);
+                }
+            }
+            return buf.toString();
+        }
+    }
+
+    public static class Weighted extends Rule {
+        private final int inner;
+        private final int outer;
+        private final int threshold;
+
+        public Weighted(int inner, int outer, int threshold) {
+            this.inner = inner;
+            this.outer = outer;
+            this.threshold = threshold;
+        }
+
+        @Override
+        public boolean isFilled(boolean filled, int count1, int count2) {
+            return inner * count1 + outer * (count2 - count1) >= threshold;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof Weighted)) {
+                return false;
+            }
+            Weighted other = (Weighted) obj;
+            return inner == other.inner && outer == other.outer
+                    && threshold == other.threshold;
+        }
+
+        @Override
+        public int hashCode() {
+            return (31 * inner + outer) * 31 + threshold;
+        }
+
+        @Override
+        public String toString() {
+            return "Weighted(" + inner + ", " + outer + ", " + threshold + ")";
+        }
+    }
+}
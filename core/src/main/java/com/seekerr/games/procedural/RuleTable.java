@@ -0,0 +1,63 @@
+package com.seekerr.games.procedural;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * A {@link Rule} evaluated ahead of time for every combination of cell
+ * state, 3x3 count and radius count.  Looking up the next state of a cell
+ * is a single array access, so every rule runs as fast as the hard coded
+ * threshold rule did.
+ *
+ * @author wkerr
+ *
+ */
+public final class RuleTable {
+    /** Number of values the 3x3 count can take (0 through 9). */
+    static final int COUNT1_VALUES = 10;
+
+    private final Rule rule;
+    private final int radius;
+    private final int count2Values;
+    private final boolean[] table;
+
+    RuleTable(Rule rule, int radius) {
+        Preconditions.checkArgument(radius >= 1, "radius must be >= 1");
+        this.rule = Preconditions.checkNotNull(rule);
+        this.radius = radius;
+
+        int side = 2 * radius + 1;
+        this.count2Values = side * side - 4 + 1;
+        this.table = new boolean[2 * COUNT1_VALUES * count2Values];
+        for (int filled = 0; filled < 2; ++filled) {
+            for (int count1 = 0; count1 < COUNT1_VALUES; ++count1) {
+                for (int count2 = 0; count2 < count2Values; ++count2) {
+                    table[index(filled == 1, count1, count2)] =
+                            rule.isFilled(filled == 1, count1, count2);
+                }
+            }
+        }
+    }
+
+    private int index(boolean filled, int count1, int count2) {
+        return ((filled ? COUNT1_VALUES : 0) + count1) * count2Values + count2;
+    }
+
+    public Rule getRule() {
+        return rule;
+    }
+
+    public int getRadius() {
+        return radius;
+    }
+
+    /**
+     * Return the next state of the cell.
+     * @param filled
+     * @param count1
+     * @param count2
+     * @return
+     */
+    public boolean isFilled(boolean filled, int count1, int count2) {
+        return table[index(filled, count1, count2)];
+    }
+}
@@ -0,0 +1,120 @@
+package com.seekerr.games.procedural;
+
+import static com.seekerr.games.procedural.LatticeFns.FILLED;
+
+/**
+ * An integral image over the FILLED cells of a map.  Once the table is built
+ * the number of FILLED cells inside of any rectangle can be read back with
+ * four lookups, so neighborhood counts cost the same no matter how large the
+ * radius is.
+ *
+ * The table is stored with an extra leading row and column of zeros so that
+ * sums[(y+1) * (width+1) + (x+1)] is the number of FILLED cells in the
+ * rectangle from (0,0) to (x,y) inclusive.
+ *
+ * @author wkerr
+ *
+ */
+public class SummedAreaTable {
+    private int width;
+    private int height;
+    private int[] sums;
+
+    public SummedAreaTable(int width, int height) {
+        this.width = width;
+        this.height = height;
+        this.sums = new int[(width + 1) * (height + 1)];
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    /**
+     * Rebuild the table from the given map.  The map must have the same
+     * dimensions that the table was created with.
+     * @param map
+     */
+    public void build(boolean[][] map) {
+        int stride = width + 1;
+        for (int y = 0; y < height; ++y) {
+            boolean[] row = map[y];
+            int above = y * stride;
+            int current = above + stride;
+            int rowSum = 0;
+            for (int x = 0; x < width; ++x) {
+                if (row[x] == FILLED) {
+                    ++rowSum;
+                }
+                sums[current + x + 1] = sums[above + x + 1] + rowSum;
+            }
+        }
+    }
+
+    /**
+     * Return the number of FILLED cells in the rectangle from (x0, y0) to
+     * (x1, y1) inclusive.  The rectangle is clipped to the map, so cells
+     * outside of the map count as empty.
+     * @param x0
+     * @param y0
+     * @param x1
+     * @param y1
+     * @return
+     */
+    public int sum(int x0, int y0, int x1, int y1) {
+        x0 = Math.max(x0, 0);
+        y0 = Math.max(y0, 0);
+        x1 = Math.min(x1, width - 1);
+        y1 = Math.min(y1, height - 1);
+        if (x0 > x1 || y0 > y1) {
+            return 0;
+        }
+        int stride = width + 1;
+        return sums[(y1 + 1) * stride + x1 + 1] - sums[y0 * stride + x1 + 1]
+                - sums[(y1 + 1) * stride + x0] + sums[y0 * stride + x0];
+    }
+
+    /**
+     * Return 1 if the cell is FILLED and 0 if it is empty or outside the map.
+     * @param x
+     * @param y
+     * @return
+     */
+    public int get(int x, int y) {
+        if (x < 0 || y < 0 || x >= width || y >= height) {
+            return 0;
+        }
+        return sum(x, y, x, y);
+    }
+
+    /**
+     * Return the number of FILLED cells in the (2r+1)x(2r+1) window centered
+     * on (x, y), including the cell itself.
+     * @param y
+     * @param x
+     * @param radius
+     * @return
+     */
+    public int getNeighborCount(int y, int x, int radius) {
+        return sum(x - radius, y - radius, x + radius, y + radius);
+    }
+
+    /**
+     * Return the number of FILLED cells in the (2r+1)x(2r+1) window centered
+     * on (x, y) without the four corner cells.  With a radius of 2 this is
+     * the same count as {@link LatticeFns#getTwoStepNeighborCount}.
+     * @param y
+     * @param x
+     * @param radius
+     * @return
+     */
+    public int getRadiusNeighborCount(int y, int x, int radius) {
+        return getNeighborCount(y, x, radius)
+                - get(x - radius, y - radius) - get(x + radius, y - radius)
+                - get(x - radius, y + radius) - get(x + radius, y + radius);
+    }
+}
@@ -0,0 +1,114 @@
+package com.seekerr.games.generator;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.common.collect.Lists;
+import com.seekerr.games.generator.GenerationService.Callback;
+import com.seekerr.games.generator.GenerationService.Job;
+import com.seekerr.games.generator.GenerationService.SlicedJob;
+
+public class FrameGenerationServiceTest {
+
+    /** Takes a number of slices to finish, whatever the budget. */
+    static class CountingJob implements SlicedJob<String> {
+        final String level;
+        int slices;
+
+        CountingJob(String level, int slices) {
+            this.level = level;
+            this.slices = slices;
+        }
+
+        @Override
+        public String generate(GenerationRequest request) {
+            slices = 0;
+            return level;
+        }
+
+        @Override
+        public boolean generateFor(long budgetNanos,
+                GenerationRequest request) {
+            return --slices <= 0;
+        }
+
+        @Override
+        public String getLevel() {
+            return level;
+        }
+    }
+
+    List<String> shown;
+    Callback<String> show;
+
+    @Before
+    public void setup() {
+        shown = Lists.newArrayList();
+        show = new Callback<String>() {
+            @Override
+            public void ready(String level) {
+                shown.add(level);
+            }
+        };
+    }
+
+    @Test
+    public void testSlicedJobsRunOnUpdate() {
+        FrameGenerationService service = new FrameGenerationService();
+        GenerationRequest request = service.submit(new CountingJob("a", 3),
+                show);
+        assertTrue(request.isPending());
+        assertTrue(shown.isEmpty());
+
+        service.update();
+        service.update();
+        assertTrue(shown.isEmpty());
+        service.update();
+        assertEquals(Lists.newArrayList("a"), shown);
+        assertTrue(request.isDone());
+        assertEquals(0, service.getPending());
+    }
+
+    @Test
+    public void testJobsRunInOrder() {
+        FrameGenerationService service = new FrameGenerationService();
+        service.submit(new CountingJob("a", 2), show);
+        service.submit(new CountingJob("b", 1), show);
+        service.update();
+        assertTrue(shown.isEmpty());
+        // a finishes and b gets what is left of the frame
+        service.update();
+        assertEquals(Lists.newArrayList("a", "b"), shown);
+    }
+
+    @Test
+    public void testCancelledJobIsDropped() {
+        FrameGenerationService service = new FrameGenerationService();
+        GenerationRequest request = service.submit(new CountingJob("a", 2),
+                show);
+        service.update();
+        request.cancel();
+        service.update();
+        assertTrue(shown.isEmpty());
+        assertFalse(request.isDone());
+        assertEquals(0, service.getPending());
+    }
+
+    @Test
+    public void testPlainJobRunsAtOnce() {
+        FrameGenerationService service = new FrameGenerationService();
+        service.submit(new Job<String>() {
+            @Override
+            public String generate(GenerationRequest request) {
+                return "a";
+            }
+        }, show);
+        assertEquals(Lists.newArrayList("a"), shown);
+    }
+}
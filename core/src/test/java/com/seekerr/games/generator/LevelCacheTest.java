@@ -0,0 +1,200 @@
+package com.seekerr.games.generator;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.badlogic.gdx.Application;
+import com.badlogic.gdx.Gdx;
+import com.google.common.collect.Maps;
+import com.seekerr.games.generator.LevelCache.Store;
+import com.seekerr.games.procedural.CaveGenerationImpl;
+import com.seekerr.games.procedural.ForestGenerationImpl;
+
+public class LevelCacheTest {
+
+    /** Keeps the spilled levels in a map. */
+    static class MapStore implements Store {
+        Map<String, byte[]> levels = Maps.newHashMap();
+
+        @Override
+        public byte[] load(String key) {
+            return levels.get(key);
+        }
+
+        @Override
+        public void store(String key, byte[] level) {
+            levels.put(key, level);
+        }
+    }
+
+    @Before
+    public void setupMocks() {
+        Gdx.app = mock(Application.class);
+    }
+
+    @Test
+    public void testKey() {
+        String key = LevelCache.key("cave", 1, "60x40", 7);
+        assertEquals(key, LevelCache.key("cave", 1, "60x40", 7));
+        assertTrue(key, key.matches("cave-[0-9a-f]{16}"));
+        assertNotEquals(key, LevelCache.key("cave", 2, "60x40", 7));
+        assertNotEquals(key, LevelCache.key("cave", 1, "60x41", 7));
+        assertNotEquals(key, LevelCache.key("cave", 1, "60x40", 8));
+        assertNotEquals(key, LevelCache.key("forest", 1, "60x40", 7));
+    }
+
+    @Test
+    public void testLeastRecentlyUsedIsEvicted() {
+        MapStore store = new MapStore();
+        LevelCache cache = new LevelCache(30, store);
+        cache.put("a", new byte[10]);
+        cache.put("b", new byte[10]);
+        cache.put("c", new byte[10]);
+        assertEquals(30, cache.getBytes());
+        // a is now used more recently than b
+        assertTrue(cache.get("a") != null);
+
+        cache.put("d", new byte[10]);
+        assertEquals(3, cache.size());
+        assertEquals(1, cache.getEvictions());
+        assertTrue(store.levels.containsKey("b"));
+        assertFalse(store.levels.containsKey("a"));
+
+        // b comes back from the store and pushes c out
+        byte[] b = cache.get("b");
+        assertSame(store.levels.get("b"), b);
+        assertEquals(1, cache.getStoreHits());
+        assertEquals(2, cache.getEvictions());
+        assertTrue(store.levels.containsKey("c"));
+
+        assertNull(cache.get("e"));
+        assertEquals(1, cache.getHits());
+        assertEquals(1, cache.getMisses());
+    }
+
+    @Test
+    public void testStoreRunsWithoutTheLock() throws Exception {
+        final CountDownLatch storing = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final LevelCache cache = new LevelCache(10, new MapStore() {
+            @Override
+            public void store(String key, byte[] level) {
+                storing.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                super.store(key, level);
+            }
+        });
+        cache.put("a", new byte[10]);
+        Thread writer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                cache.put("b", new byte[10]);
+            }
+        });
+        writer.start();
+        assertTrue(storing.await(5, TimeUnit.SECONDS));
+        // a is being written out, the cache still answers
+        assertEquals(1, cache.getEvictions());
+        assertArrayEquals(new byte[10], cache.get("b"));
+        release.countDown();
+        writer.join();
+    }
+
+    @Test
+    public void testLargerThanMemory() {
+        MapStore store = new MapStore();
+        LevelCache cache = new LevelCache(10, store);
+        cache.put("a", new byte[11]);
+        assertEquals(0, cache.size());
+        assertEquals(11, cache.get("a").length);
+    }
+
+    @Test
+    public void testCave() {
+        LevelCache cache = new LevelCache(LevelCache.DEFAULT_MAX_BYTES);
+        CaveGenerationImpl cave = CaveGenerationImpl.getDefaultImpl(3);
+        assertFalse(cache.load(cave, 3, LevelCodecs.CAVE));
+        cave.generate();
+        cache.store(cave, 3, LevelCodecs.CAVE);
+
+        CaveGenerationImpl cached = CaveGenerationImpl.getDefaultImpl(3);
+        assertTrue(cache.load(cached, 3, LevelCodecs.CAVE));
+        for (int y = 0; y < cave.getHeight(); ++y) {
+            assertTrue(Arrays.equals(cave.getMap()[y], cached.getMap()[y]));
+        }
+        // another seed or other parameters are other levels
+        assertFalse(cache.load(CaveGenerationImpl.getDefaultImpl(4), 4,
+                LevelCodecs.CAVE));
+        assertFalse(cache.load(CaveGenerationImpl.Builder.create()
+                .withSize(60, 40).withRandomSeed(3).addPhase(5, 2, 4)
+                .build(), 3, LevelCodecs.CAVE));
+    }
+
+    @Test
+    public void testForest() {
+        LevelCache cache = new LevelCache(LevelCache.DEFAULT_MAX_BYTES);
+        ForestGenerationImpl forest = createForest();
+        forest.generate();
+        cache.store(forest, 5, LevelCodecs.FOREST);
+
+        ForestGenerationImpl cached = createForest();
+        assertTrue(cache.load(cached, 5, LevelCodecs.FOREST));
+        for (int y = 0; y < forest.getHeight(); ++y) {
+            assertArrayEquals(forest.getForest()[y], cached.getForest()[y]);
+        }
+        // changing the cached forest does not change the cache
+        cached.getForest()[0][0] = ForestGenerationImpl.SEEDED;
+        ForestGenerationImpl again = createForest();
+        assertTrue(cache.load(again, 5, LevelCodecs.FOREST));
+        assertEquals(forest.getForest()[0][0], again.getForest()[0][0]);
+    }
+
+    @Test
+    public void testRestoredForestKeepsGrowing() {
+        LevelCache cache = new LevelCache(LevelCache.DEFAULT_MAX_BYTES);
+        ForestGenerationImpl forest = createForest();
+        forest.generate();
+        cache.store(forest, 5, LevelCodecs.FOREST);
+
+        ForestGenerationImpl cached = createForest();
+        assertTrue(cache.load(cached, 5, LevelCodecs.FOREST));
+        assertEquals(forest.getTreeCells().length,
+                cached.getTreeCells().length);
+        assertEquals(forest.getStepCount(), cached.getStepCount());
+
+        int version = cached.getVersion();
+        for (int i = 0; i < 20; ++i) {
+            cached.step();
+        }
+        assertTrue(cached.getVersion() > version);
+        assertTrue(cached.getTreeCells().length
+                > forest.getTreeCells().length);
+    }
+
+    private static ForestGenerationImpl createForest() {
+        return ForestGenerationImpl.Builder.create()
+                .withSize(50, 30)
+                .withRandomSeed(5)
+                .withInitialTrees(5)
+                .withSeedParams(3, 0.1, 0.05)
+                .build();
+    }
+}
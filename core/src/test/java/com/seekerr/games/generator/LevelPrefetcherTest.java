@@ -0,0 +1,128 @@
+package com.seekerr.games.generator;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.badlogic.gdx.Application;
+import com.badlogic.gdx.Gdx;
+import com.google.common.collect.Lists;
+import com.seekerr.games.generator.GenerationService.Callback;
+import com.seekerr.games.generator.LevelPrefetcher.Generator;
+
+public class LevelPrefetcherTest {
+
+    /** Runs the jobs only when asked to, in the order they came in. */
+    static class DeferredService implements GenerationService {
+        List<Runnable> jobs = Lists.newArrayList();
+
+        @Override
+        public <T> GenerationRequest submit(final Job<T> job,
+                final Callback<T> callback) {
+            final GenerationRequest request = new GenerationRequest();
+            jobs.add(new Runnable() {
+                @Override
+                public void run() {
+                    T level = job.generate(request);
+                    if (!request.isCancelled()) {
+                        request.finish();
+                        callback.ready(level);
+                    }
+                }
+            });
+            return request;
+        }
+
+        void runAll() {
+            while (!jobs.isEmpty()) {
+                jobs.remove(0).run();
+            }
+        }
+
+        @Override
+        public void update() {
+        }
+
+        @Override
+        public void dispose() {
+        }
+    }
+
+    static final Generator<Long> SEEDS = new Generator<Long>() {
+        @Override
+        public Long generate(long seed, GenerationRequest request) {
+            return seed;
+        }
+    };
+
+    List<Long> shown;
+    Callback<Long> show;
+
+    @Before
+    public void setupMocks() {
+        Gdx.app = mock(Application.class);
+        shown = Lists.newArrayList();
+        show = new Callback<Long>() {
+            @Override
+            public void ready(Long level) {
+                shown.add(level);
+            }
+        };
+    }
+
+    @Test
+    public void testHitsAndMisses() {
+        DeferredService service = new DeferredService();
+        LevelPrefetcher<Long> prefetcher = new LevelPrefetcher<Long>(
+                service, 2, 100, SEEDS);
+
+        // nothing is generated yet, the first level has to wait
+        GenerationRequest request = prefetcher.next(show);
+        assertTrue(request.isPending());
+        assertEquals(2, prefetcher.getQueued());
+        service.runAll();
+        assertEquals(Lists.newArrayList(100L), shown);
+
+        // the next two were generated ahead of time
+        prefetcher.next(show);
+        prefetcher.next(show);
+        assertEquals(Lists.newArrayList(100L, 101L, 102L), shown);
+        assertEquals(2, prefetcher.getHits());
+        assertEquals(1, prefetcher.getMisses());
+        assertEquals(102L, prefetcher.getSeed());
+        assertEquals(2, prefetcher.getQueued());
+    }
+
+    @Test
+    public void testStaleLevelIsDropped() {
+        DeferredService service = new DeferredService();
+        LevelPrefetcher<Long> prefetcher = new LevelPrefetcher<Long>(
+                service, 1, 0, SEEDS);
+
+        GenerationRequest first = prefetcher.next(show);
+        GenerationRequest second = prefetcher.next(show);
+        assertTrue(first.isCancelled());
+        assertFalse(second.isCancelled());
+        service.runAll();
+        assertEquals(Lists.newArrayList(1L), shown);
+        assertEquals(2, prefetcher.getMisses());
+    }
+
+    @Test
+    public void testSynchronousWithoutDepth() {
+        LevelPrefetcher<Long> prefetcher = new LevelPrefetcher<Long>(
+                new SynchronousGenerationService(), 0, 7, SEEDS);
+        prefetcher.next(show);
+        prefetcher.next(show);
+        assertEquals(Lists.newArrayList(7L, 8L), shown);
+        assertEquals(0, prefetcher.getHits());
+        assertEquals(2, prefetcher.getMisses());
+        assertEquals(0, prefetcher.getQueued());
+    }
+}
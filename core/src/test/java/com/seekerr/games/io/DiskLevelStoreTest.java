@@ -0,0 +1,31 @@
+package com.seekerr.games.io;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertNull;
+
+import java.io.File;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class DiskLevelStoreTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testStoreAndLoad() {
+        DiskLevelStore store = new DiskLevelStore(new File(folder.getRoot(),
+                "levels"));
+        assertNull(store.load("cave-1"));
+
+        store.store("cave-1", new byte[] { 1, 2, 3 });
+        assertArrayEquals(new byte[] { 1, 2, 3 }, store.load("cave-1"));
+
+        store.store("cave-1", new byte[] { 4 });
+        assertArrayEquals(new byte[] { 4 }, store.load("cave-1"));
+        assertArrayEquals(new String[] { "cave-1.level" },
+                store.getDirectory().list());
+    }
+}
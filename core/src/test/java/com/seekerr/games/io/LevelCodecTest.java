@@ -0,0 +1,115 @@
+package com.seekerr.games.io;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class LevelCodecTest {
+
+    private static boolean[][] noise(int width, int height, long seed) {
+        Random random = new Random(seed);
+        boolean[][] map = new boolean[height][width];
+        for (int y = 0; y < height; ++y) {
+            for (int x = 0; x < width; ++x) {
+                map[y][x] = random.nextBoolean();
+            }
+        }
+        return map;
+    }
+
+    /** Solid rock with a few repeated rooms, like a settled cave. */
+    private static boolean[][] rooms(int width, int height) {
+        boolean[][] map = new boolean[height][width];
+        for (boolean[] row : map) {
+            Arrays.fill(row, true);
+        }
+        for (int y = 0; y < height; ++y) {
+            for (int x = 0; x < width; ++x) {
+                if ((x / 16 + y / 16) % 3 == 0 && (x % 16) > 2 && (y % 16) > 3) {
+                    map[y][x] = false;
+                }
+            }
+        }
+        return map;
+    }
+
+    private static byte[] encode(boolean[][] map) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        LevelCodec.encodeCave(map, out);
+        return out.toByteArray();
+    }
+
+    private static void assertCaveRoundTrip(boolean[][] map)
+            throws IOException {
+        byte[] bytes = encode(map);
+        boolean[][] decoded = new boolean[map.length][map[0].length];
+        LevelCodec.decodeCave(new ByteArrayInputStream(bytes), decoded);
+        for (int y = 0; y < map.length; ++y) {
+            assertTrue("row " + y, Arrays.equals(map[y], decoded[y]));
+        }
+    }
+
+    @Test
+    public void testCaveRoundTrip() throws IOException {
+        // sizes that end part way through a tile
+        assertCaveRoundTrip(noise(8, 8, 1));
+        assertCaveRoundTrip(noise(61, 37, 2));
+        assertCaveRoundTrip(noise(1, 13, 3));
+        assertCaveRoundTrip(rooms(100, 75));
+        assertCaveRoundTrip(rooms(256, 256));
+    }
+
+    @Test
+    public void testForestRoundTrip() throws IOException {
+        Random random = new Random(4);
+        byte[][] forest = new byte[45][77];
+        for (int y = 0; y < forest.length; ++y) {
+            for (int x = 0; x < forest[y].length; ++x) {
+                forest[y][x] = (byte) (x > 40 ? 1 : random.nextInt(3));
+            }
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        LevelCodec.encodeForest(forest, out);
+        byte[][] decoded = new byte[45][77];
+        LevelCodec.decodeForest(new ByteArrayInputStream(out.toByteArray()),
+                decoded);
+        for (int y = 0; y < forest.length; ++y) {
+            assertArrayEquals(forest[y], decoded[y]);
+        }
+    }
+
+    @Test
+    public void testRepeatedTilesCompress() throws IOException {
+        boolean[][] map = rooms(256, 256);
+        // 8192 bytes as packed bits
+        byte[] bytes = encode(map);
+        assertTrue("size " + bytes.length, bytes.length < 8192 / 5);
+
+        boolean[][] solid = new boolean[250][250];
+        for (boolean[] row : solid) {
+            Arrays.fill(row, true);
+        }
+        // one run token per band, edge tiles included
+        assertTrue(encode(solid).length < 100);
+    }
+
+    @Test
+    public void testWrongSize() throws IOException {
+        byte[] bytes = encode(noise(16, 16, 5));
+        try {
+            LevelCodec.decodeCave(new ByteArrayInputStream(bytes),
+                    new boolean[16][17]);
+            fail("expected an IOException");
+        } catch (IOException e) {
+            // expected
+        }
+    }
+}
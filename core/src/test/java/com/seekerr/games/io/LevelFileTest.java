@@ -0,0 +1,176 @@
+package com.seekerr.games.io;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.seekerr.games.procedural.MarchingSquares;
+import com.seekerr.games.procedural.MarchingSquares.Contour;
+import com.seekerr.games.procedural.RoomLabels;
+
+public class LevelFileTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static boolean[][] randomCave(int width, int height, long seed) {
+        Random random = new Random(seed);
+        boolean[][] map = new boolean[height][width];
+        for (int y = 0; y < height; ++y) {
+            for (int x = 0; x < width; ++x) {
+                map[y][x] = random.nextFloat() < 0.45f;
+            }
+        }
+        return map;
+    }
+
+    private static byte[][] randomForest(int width, int height, long seed) {
+        Random random = new Random(seed);
+        byte[][] map = new byte[height][width];
+        for (int y = 0; y < height; ++y) {
+            for (int x = 0; x < width; ++x) {
+                map[y][x] = (byte) random.nextInt(4);
+            }
+        }
+        return map;
+    }
+
+    @Test
+    public void testRoundTrip() throws IOException {
+        // widths that are not a multiple of the word size
+        int width = 131;
+        int height = 37;
+        boolean[][] cave = randomCave(width, height, 1);
+        byte[][] forest = randomForest(width, height, 2);
+        List<Contour> contours = MarchingSquares.getContours(cave);
+        RoomLabels labels = RoomLabels.label(cave, false);
+
+        File file = folder.newFile("level.lvl");
+        long length = LevelWriter.create(width, height)
+                .withGenerator("cave", 3, "fill=0.45", 42L).withCave(cave)
+                .withForest(forest).withContours(contours)
+                .withLabels(labels).write(file);
+        assertEquals(file.length(), length);
+
+        LevelReader reader = LevelReader.open(file);
+        try {
+            assertEquals(width, reader.getWidth());
+            assertEquals(height, reader.getHeight());
+            assertEquals(42L, reader.getSeed());
+            assertEquals("cave", reader.getGenerator());
+            assertEquals(3, reader.getGeneratorVersion());
+            assertEquals("fill=0.45", reader.getParams());
+
+            boolean[][] readCave = reader.readCave();
+            byte[][] readForest = reader.readForest();
+            for (int y = 0; y < height; ++y) {
+                assertTrue(Arrays.equals(cave[y], readCave[y]));
+                assertArrayEquals(forest[y], readForest[y]);
+                for (int x = 0; x < width; ++x) {
+                    assertEquals(cave[y][x], reader.isFilled(x, y));
+                    assertEquals(forest[y][x], reader.getForest(x, y));
+                    assertEquals(labels.getLabel(x, y), reader.getLabel(x, y));
+                }
+            }
+
+            List<Contour> readContours = reader.readContours();
+            assertEquals(contours.size(), readContours.size());
+            for (int i = 0; i < contours.size(); ++i) {
+                assertEquals(contours.get(i).getPoints(),
+                        readContours.get(i).getPoints());
+                assertEquals(contours.get(i).isHole(),
+                        readContours.get(i).isHole());
+            }
+        } finally {
+            reader.close();
+        }
+    }
+
+    @Test
+    public void testTile() throws IOException {
+        int width = 200;
+        int height = 90;
+        boolean[][] cave = randomCave(width, height, 3);
+        File file = folder.newFile("tile.lvl");
+        LevelWriter.create(width, height).withGenerator("cave", 1, "", 3L)
+                .withCave(cave).write(file);
+
+        LevelReader reader = LevelReader.open(file);
+        try {
+            assertTrue(reader.hasCave());
+            assertFalse(reader.hasForest());
+            assertFalse(reader.hasContours());
+            assertFalse(reader.hasLabels());
+
+            boolean[][] tile = reader.readCaveTile(60, 10, 70, 8);
+            for (int y = 0; y < 8; ++y) {
+                for (int x = 0; x < 70; ++x) {
+                    assertEquals(cave[10 + y][60 + x], tile[y][x]);
+                }
+            }
+
+            long[] words = new long[4];
+            reader.readCaveRow(5, words);
+            for (int x = 0; x < width; ++x) {
+                assertEquals(cave[5][x], ((words[x >>> 6] >>> (x & 63)) & 1) != 0);
+            }
+        } finally {
+            reader.close();
+        }
+    }
+
+    @Test
+    public void testShortSection() throws IOException {
+        int width = 100;
+        int height = 40;
+        File file = folder.newFile("short.lvl");
+        LevelWriter.create(width, height).withGenerator("cave", 1, "", 5L)
+                .withCave(randomCave(width, height, 5)).write(file);
+
+        // claim a bigger level than the cave section holds
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        try {
+            raf.seek(12);
+            raf.write(new byte[] { 0, 1, 0, 0 });
+        } finally {
+            raf.close();
+        }
+        try {
+            LevelReader.open(file).close();
+            fail("expected an IOException");
+        } catch (IOException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains("Section"));
+        }
+    }
+
+    @Test
+    public void testBadMagic() throws IOException {
+        File file = folder.newFile("bad.lvl");
+        FileOutputStream out = new FileOutputStream(file);
+        try {
+            out.write(new byte[64]);
+        } finally {
+            out.close();
+        }
+        try {
+            LevelReader.open(file).close();
+            fail("expected an IOException");
+        } catch (IOException e) {
+            // expected
+        }
+    }
+}
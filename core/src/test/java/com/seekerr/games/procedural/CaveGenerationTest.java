@@ -2,6 +2,11 @@ package com.seekerr.games.procedural;
 
 import static com.seekerr.games.procedural.LatticeFns.EMPTY;
 import static com.seekerr.games.procedural.LatticeFns.FILLED;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 import static org.mockito.Matchers.anyString;
 import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.mock;
@@ -18,6 +23,9 @@ import org.mockito.stubbing.Answer;
 
 import com.badlogic.gdx.Application;
 import com.badlogic.gdx.Gdx;
+import com.google.common.collect.Lists;
+import com.seekerr.games.procedural.CaveGenerationImpl.Backend;
+import com.seekerr.games.procedural.CaveGenerationImpl.Phase;
 
 
 public class CaveGenerationTest {
@@ -103,4 +111,360 @@ public class CaveGenerationTest {
         
         System.out.println(impl.toString());
     }
+    
+    private CaveGenerationImpl create(int width, int height, long seed, 
+            Backend backend) { 
+        return CaveGenerationImpl.Builder.create()
+                .withSize(width, height)
+                .withRandomSeed(seed)
+                .withBackend(backend)
+                .addPhase(5, 2, 4)
+                .addPhase(5, -1, 5)
+                .build();
+    }
+    
+    private void assertSameMap(boolean[][] expected, boolean[][] actual) { 
+        assertEquals(expected.length, actual.length);
+        for (int i = 0; i < expected.length; ++i) {
+            assertArrayEquals("row " + i, expected[i], actual[i]);
+        }
+    }
+    
+    @Test
+    public void testBitPackedMatchesLattice() { 
+        int[][] sizes = { { 60, 40 }, { 64, 64 }, { 65, 33 }, { 130, 70 }, { 5, 5 } };
+        for (int[] size : sizes) { 
+            for (long seed = 1; seed <= 5; ++seed) { 
+                CaveGenerationImpl lattice = create(size[0], size[1], seed, 
+                        Backend.LATTICE);
+                CaveGenerationImpl packed = create(size[0], size[1], seed, 
+                        Backend.BIT_PACKED);
+                lattice.initialize();
+                packed.initialize();
+                for (int round = 0; round < 4; ++round) { 
+                    lattice.step(5, 2);
+                    packed.step(5, 2);
+                    assertSameMap(lattice.getMap(), packed.getMap());
+                }
+                lattice.step(5, -1);
+                packed.step(5, -1);
+                assertSameMap(lattice.getMap(), packed.getMap());
+            }
+        }
+    }
+    
+    @Test
+    public void testSummedAreaMatchesLattice() { 
+        for (long seed = 1; seed <= 5; ++seed) { 
+            CaveGenerationImpl lattice = create(70, 45, seed, Backend.LATTICE);
+            CaveGenerationImpl summed = create(70, 45, seed, 
+                    Backend.SUMMED_AREA);
+            lattice.generate();
+            summed.generate();
+            assertSameMap(lattice.getMap(), summed.getMap());
+        }
+    }
+    
+    @Test
+    public void testLargeRadiusMatchesLattice() { 
+        for (Backend backend : Backend.values()) { 
+            CaveGenerationImpl lattice = CaveGenerationImpl.Builder.create()
+                    .withSize(90, 60)
+                    .withRandomSeed(11)
+                    .addPhase(5, 6, 3, 3)
+                    .addPhase(5, 20, 2, 4)
+                    .addPhase(5, -1, 3)
+                    .build();
+            CaveGenerationImpl other = CaveGenerationImpl.Builder.create()
+                    .withSize(90, 60)
+                    .withRandomSeed(11)
+                    .withBackend(backend)
+                    .addPhase(5, 6, 3, 3)
+                    .addPhase(5, 20, 2, 4)
+                    .addPhase(5, -1, 3)
+                    .build();
+            lattice.generate();
+            other.generate();
+            assertSameMap(lattice.getMap(), other.getMap());
+        }
+    }
+    
+    @Test
+    public void testParallelMatchesSerial() { 
+        ForkJoinBandExecutor executor = new ForkJoinBandExecutor(4);
+        for (Backend backend : Backend.values()) { 
+            for (int radius = 2; radius <= 3; ++radius) { 
+                CaveGenerationImpl serial = CaveGenerationImpl.Builder.create()
+                        .withSize(257, 190)
+                        .withRandomSeed(1409760206706L)
+                        .withBackend(backend)
+                        .addPhase(5, 2, 4, radius)
+                        .addPhase(5, -1, 5)
+                        .build();
+                CaveGenerationImpl parallel = CaveGenerationImpl.Builder.create()
+                        .withSize(257, 190)
+                        .withRandomSeed(1409760206706L)
+                        .withBackend(backend)
+                        .withExecutor(executor)
+                        .addPhase(5, 2, 4, radius)
+                        .addPhase(5, -1, 5)
+                        .build();
+                serial.generate();
+                parallel.generate();
+                assertSameMap(serial.getMap(), parallel.getMap());
+            }
+        }
+    }
+    
+    @Test
+    public void testBitPackedGenerate() { 
+        CaveGenerationImpl lattice = create(200, 120, 1410187129987L, 
+                Backend.LATTICE);
+        CaveGenerationImpl packed = create(200, 120, 1410187129987L, 
+                Backend.BIT_PACKED);
+        lattice.generate();
+        packed.generate();
+        assertSameMap(lattice.getMap(), packed.getMap());
+    }
+    
+    @Test
+    public void testActiveTrackingMatchesFullRounds() { 
+        BandExecutor[] executors = { BandExecutor.SERIAL, 
+                new ForkJoinBandExecutor(4) };
+        for (BandExecutor executor : executors) { 
+            for (Backend backend : Backend.values()) { 
+                for (int radius = 2; radius <= 3; ++radius) { 
+                    CaveGenerationImpl full = create(200, 90, 3, backend);
+                    CaveGenerationImpl active = CaveGenerationImpl.Builder.create()
+                            .withSize(200, 90)
+                            .withRandomSeed(3)
+                            .withBackend(backend)
+                            .withExecutor(executor)
+                            .withActiveTracking(true)
+                            .build();
+                    full.initialize();
+                    active.initialize();
+                    Phase[] phases = { new Phase(5, 2, 4, radius), 
+                            new Phase(5, -1, 8) };
+                    for (Phase phase : phases) { 
+                        for (int round = 0; round < phase.getRounds(); ++round) { 
+                            full.step(phase);
+                            active.stepActive(phase);
+                            assertSameMap(full.getMap(), active.getMap());
+                        }
+                    }
+                }
+            }
+        }
+    }
+    
+    @Test
+    public void testStablePhase() { 
+        for (Backend backend : Backend.values()) { 
+            CaveGenerationImpl full = CaveGenerationImpl.Builder.create()
+                    .withSize(150, 100)
+                    .withRandomSeed(5)
+                    .withBackend(backend)
+                    .addPhase(5, 2, 4)
+                    .addPhase(5, -1, 40)
+                    .build();
+            CaveGenerationImpl stable = CaveGenerationImpl.Builder.create()
+                    .withSize(150, 100)
+                    .withRandomSeed(5)
+                    .withBackend(backend)
+                    .addPhase(5, 2, 4)
+                    .addStablePhase(5, -1, 40)
+                    .build();
+            full.generate();
+            stable.generate();
+            assertSameMap(full.getMap(), stable.getMap());
+            assertEquals(0, full.getRoundsSaved());
+            assertTrue(stable.getRoundsSaved() > 0);
+        }
+    }
+    
+    @Test
+    public void testVersion() {
+        for (Backend backend : Backend.values()) {
+            CaveGenerationImpl cave = CaveGenerationImpl.Builder.create()
+                    .withSize(100, 70)
+                    .withRandomSeed(5)
+                    .withBackend(backend)
+                    .addPhase(5, 2, 4)
+                    .addStablePhase(5, -1, 40)
+                    .build();
+            cave.initialize();
+            int version = cave.getVersion();
+            cave.getMap();
+            assertEquals(version, cave.getVersion());
+
+            cave.step(cave.getPhase(0));
+            assertTrue(cave.getVersion() > version);
+
+            // a stable map stops bumping the version.
+            cave.iterate();
+            version = cave.getVersion();
+            assertEquals(0, cave.stepActive(cave.getPhase(1)));
+            assertEquals(version, cave.getVersion());
+        }
+    }
+
+    @Test
+    public void testParseRule() { 
+        Rule rule = Rule.parse("B678/S345678");
+        assertEquals("B678/S345678", rule.toString());
+        assertEquals(rule, Rule.parse("s345678/b678"));
+        // an empty cell with 6 filled neighbors is born
+        assertTrue(rule.isFilled(EMPTY, 6, 0));
+        assertTrue(!rule.isFilled(EMPTY, 5, 0));
+        // a filled cell with 3 filled neighbors survives
+        assertTrue(rule.isFilled(FILLED, 4, 0));
+        assertTrue(!rule.isFilled(FILLED, 3, 0));
+        
+        String[] malformed = { "", "B9/S1", "B1", "X1/S2", "B1/B2/S3" };
+        for (String notation : malformed) { 
+            try { 
+                Rule.parse(notation);
+                fail("Expected " + notation + " to be rejected");
+            } catch (IllegalArgumentException e) { 
+            }
+        }
+    }
+    
+    @Test
+    public void testRuleTable() { 
+        Rule[] rules = { Rule.threshold(5, 2), Rule.parse("B5678/S45678"), 
+                Rule.weighted(3, 1, 14) };
+        for (Rule rule : rules) { 
+            for (int radius = 1; radius <= 3; ++radius) { 
+                RuleTable table = rule.compile(radius);
+                int side = 2 * radius + 1;
+                for (int count1 = 0; count1 <= 9; ++count1) { 
+                    for (int count2 = 0; count2 <= side * side - 4; ++count2) { 
+                        assertEquals(rule.isFilled(EMPTY, count1, count2), 
+                                table.isFilled(EMPTY, count1, count2));
+                        assertEquals(rule.isFilled(FILLED, count1, count2), 
+                                table.isFilled(FILLED, count1, count2));
+                    }
+                }
+            }
+        }
+    }
+    
+    @Test
+    public void testCustomRulesMatchAcrossBackends() { 
+        Rule[] rules = { Rule.parse("B5678/S45678"), Rule.weighted(3, 1, 14) };
+        for (Rule rule : rules) { 
+            for (int radius = 2; radius <= 3; ++radius) { 
+                CaveGenerationImpl lattice = CaveGenerationImpl.Builder.create()
+                        .withSize(150, 80)
+                        .withRandomSeed(17)
+                        .addPhase(rule, 5, radius)
+                        .build();
+                lattice.initialize();
+                lattice.iterate();
+                for (Backend backend : Backend.values()) { 
+                    for (int active = 0; active < 2; ++active) { 
+                        CaveGenerationImpl other = CaveGenerationImpl.Builder.create()
+                                .withSize(150, 80)
+                                .withRandomSeed(17)
+                                .withBackend(backend)
+                                .withActiveTracking(active == 1)
+                                .addPhase(rule, 5, radius)
+                                .build();
+                        other.initialize();
+                        other.iterate();
+                        assertSameMap(lattice.getMap(), other.getMap());
+                    }
+                }
+            }
+        }
+    }
+    
+    @Test
+    public void testGenerateWithProgress() { 
+        CaveGenerationImpl expected = CaveGenerationImpl.Builder.create()
+                .withSize(60, 40)
+                .withRandomSeed(11)
+                .addPhase(5, 2, 4)
+                .addPhase(5, -1, 5)
+                .build();
+        expected.generate();
+
+        final List<Float> progress = Lists.newArrayList();
+        ProgressMonitor monitor = new ProgressMonitor() {
+            @Override
+            public void setProgress(float fraction) {
+                progress.add(fraction);
+            }
+
+            @Override
+            public boolean isCancelled() {
+                return false;
+            }
+        };
+        CaveGenerationImpl lattice = CaveGenerationImpl.Builder.create()
+                .withSize(60, 40)
+                .withRandomSeed(11)
+                .addPhase(5, 2, 4)
+                .addPhase(5, -1, 5)
+                .build();
+        assertTrue(lattice.generate(monitor));
+        assertSameMap(expected.getMap(), lattice.getMap());
+        // a phase that becomes stable reports its skipped rounds at once
+        assertTrue(progress.size() <= 10);
+        for (int i = 1; i < progress.size(); ++i) { 
+            assertTrue(progress.get(i) > progress.get(i - 1));
+        }
+        assertEquals(1f, progress.get(progress.size() - 1), 0);
+
+        // cancel after the third round
+        progress.clear();
+        monitor = new ProgressMonitor() {
+            @Override
+            public void setProgress(float fraction) {
+                progress.add(fraction);
+            }
+
+            @Override
+            public boolean isCancelled() {
+                return progress.size() == 3;
+            }
+        };
+        assertFalse(lattice.generate(monitor));
+        assertEquals(3, progress.size());
+    }
+
+    @Test
+    public void testGenerateForMatchesGenerate() { 
+        for (int seed = 0; seed < 5; ++seed) { 
+            CaveGenerationImpl expected = CaveGenerationImpl.Builder.create()
+                    .withSize(80, 50)
+                    .withRandomSeed(seed)
+                    .addPhase(5, 2, 4)
+                    .addStablePhase(5, -1, 20)
+                    .build();
+            expected.generate();
+
+            CaveGenerationImpl sliced = CaveGenerationImpl.Builder.create()
+                    .withSize(80, 50)
+                    .withRandomSeed(seed)
+                    .addPhase(5, 2, 4)
+                    .addStablePhase(5, -1, 20)
+                    .build();
+            int calls = 1;
+            while (!sliced.generateFor(0)) { 
+                ++calls;
+            }
+            assertSameMap(expected.getMap(), sliced.getMap());
+            assertEquals(expected.getRoundsSaved(), sliced.getRoundsSaved());
+            assertTrue(calls > 4);
+            assertTrue(sliced.generateFor(0));
+
+            // a new seed starts over, a large budget finishes in one call
+            sliced.setSeed(seed);
+            assertTrue(sliced.generateFor(Long.MAX_VALUE / 2));
+            assertSameMap(expected.getMap(), sliced.getMap());
+        }
+    }
 }
@@ -1,11 +1,17 @@
 package com.seekerr.games.procedural;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
 import static org.mockito.Matchers.anyString;
 import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.mock;
 
 import java.util.List;
+import java.util.Map;
+import java.util.Random;
 
 import org.junit.Before;
 import org.junit.Test;
@@ -15,6 +21,8 @@ import org.mockito.stubbing.Answer;
 import com.badlogic.gdx.Application;
 import com.badlogic.gdx.Gdx;
 import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.seekerr.games.procedural.ForestGenerationImpl.Growth;
 import com.seekerr.games.procedural.ForestGenerationImpl.Range;
 
 
@@ -97,6 +105,117 @@ public class ForestGenerationTest {
         assertEquals(0.44, impl.getCoverage(), 0.0001);
     }
         
+    @Test
+    public void testVersion() {
+        ForestGenerationImpl impl = ForestGenerationImpl.Builder.create()
+                .withSize(10, 10)
+                .build();
+        int version = impl.getVersion();
+        impl.addTree(4, 4);
+        assertTrue(impl.getVersion() != version);
+
+        // a tree on cells that are already FOREST changes nothing.
+        version = impl.getVersion();
+        impl.addTree(4, 4);
+        assertEquals(version, impl.getVersion());
+
+        impl.initialize();
+        assertTrue(impl.getVersion() != version);
+    }
+
+    @Test
+    public void testGenerateWithProgress() {
+        final List<Float> progress = Lists.newArrayList();
+        ProgressMonitor monitor = new ProgressMonitor() {
+            @Override
+            public void setProgress(float fraction) {
+                progress.add(fraction);
+            }
+
+            @Override
+            public boolean isCancelled() {
+                return progress.size() == 2;
+            }
+        };
+        ForestGenerationImpl impl = ForestGenerationImpl.Builder.create()
+                .withSize(60, 40)
+                .withRandomSeed(5)
+                .withInitialTrees(3)
+                .withSeedParams(4, 0.1, 0.05)
+                .build();
+        assertFalse(impl.generate(monitor));
+        assertEquals(2, progress.size());
+        assertEquals(2, impl.getStepCount());
+
+        progress.clear();
+        assertTrue(impl.generate(new ProgressMonitor() {
+            @Override
+            public void setProgress(float fraction) {
+                progress.add(fraction);
+            }
+
+            @Override
+            public boolean isCancelled() {
+                return false;
+            }
+        }));
+        assertTrue(progress.size() > 2);
+        assertEquals(1f, progress.get(progress.size() - 1), 0);
+    }
+
+    @Test
+    public void testGenerateForMatchesGenerate() {
+        for (Growth growth : Growth.values()) {
+            ForestGenerationImpl expected = ForestGenerationImpl.Builder.create()
+                    .withSize(60, 40)
+                    .withRandomSeed(9)
+                    .withInitialTrees(4)
+                    .withSeedParams(5, 0.1, 0.05)
+                    .withGrowth(growth)
+                    .build();
+            expected.generate();
+
+            ForestGenerationImpl sliced = ForestGenerationImpl.Builder.create()
+                    .withSize(60, 40)
+                    .withRandomSeed(9)
+                    .withInitialTrees(4)
+                    .withSeedParams(5, 0.1, 0.05)
+                    .withGrowth(growth)
+                    .build();
+            int calls = 1;
+            while (!sliced.generateFor(0)) {
+                ++calls;
+            }
+            assertEquals(expected.getStepCount() + 2, calls);
+            assertArrayEquals(expected.getForest(), sliced.getForest());
+        }
+    }
+        
+    @Test
+    public void testGenerateAgainReusesArrays() {
+        for (Growth growth : Growth.values()) {
+            ForestGenerationImpl impl = ForestGenerationImpl.Builder.create()
+                    .withSize(60, 40)
+                    .withRandomSeed(9)
+                    .withInitialTrees(4)
+                    .withSeedParams(5, 0.1, 0.05)
+                    .withGrowth(growth)
+                    .build();
+            byte[][] forest = impl.getForest();
+            impl.generate();
+            byte[][] expected = new byte[forest.length][];
+            for (int y = 0; y < forest.length; ++y) {
+                expected[y] = forest[y].clone();
+            }
+            int steps = impl.getStepCount();
+
+            impl.generate();
+            assertSame(forest, impl.getForest());
+            assertArrayEquals(expected, impl.getForest());
+            assertEquals(steps, impl.getStepCount());
+        }
+    }
+
     @Test
     public void testFindRange() {
         ForestGenerationImpl impl = ForestGenerationImpl.Builder.create()
@@ -112,4 +231,298 @@ public class ForestGenerationTest {
         assertEquals(new Range(4, 1, 4, 1), ranges.get(5));
         assertEquals(new Range(4, 7, 4, 7), ranges.get(6));
     }
+
+    @Test
+    public void testStepMatchesMapImplementation() {
+        ForestGenerationImpl impl = ForestGenerationImpl.Builder.create()
+                .withSize(60, 40)
+                .withInitialTrees(4)
+                .withSeedParams(6, 0.2, 0.05)
+                .build();
+        impl.initialize();
+
+        // the original HashMap version with the seeds kept in the order
+        // they were first seeded.
+        byte[][] forest = new byte[40][60];
+        for (int i = 0; i < forest.length; ++i) {
+            forest[i] = impl.getForest()[i].clone();
+        }
+        List<Point> trees = Lists.newArrayList(impl.getTrees());
+        Map<String,Double> seeds = Maps.newLinkedHashMap();
+        Random rand = new Random(11);
+        impl.rand = new Random(11);
+
+        for (int step = 0; step < 12; ++step) {
+            impl.step();
+
+            Map<String,Double> tmpMap = Maps.newLinkedHashMap();
+            for (Map.Entry<String,Double> entry : seeds.entrySet()) {
+                double value = entry.getValue();
+                tmpMap.put(entry.getKey(), value - (0.2 * value));
+            }
+            seeds = tmpMap;
+            for (Map.Entry<String,Double> entry : seeds.entrySet()) {
+                if (rand.nextDouble() < entry.getValue()) {
+                    String[] tokens = entry.getKey().split(",");
+                    Point p = new Point(Integer.parseInt(tokens[0]),
+                            Integer.parseInt(tokens[1]));
+                    trees.add(p);
+                    stamp(forest, p);
+                }
+            }
+            for (Point p : trees) {
+                seeds.remove(p.x + "," + p.y);
+            }
+            for (Point p : trees) {
+                for (Range r : impl.findRange(p.x, p.y, 6)) {
+                    for (int x = r.p1.x; x <= r.p2.x; ++x) {
+                        if (forest[r.p1.y][x] == f)
+                            continue;
+                        forest[r.p1.y][x] = ForestGenerationImpl.SEEDED;
+                        String key = x + "," + r.p1.y;
+                        Double value = seeds.get(key);
+                        seeds.put(key, (value == null ? 0.0 : value) + 0.05);
+                    }
+                }
+            }
+
+            assertEquals(trees, impl.getTrees());
+            assertEquals(seeds.size(), impl.getLiveSeeds());
+            for (int i = 0; i < forest.length; ++i) {
+                assertArrayEquals(forest[i], impl.getForest()[i]);
+            }
+            for (Map.Entry<String,Double> entry : seeds.entrySet()) {
+                String[] tokens = entry.getKey().split(",");
+                int c = Integer.parseInt(tokens[1]) * 60
+                        + Integer.parseInt(tokens[0]);
+                assertEquals(entry.getValue(), impl.getSeeds()[c], 0);
+            }
+        }
+        assertTrue(trees.size() > 4);
+    }
+
+    @Test
+    public void testGrowthListener() {
+        final List<double[]> stats = Lists.newArrayList();
+        ForestGenerationImpl impl = ForestGenerationImpl.Builder.create()
+                .withSize(60, 40)
+                .withSeedParams(6, 0.2, 0.05)
+                .withDesiredCoverage(0.6)
+                .withGrowthListener(new ForestGenerationImpl.GrowthListener() {
+                    @Override
+                    public void onStep(int step, int newTrees, int liveSeeds,
+                            double coverage, double coverageDelta) {
+                        stats.add(new double[] { step, newTrees, liveSeeds,
+                                coverage, coverageDelta });
+                    }
+                })
+                .build();
+        impl.generate();
+
+        assertEquals(impl.getStepCount(), stats.size());
+        int trees = 10;
+        double coverage = stats.get(0)[3] - stats.get(0)[4];
+        for (int i = 0; i < stats.size(); ++i) {
+            double[] s = stats.get(i);
+            assertEquals(i + 1, (int) s[0]);
+            trees += (int) s[1];
+            assertEquals(coverage + s[4], s[3], 1e-9);
+            coverage = s[3];
+        }
+        assertEquals(trees, impl.getTrees().size());
+
+        // the tracked coverage agrees with a scan of the forest.
+        int count = 0;
+        for (byte[] row : impl.getForest()) {
+            for (byte b : row) {
+                if (b == f)
+                    ++count;
+            }
+        }
+        assertEquals(count / 2400.0, impl.getCoverage(), 0);
+        assertEquals(impl.getCoverage(), coverage, 0);
+        assertTrue(coverage >= 0.6);
+    }
+
+    @Test
+    public void testIncrementalGrowthMatchesStamp() {
+        ForestGenerationImpl stamp = ForestGenerationImpl.Builder.create()
+                .withSize(80, 50)
+                .withRandomSeed(3)
+                .withSeedParams(8, 0.2, 0.05)
+                .build();
+        ForestGenerationImpl incremental = ForestGenerationImpl.Builder.create()
+                .withSize(80, 50)
+                .withRandomSeed(3)
+                .withSeedParams(8, 0.2, 0.05)
+                .withGrowth(ForestGenerationImpl.Growth.INCREMENTAL)
+                .build();
+        stamp.initialize();
+        incremental.initialize();
+        while (stamp.getCoverage() < 0.5) {
+            stamp.step();
+            incremental.step();
+
+            assertEquals(stamp.getTrees(), incremental.getTrees());
+            assertEquals(stamp.getLiveSeeds(), incremental.getLiveSeeds());
+            for (int i = 0; i < 50; ++i) {
+                assertArrayEquals(stamp.getForest()[i],
+                        incremental.getForest()[i]);
+            }
+            assertArrayEquals(stamp.getSeeds(), incremental.getSeeds(), 1e-12);
+        }
+        assertEquals(stamp.getCoverage(), incremental.getCoverage(), 0);
+    }
+
+    @Test
+    public void testLazyGrowthMatchesStamp() {
+        // a decay of 0.5 renormalizes the scale every 100 steps.
+        ForestGenerationImpl stamp = ForestGenerationImpl.Builder.create()
+                .withSize(80, 50)
+                .withRandomSeed(5)
+                .withInitialTrees(3)
+                .withSeedParams(8, 0.5, 0.002)
+                .build();
+        ForestGenerationImpl lazy = ForestGenerationImpl.Builder.create()
+                .withSize(80, 50)
+                .withRandomSeed(5)
+                .withInitialTrees(3)
+                .withSeedParams(8, 0.5, 0.002)
+                .withGrowth(ForestGenerationImpl.Growth.LAZY)
+                .build();
+        stamp.initialize();
+        lazy.initialize();
+        for (int step = 0; step < 250; ++step) {
+            stamp.step();
+            lazy.step();
+
+            assertEquals(stamp.getTrees(), lazy.getTrees());
+            assertEquals(stamp.getLiveSeeds(), lazy.getLiveSeeds());
+            assertArrayEquals(stamp.getSeeds(), lazy.getSeeds(), 1e-12);
+        }
+        for (int i = 0; i < 50; ++i) {
+            assertArrayEquals(stamp.getForest()[i], lazy.getForest()[i]);
+        }
+        assertTrue(lazy.getTrees().size() > 3);
+    }
+
+    @Test
+    public void testHashedDrawsDoNotDependOnThreads() {
+        ForestGenerationImpl expected = null;
+        for (ForestGenerationImpl.Growth growth : ForestGenerationImpl.Growth.values()) {
+            for (BandExecutor executor : new BandExecutor[] {
+                    BandExecutor.SERIAL, new ForkJoinBandExecutor(4) }) {
+                ForestGenerationImpl impl = ForestGenerationImpl.Builder.create()
+                        .withSize(90, 60)
+                        .withRandomSeed(13)
+                        .withSeedParams(7, 0.1, 0.01)
+                        .withDesiredCoverage(0.5)
+                        .withGrowth(growth)
+                        .withHashedDraws(true)
+                        .withExecutor(executor)
+                        .build();
+                impl.generate();
+                if (expected == null) {
+                    expected = impl;
+                    continue;
+                }
+                String message = growth + " " + executor;
+                assertEquals(message, expected.getTrees(), impl.getTrees());
+                for (int i = 0; i < 60; ++i) {
+                    assertArrayEquals(message, expected.getForest()[i],
+                            impl.getForest()[i]);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testHashDraw() {
+        double sum = 0;
+        for (int y = 0; y < 100; ++y) {
+            for (int x = 0; x < 100; ++x) {
+                double u = ForestGenerationImpl.hashDraw(7, 1, x, y);
+                assertTrue(u >= 0 && u < 1);
+                sum += u;
+            }
+        }
+        assertEquals(0.5, sum / 10000, 0.01);
+        assertEquals(ForestGenerationImpl.hashDraw(7, 3, 4, 5),
+                ForestGenerationImpl.hashDraw(7, 3, 4, 5), 0);
+        assertTrue(ForestGenerationImpl.hashDraw(7, 3, 4, 5)
+                != ForestGenerationImpl.hashDraw(7, 3, 5, 4));
+        assertTrue(ForestGenerationImpl.hashDraw(7, 3, 4, 5)
+                != ForestGenerationImpl.hashDraw(8, 3, 4, 5));
+    }
+
+    @Test
+    public void testConvolutionMatchesDisks() {
+        for (int radius : new int[] { 0, 3, 12, 40 }) {
+            ForestGenerationImpl disks = ForestGenerationImpl.Builder.create()
+                    .withSize(50, 30)
+                    .withInitialTrees(25)
+                    .withSeedParams(radius, 0.2, 0.05)
+                    .build();
+            ForestGenerationImpl convolution = ForestGenerationImpl.Builder.create()
+                    .withSize(50, 30)
+                    .withInitialTrees(25)
+                    .withSeedParams(radius, 0.2, 0.05)
+                    .withSeeding(ForestGenerationImpl.Seeding.CONVOLUTION)
+                    .build();
+            disks.initialize();
+            convolution.initialize();
+            disks.seedTrees();
+            convolution.seedTrees();
+            assertEquals(disks.getLiveSeeds(), convolution.getLiveSeeds());
+            assertArrayEquals(disks.getSeeds(), convolution.getSeeds(), 1e-12);
+            for (int i = 0; i < 30; ++i) {
+                assertArrayEquals(disks.getForest()[i], convolution.getForest()[i]);
+            }
+        }
+
+        // with hashed draws the seeding does not change the forest.
+        for (ForestGenerationImpl.Growth growth : ForestGenerationImpl.Growth.values()) {
+            ForestGenerationImpl disks = ForestGenerationImpl.Builder.create()
+                    .withSize(90, 60)
+                    .withSeedParams(7, 0.1, 0.01)
+                    .withDesiredCoverage(0.5)
+                    .withGrowth(growth)
+                    .withHashedDraws(true)
+                    .build();
+            ForestGenerationImpl convolution = ForestGenerationImpl.Builder.create()
+                    .withSize(90, 60)
+                    .withSeedParams(7, 0.1, 0.01)
+                    .withDesiredCoverage(0.5)
+                    .withGrowth(growth)
+                    .withHashedDraws(true)
+                    .withSeeding(ForestGenerationImpl.Seeding.CONVOLUTION)
+                    .build();
+            disks.generate();
+            convolution.generate();
+            assertEquals(growth.toString(), disks.getTrees(), convolution.getTrees());
+        }
+    }
+
+    @Test
+    public void testAutoSeeding() {
+        ForestGenerationImpl impl = ForestGenerationImpl.Builder.create()
+                .withSize(480, 320)
+                .withSeedParams(30, 0.1, 0.05)
+                .withSeeding(ForestGenerationImpl.Seeding.AUTO)
+                .build();
+        assertFalse(impl.useConvolution(10));
+        assertTrue(impl.useConvolution(5000));
+    }
+
+    private void stamp(byte[][] forest, Point p) {
+        for (int dy = -2; dy <= 2; ++dy) {
+            for (int dx = -2; dx <= 2; ++dx) {
+                int x = p.x + dx;
+                int y = p.y + dy;
+                if (Math.abs(dx) + Math.abs(dy) <= 2 && y >= 0
+                        && y < forest.length && x >= 0 && x < forest[y].length)
+                    forest[y][x] = f;
+            }
+        }
+    }
 }
@@ -9,7 +9,9 @@ import static org.mockito.Matchers.anyString;
 import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.mock;
 
+import java.util.Arrays;
 import java.util.List;
+import java.util.Random;
 import java.util.Set;
 
 import org.junit.Before;
@@ -20,6 +22,7 @@ import org.mockito.stubbing.Answer;
 import com.badlogic.gdx.Application;
 import com.badlogic.gdx.Gdx;
 import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
 import com.seekerr.games.procedural.LatticeFns.MoorePixel;
 
 public class LatticeFnsTest {
@@ -71,6 +74,49 @@ public class LatticeFnsTest {
         assertEquals(14, LatticeFns.getTwoStepNeighborCount(testMap, 2, 2));
     }
     
+    @Test
+    public void testGetRadiusNeighborCount() {
+        boolean[][] testMap = {
+                { w, w, w, w, w },
+                { w, e, e, e, w },
+                { w, w, e, e, w },
+                { w, e, w, e, w },
+                { w, w, w, w, w },
+        };
+        
+        assertEquals(9, LatticeFns.getRadiusNeighborCount(testMap, 1, 1, 2));
+        assertEquals(11, LatticeFns.getRadiusNeighborCount(testMap, 2, 1, 2));
+        assertEquals(14, LatticeFns.getRadiusNeighborCount(testMap, 2, 2, 2));
+        assertEquals(2, LatticeFns.getRadiusNeighborCount(testMap, 2, 2, 1));
+        assertEquals(18, LatticeFns.getRadiusNeighborCount(testMap, 2, 2, 3));
+    }
+    
+    @Test
+    public void testSummedAreaTable() {
+        boolean[][] testMap = {
+                { w, w, w, w, w },
+                { w, e, e, e, w },
+                { w, w, e, e, w },
+                { w, e, w, e, w },
+                { w, w, w, w, w },
+        };
+        SummedAreaTable table = new SummedAreaTable(5, 5);
+        table.build(testMap);
+        
+        assertEquals(18, table.sum(0, 0, 4, 4));
+        assertEquals(1, table.sum(1, 1, 2, 2));
+        for (int radius = 1; radius <= 3; ++radius) { 
+            for (int y = 0; y < 5; ++y) { 
+                for (int x = 0; x < 5; ++x) { 
+                    assertEquals(LatticeFns.getRadiusNeighborCount(testMap, y, x, radius),
+                            table.getRadiusNeighborCount(y, x, radius));
+                }
+            }
+        }
+        assertEquals(LatticeFns.getNeighborCount(testMap, 2, 2),
+                table.getNeighborCount(2, 2, 1));
+    }
+    
     @Test
     public void testIsBorderPoint() { 
         boolean[][] testMap = {
@@ -219,6 +265,25 @@ public class LatticeFnsTest {
         List<Point> points = LatticeFns.getContour(impl.getMap());
     }
     
+    @Test
+    public void testContourMatchesFloodFill() {
+        // the lines of the default caves as they were when the rooms were
+        // found with a flood fill, which picked the start of each trace.
+        long[] seeds = { 1, 3, 5, 6, 9 };
+        int[] lines = { 403, 407, 411, 416, 396 };
+        for (int i = 0; i < seeds.length; ++i) {
+            CaveGenerationImpl impl = CaveGenerationImpl
+                    .getDefaultImpl(seeds[i]);
+            impl.generate();
+            assertEquals(lines[i],
+                    LatticeFns.getContourLines(impl.getMap()).size());
+            if (i == 0) {
+                assertEquals(new Point(3, 1),
+                        LatticeFns.getContour(impl.getMap()).get(0));
+            }
+        }
+    }
+
     @Test
     public void testSinglePointContour() { 
         boolean[][] testMap = {
@@ -332,4 +397,225 @@ public class LatticeFnsTest {
         assertEquals(new Line(new Point(1, 1), new Point(1, 2)), lines.get(2));
         assertEquals(new Line(new Point(0, 2), new Point(1, 2)), lines.get(3));
     }
+    
+    @Test
+    public void testRoomLabels() { 
+        boolean[][] testMap = {
+                { w, w, w, w, w, w },
+                { w, e, e, w, e, w },
+                { w, w, e, w, e, w },
+                { w, e, w, w, e, w },
+                { w, e, e, w, w, w },
+                { w, w, w, w, w, w },
+        };
+        RoomLabels rooms = RoomLabels.label(testMap, EMPTY);
+        assertEquals(3, rooms.getCount());
+        assertEquals(0, rooms.getLabel(1, 1));
+        assertEquals(0, rooms.getLabel(2, 2));
+        assertEquals(1, rooms.getLabel(4, 1));
+        assertEquals(2, rooms.getLabel(1, 3));
+        assertEquals(RoomLabels.NONE, rooms.getLabel(0, 0));
+        
+        assertEquals(3, rooms.getSize(0));
+        assertEquals(3, rooms.getSize(1));
+        assertEquals(3, rooms.getSize(2));
+        assertEquals(1, rooms.getMinX(2));
+        assertEquals(3, rooms.getMinY(2));
+        assertEquals(2, rooms.getMaxX(2));
+        assertEquals(4, rooms.getMaxY(2));
+        assertEquals(new Point(4, 1), rooms.getFirst(1));
+        
+        Set<Point> room = rooms.asSet(2);
+        assertTrue(room.contains(new Point(2, 4)));
+        assertFalse(room.contains(new Point(2, 2)));
+        assertFalse(room.contains(new Point(-1, 4)));
+        assertEquals(Lists.newArrayList(new Point(1, 3), new Point(1, 4), 
+                new Point(2, 4)), Lists.newArrayList(room));
+        
+        // a U shape is only joined on the last row
+        boolean[][] uMap = {
+                { e, w, e, w, e },
+                { e, w, e, w, e },
+                { e, e, e, e, e },
+        };
+        rooms = RoomLabels.label(uMap, EMPTY);
+        assertEquals(1, rooms.getCount());
+        assertEquals(11, rooms.getSize(0));
+        rooms = RoomLabels.label(uMap, FILLED);
+        assertEquals(2, rooms.getCount());
+        assertEquals(1, rooms.getLabel(3, 1));
+    }
+    
+    @Test
+    public void testRoomLabelsMatchFloodFill() { 
+        Random random = new Random(3);
+        for (int trial = 0; trial < 20; ++trial) { 
+            int width = 1 + random.nextInt(40);
+            int height = 1 + random.nextInt(40);
+            boolean[][] map = new boolean[height][width];
+            for (int y = 0; y < height; ++y) { 
+                for (int x = 0; x < width; ++x) { 
+                    map[y][x] = random.nextDouble() < 0.45;
+                }
+            }
+            RoomLabels rooms = RoomLabels.label(map, EMPTY);
+            
+            // flood fill each room from its first cell and make sure it 
+            // covers exactly the cells with that label.
+            int[] seen = new int[width * height];
+            Arrays.fill(seen, RoomLabels.NONE);
+            for (int label = 0; label < rooms.getCount(); ++label) { 
+                List<Point> frontier = Lists.newArrayList(rooms.getFirst(label));
+                seen[frontier.get(0).y * width + frontier.get(0).x] = label;
+                int size = 0;
+                while (!frontier.isEmpty()) { 
+                    Point p = frontier.remove(frontier.size() - 1);
+                    ++size;
+                    assertEquals(label, rooms.getLabel(p.x, p.y));
+                    for (Point d : LatticeFns.VON_NEUMANN_HOOD) { 
+                        Point n = Point.add(p, d);
+                        if (n.valid(0, width, 0, height) 
+                                && map[n.y][n.x] == EMPTY
+                                && seen[n.y * width + n.x] == RoomLabels.NONE) { 
+                            seen[n.y * width + n.x] = label;
+                            frontier.add(n);
+                        }
+                    }
+                }
+                assertEquals(size, rooms.getSize(label));
+                assertEquals(size, Lists.newArrayList(rooms.asSet(label)).size());
+            }
+            for (int y = 0; y < height; ++y) { 
+                for (int x = 0; x < width; ++x) { 
+                    assertEquals(seen[y * width + x], rooms.getLabel(x, y));
+                }
+            }
+        }
+    }
+    
+    @Test
+    public void testMarchingSquares() { 
+        boolean[][] testMap = {
+                { w, w, w, w, w },
+                { w, w, e, e, w },
+                { w, w, e, e, w },
+                { w, e, e, e, w },
+                { w, w, w, w, w },
+        };
+        List<MarchingSquares.Contour> contours = 
+                MarchingSquares.getContours(testMap);
+        assertEquals(1, contours.size());
+        assertFalse(contours.get(0).isHole());
+        assertEquals(Lists.newArrayList(
+                new Point(2, 1), new Point(2, 3), new Point(1, 3), 
+                new Point(1, 4), new Point(4, 4), new Point(4, 1)),
+                contours.get(0).getPoints());
+        
+        // a pillar in the middle of the room is a hole
+        boolean[][] pillarMap = {
+                { w, w, w, w, w },
+                { w, e, e, e, w },
+                { w, e, w, e, w },
+                { w, e, e, e, w },
+                { w, w, w, w, w },
+        };
+        contours = MarchingSquares.getContours(pillarMap);
+        assertEquals(2, contours.size());
+        assertFalse(contours.get(0).isHole());
+        assertTrue(contours.get(1).isHole());
+        assertEquals(4, contours.get(1).size());
+        
+        // rooms that only touch at a corner are kept apart
+        boolean[][] saddleMap = {
+                { w, w, w, w },
+                { w, e, w, w },
+                { w, w, e, w },
+                { w, w, w, w },
+        };
+        contours = MarchingSquares.getContours(saddleMap);
+        assertEquals(2, contours.size());
+        assertEquals(4, contours.get(0).size());
+        assertEquals(4, contours.get(1).size());
+    }
+    
+    @Test
+    public void testMarchingSquaresCoversEdges() { 
+        Random random = new Random(7);
+        for (int trial = 0; trial < 20; ++trial) { 
+            int width = 1 + random.nextInt(30);
+            int height = 1 + random.nextInt(30);
+            boolean[][] map = new boolean[height][width];
+            List<Point> filled = Lists.newArrayList();
+            for (int y = 0; y < height; ++y) { 
+                for (int x = 0; x < width; ++x) { 
+                    map[y][x] = random.nextDouble() < 0.5 || x == 0 || y == 0
+                            || x == width - 1 || y == height - 1;
+                    if (map[y][x] == FILLED) { 
+                        filled.add(new Point(x, y));
+                    }
+                }
+            }
+            
+            // with a FILLED border every unit edge of the contours is an 
+            // edge between a FILLED and an EMPTY cell and each one shows up 
+            // exactly once.
+            Set<Line> expected = Sets.newHashSet(
+                    LatticeFns.getEdgeLines(filled, map));
+            List<Line> actual = Lists.newArrayList();
+            for (Line line : MarchingSquares.getContourLines(map)) { 
+                Point a = line.getStart();
+                Point b = line.getEnd();
+                int dx = Integer.signum(b.getX() - a.getX());
+                int dy = Integer.signum(b.getY() - a.getY());
+                for (Point p = a; !p.equals(b); ) { 
+                    Point q = new Point(p.getX() + dx, p.getY() + dy);
+                    actual.add(new Line(p, q));
+                    p = q;
+                }
+            }
+            assertEquals(expected.size(), actual.size());
+            assertEquals(expected, Sets.newHashSet(actual));
+        }
+    }
+    
+    @Test
+    public void testCollisionGeometry() { 
+        boolean[][] roomMap = {
+                { w, w, w, w, w },
+                { w, e, e, e, w },
+                { w, e, e, e, w },
+                { w, w, w, w, w },
+        };
+        CollisionGeometry geometry = CollisionGeometry.build(roomMap, 0);
+        assertEquals(1, geometry.getLoops().size());
+        assertEquals(10, geometry.getEdgeCount());
+        assertEquals(4, geometry.getCornerCount());
+        assertEquals(4, geometry.getVertexCount());
+        assertEquals(6, geometry.getVerticesSaved());
+        
+        // a diagonal wall is a staircase of corners until it is simplified
+        boolean[][] diagonalMap = new boolean[12][12];
+        for (int y = 0; y < 12; ++y) { 
+            for (int x = 0; x < 12; ++x) { 
+                diagonalMap[y][x] = x == 0 || y == 0 || x == 11 || y == 11 
+                        || x > y;
+            }
+        }
+        CollisionGeometry corners = CollisionGeometry.build(diagonalMap, 0);
+        CollisionGeometry simplified = CollisionGeometry.build(diagonalMap, 1);
+        assertEquals(corners.getEdgeCount(), simplified.getEdgeCount());
+        assertEquals(22, corners.getVertexCount());
+        assertEquals(3, simplified.getVertexCount());
+    }
+    
+    @Test
+    public void testSimplifyKeepsTriangle() { 
+        float[] square = { 0, 0, 1, 0, 1, 1, 0, 1 };
+        float[] simplified = CollisionGeometry.simplify(square, 10);
+        assertTrue(simplified.length >= 6);
+        
+        float[] zigzag = { 0, 0, 10, 0, 10, 10, 5, 9.8f, 0, 10 };
+        simplified = CollisionGeometry.simplify(zigzag, 0.5f);
+        assertEquals(8, simplified.length);
+    }
 }
@@ -0,0 +1,134 @@
+package com.seekerr.games.procedural;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.startsWith;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.badlogic.gdx.Application;
+import com.badlogic.gdx.Gdx;
+
+public class LogTest {
+    private static final String TAG = "LogTest";
+
+    Application app;
+    int built;
+
+    /** Counts every time it is turned into a string. */
+    Object part = new Object() {
+        @Override
+        public String toString() {
+            ++built;
+            return "part";
+        }
+    };
+
+    Log.Message message = new Log.Message() {
+        @Override
+        public String get() {
+            ++built;
+            return "message";
+        }
+    };
+
+    @Before
+    public void setupMocks() {
+        app = mock(Application.class);
+        Gdx.app = app;
+        built = 0;
+    }
+
+    @Test
+    public void testNothingBuiltWhenOff() {
+        when(app.getLogLevel()).thenReturn(Application.LOG_INFO);
+        Log.debug(TAG, message);
+        Log.debug(TAG, part);
+        Log.debug(TAG, "part: ", part);
+        Log.debug(TAG, "part: ", part, ", part: ", part);
+        assertEquals(0, built);
+        verify(app, never()).debug(anyString(), anyString());
+
+        when(app.getLogLevel()).thenReturn(Application.LOG_NONE);
+        Log.info(TAG, message);
+        Log.info(TAG, "part: ", part);
+        Log.error(TAG, "part: ", part);
+        assertEquals(0, built);
+        verify(app, never()).log(anyString(), anyString());
+        verify(app, never()).error(anyString(), anyString());
+    }
+
+    @Test
+    public void testBuiltWhenOn() {
+        when(app.getLogLevel()).thenReturn(Application.LOG_DEBUG);
+        Log.debug(TAG, message);
+        Log.debug(TAG, "part: ", part, ", part: ", part);
+        Log.info(TAG, "part: ", part);
+        assertEquals(4, built);
+        verify(app).debug(TAG, "message");
+        verify(app).debug(TAG, "part: part, part: part");
+        verify(app).log(TAG, "part: part");
+    }
+
+    @Test
+    public void testErrorKeepsException() {
+        Exception e = new Exception("cause");
+        when(app.getLogLevel()).thenReturn(Application.LOG_NONE);
+        Log.error(TAG, "part: ", part, e);
+        assertEquals(0, built);
+        verify(app, never()).error(anyString(), anyString(),
+                any(Throwable.class));
+
+        when(app.getLogLevel()).thenReturn(Application.LOG_ERROR);
+        Log.error(TAG, "part: ", part, e);
+        assertEquals(1, built);
+        verify(app).error(TAG, "part: part", e);
+    }
+
+    @Test
+    public void testPrimitiveParts() {
+        when(app.getLogLevel()).thenReturn(Application.LOG_INFO);
+        Log.debug(TAG, "round: ", 3);
+        Log.debug(TAG, "coverage: ", 0.5);
+        Log.debug(TAG, "round: ", 3, ", saved: ", 2);
+        verify(app, never()).debug(anyString(), anyString());
+
+        when(app.getLogLevel()).thenReturn(Application.LOG_DEBUG);
+        Log.debug(TAG, "round: ", 3);
+        Log.debug(TAG, "coverage: ", 0.5);
+        Log.debug(TAG, "round: ", 3, ", saved: ", 2);
+        verify(app).debug(TAG, "round: 3");
+        verify(app).debug(TAG, "coverage: 0.5");
+        verify(app).debug(TAG, "round: 3, saved: 2");
+    }
+
+    @Test
+    public void testGeneratorsDoNotLogWhenOff() {
+        when(app.getLogLevel()).thenReturn(Application.LOG_INFO);
+        CaveGenerationImpl impl = CaveGenerationImpl.Builder.create()
+                .withSize(60, 40)
+                .withRandomSeed(3)
+                .addPhase(5, 2, 4)
+                .addPhase(5, -1, 5)
+                .build();
+        impl.generate();
+        LatticeFns.getContour(impl.getMap());
+        verify(app, never()).debug(anyString(), anyString());
+        verify(app, never()).log(anyString(), anyString());
+
+        // the contour traces every boundary cell once it is on
+        when(app.getLogLevel()).thenReturn(Application.LOG_DEBUG);
+        int points = LatticeFns.getContour(impl.getMap()).size();
+        verify(app, times(1)).debug(anyString(),
+                startsWith("Number of rooms: "));
+        assertTrue(points > 0);
+    }
+}
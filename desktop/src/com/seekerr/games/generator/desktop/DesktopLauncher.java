@@ -1,8 +1,13 @@
 package com.seekerr.games.generator.desktop;
 
+import java.io.File;
+
 import com.badlogic.gdx.backends.lwjgl.LwjglApplication;
 import com.badlogic.gdx.backends.lwjgl.LwjglApplicationConfiguration;
+import com.seekerr.games.generator.ExecutorGenerationService;
+import com.seekerr.games.generator.LevelCache;
 import com.seekerr.games.generator.ProceduralLevelGenerator;
+import com.seekerr.games.io.DiskLevelStore;
 
 public class DesktopLauncher {
 	public static void main (String[] arg) {
@@ -10,6 +15,11 @@ public class DesktopLauncher {
         config.title = "Procedural Generator";
         config.width = 960;
         config.height = 640;
-		new LwjglApplication(new ProceduralLevelGenerator(), config);
+        File cacheDir = new File(System.getProperty("java.io.tmpdir"),
+                "procedural-level-cache");
+        LevelCache cache = new LevelCache(LevelCache.DEFAULT_MAX_BYTES,
+                new DiskLevelStore(cacheDir));
+		new LwjglApplication(new ProceduralLevelGenerator(
+                new ExecutorGenerationService(), 2, cache), config);
 	}
 }
@@ -1,19 +1,22 @@
-package com.seekerr.games.generator.client;
-
-import com.badlogic.gdx.ApplicationListener;
-import com.badlogic.gdx.backends.gwt.GwtApplication;
-import com.badlogic.gdx.backends.gwt.GwtApplicationConfiguration;
-import com.seekerr.games.generator.ProceduralLevelGenerator;
-
-public class HtmlLauncher extends GwtApplication {
-
-        @Override
-        public GwtApplicationConfiguration getConfig () {
-                return new GwtApplicationConfiguration(960, 640);
-        }
-
-        @Override
-        public ApplicationListener getApplicationListener () {
-                return new ProceduralLevelGenerator();
-        }
+package com.seekerr.games.generator.client;
+
+import com.badlogic.gdx.ApplicationListener;
+import com.badlogic.gdx.backends.gwt.GwtApplication;
+import com.badlogic.gdx.backends.gwt.GwtApplicationConfiguration;
+import com.seekerr.games.generator.FrameGenerationService;
+import com.seekerr.games.generator.ProceduralLevelGenerator;
+
+public class HtmlLauncher extends GwtApplication {
+
+        @Override
+        public GwtApplicationConfiguration getConfig () {
+                return new GwtApplicationConfiguration(960, 640);
+        }
+
+        @Override
+        public ApplicationListener getApplicationListener () {
+                // no threads, the levels are generated a slice per frame
+                return new ProceduralLevelGenerator(
+                                new FrameGenerationService(), 1);
+        }
 }
\ No newline at end of file
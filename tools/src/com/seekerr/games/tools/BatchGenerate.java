@@ -0,0 +1,343 @@
+package com.seekerr.games.tools;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import com.badlogic.gdx.Application;
+import com.google.common.collect.Lists;
+import com.seekerr.games.io.LevelFormat;
+import com.seekerr.games.io.LevelWriter;
+import com.seekerr.games.procedural.CaveGenerationImpl;
+import com.seekerr.games.procedural.CaveGenerationImpl.Backend;
+import com.seekerr.games.procedural.ForestGenerationImpl;
+import com.seekerr.games.procedural.ForestGenerationImpl.Growth;
+
+/**
+ * Generates a range of seeds without a window, on every core, and writes
+ * each level to its own file.  The builder parameters default to the ones
+ * the screens use.
+ *
+ * <pre>
+ * BatchGenerate --type cave|forest --seeds FIRST..LAST --out DIR
+ *     [--threads N] [--size WxH] [--format bin|txt] [--verbose]
+ *   cave:   [--phase MIN,MAX,ROUNDS]... [--fill P] [--backend NAME]
+ *   forest: [--trees N] [--seed-params RADIUS,DECAY,STRENGTH]
+ *           [--coverage C] [--growth NAME]
+ * </pre>
+ *
+ * Levels are written in the binary {@link LevelFormat} as .lvl files, or as
+ * the text dump of the generator with --format txt.
+ *
+ * At the end it prints the throughput and the median and 99th percentile
+ * time to generate and write one level.
+ *
+ * @author wkerr
+ *
+ */
+public class BatchGenerate {
+
+    /**
+     * Builds and generates the level for a seed and writes it to a file.
+     * Called from several threads at once.
+     */
+    public static interface LevelType {
+        void generate(long seed, File file, boolean text) throws IOException;
+
+        String getName();
+    }
+
+    public static void main(String[] args) throws Exception {
+        Options options;
+        try {
+            options = Options.parse(args);
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.err.println("usage: BatchGenerate --type cave|forest"
+                    + " --seeds FIRST..LAST --out DIR [--threads N]"
+                    + " [--size WxH] [--format bin|txt] [--verbose]"
+                    + " [builder parameters]");
+            System.exit(2);
+            return;
+        }
+        HeadlessApp.install(options.verbose ? Application.LOG_INFO
+                : Application.LOG_ERROR);
+        run(options);
+    }
+
+    /**
+     * Generate every seed and print the summary.
+     * @param options
+     * @return the time each level took in nanoseconds, by seed.
+     */
+    public static long[] run(final Options options) throws Exception {
+        final File out = options.out;
+        if (!out.isDirectory() && !out.mkdirs()) {
+            throw new IOException("Cannot create " + out);
+        }
+        final LevelType type = options.createType();
+        final long first = options.firstSeed;
+        final int count = (int) (options.lastSeed - first + 1);
+        final String extension = options.text ? ".txt" : ".lvl";
+        final long[] latencies = new long[count];
+        final AtomicLong next = new AtomicLong(first);
+        final AtomicReference<Exception> failure =
+                new AtomicReference<Exception>();
+
+        ExecutorService executor = Executors.newFixedThreadPool(options.threads);
+        long start = System.nanoTime();
+        for (int i = 0; i < options.threads; ++i) {
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    long seed;
+                    while ((seed = next.getAndIncrement()) <= options.lastSeed
+                            && failure.get() == null) {
+                        long t = System.nanoTime();
+                        try {
+                            type.generate(seed, new File(out, type.getName()
+                                    + "-" + seed + extension), options.text);
+                        } catch (Exception e) {
+                            failure.compareAndSet(null, e);
+                            return;
+                        }
+                        latencies[(int) (seed - first)] = System.nanoTime() - t;
+                    }
+                }
+            });
+        }
+        executor.shutdown();
+        executor.awaitTermination(Long.MAX_VALUE, TimeUnit.DAYS);
+        long elapsed = System.nanoTime() - start;
+        if (failure.get() != null) {
+            throw failure.get();
+        }
+
+        long[] sorted = Arrays.copyOf(latencies, count);
+        Arrays.sort(sorted);
+        double seconds = elapsed / 1e9;
+        System.out.println(String.format(
+                "%d %s levels in %.2f s on %d threads: %.1f levels/sec,"
+                + " p50 %.3f ms, p99 %.3f ms", count, type.getName(),
+                seconds, options.threads, count / seconds,
+                percentile(sorted, 0.5) / 1e6, percentile(sorted, 0.99) / 1e6));
+        return latencies;
+    }
+
+    /**
+     * Return the smallest value that at least the fraction p of the sorted
+     * values is less than or equal to.
+     */
+    static long percentile(long[] sorted, double p) {
+        int index = (int) Math.ceil(p * sorted.length) - 1;
+        return sorted[Math.max(0, Math.min(sorted.length - 1, index))];
+    }
+
+    /**
+     * The parsed command line.
+     */
+    public static class Options {
+        String type;
+        long firstSeed;
+        long lastSeed = -1;
+        File out;
+        int threads = Runtime.getRuntime().availableProcessors();
+        int width = -1;
+        int height = -1;
+        boolean text;
+        boolean verbose;
+
+        List<int[]> phases = Lists.newArrayList();
+        double fill = 0.4;
+        Backend backend = Backend.BIT_PACKED;
+
+        int trees = 20;
+        int seedRadius = 7;
+        double seedDecay = 0.1;
+        double seedStrength = 0.05;
+        double coverage = 0.25;
+        Growth growth = Growth.INCREMENTAL;
+
+        public static Options parse(String[] args) {
+            Options options = new Options();
+            for (int i = 0; i < args.length; ++i) {
+                String arg = args[i];
+                if (arg.equals("--verbose")) {
+                    options.verbose = true;
+                    continue;
+                }
+                if (i + 1 == args.length) {
+                    throw new IllegalArgumentException("Missing value for " + arg);
+                }
+                String value = args[++i];
+                if (arg.equals("--type")) {
+                    options.type = value;
+                } else if (arg.equals("--seeds")) {
+                    String[] range = value.split("\\.\\.");
+                    options.firstSeed = Long.parseLong(range[0]);
+                    options.lastSeed = range.length > 1
+                            ? Long.parseLong(range[1]) : options.firstSeed;
+                } else if (arg.equals("--out")) {
+                    options.out = new File(value);
+                } else if (arg.equals("--threads")) {
+                    options.threads = Integer.parseInt(value);
+                } else if (arg.equals("--size")) {
+                    String[] size = value.split("x");
+                    options.width = Integer.parseInt(size[0]);
+                    options.height = Integer.parseInt(size[1]);
+                } else if (arg.equals("--format")) {
+                    if (!value.equals("bin") && !value.equals("txt")) {
+                        throw new IllegalArgumentException("Unknown format "
+                                + value);
+                    }
+                    options.text = value.equals("txt");
+                } else if (arg.equals("--phase")) {
+                    options.phases.add(ints(value, 3));
+                } else if (arg.equals("--fill")) {
+                    options.fill = Double.parseDouble(value);
+                } else if (arg.equals("--backend")) {
+                    options.backend = Backend.valueOf(value);
+                } else if (arg.equals("--trees")) {
+                    options.trees = Integer.parseInt(value);
+                } else if (arg.equals("--seed-params")) {
+                    String[] params = value.split(",");
+                    options.seedRadius = Integer.parseInt(params[0]);
+                    options.seedDecay = Double.parseDouble(params[1]);
+                    options.seedStrength = Double.parseDouble(params[2]);
+                } else if (arg.equals("--coverage")) {
+                    options.coverage = Double.parseDouble(value);
+                } else if (arg.equals("--growth")) {
+                    options.growth = Growth.valueOf(value);
+                } else {
+                    throw new IllegalArgumentException("Unknown option " + arg);
+                }
+            }
+            if (options.type == null || options.out == null
+                    || options.lastSeed < options.firstSeed) {
+                throw new IllegalArgumentException(
+                        "--type, --seeds and --out are required");
+            }
+            if (options.lastSeed - options.firstSeed >= Integer.MAX_VALUE) {
+                throw new IllegalArgumentException("Too many seeds");
+            }
+            if (options.threads < 1) {
+                throw new IllegalArgumentException("--threads must be >= 1");
+            }
+            return options;
+        }
+
+        private static int[] ints(String value, int count) {
+            String[] parts = value.split(",");
+            if (parts.length != count) {
+                throw new IllegalArgumentException("Expected " + count
+                        + " values in " + value);
+            }
+            int[] ints = new int[count];
+            for (int i = 0; i < count; ++i) {
+                ints[i] = Integer.parseInt(parts[i]);
+            }
+            return ints;
+        }
+
+        LevelType createType() {
+            if (type.equals("cave")) {
+                return new CaveType(this);
+            } else if (type.equals("forest")) {
+                return new ForestType(this);
+            }
+            throw new IllegalArgumentException("Unknown type " + type);
+        }
+    }
+
+    static class CaveType implements LevelType {
+        private final Options options;
+        private final List<int[]> phases;
+
+        CaveType(Options options) {
+            this.options = options;
+            this.phases = options.phases.isEmpty()
+                    ? Arrays.asList(new int[] { 5, 2, 4 }, new int[] { 5, -1, 5 })
+                    : options.phases;
+        }
+
+        @Override
+        public void generate(long seed, File file, boolean text)
+                throws IOException {
+            int width = options.width > 0 ? options.width : 60;
+            int height = options.height > 0 ? options.height : 40;
+            CaveGenerationImpl.Builder builder = CaveGenerationImpl.Builder.create()
+                    .withSize(width, height)
+                    .withRandomSeed(seed)
+                    .withFillProbability(options.fill)
+                    .withBackend(options.backend);
+            for (int[] phase : phases) {
+                builder.addPhase(phase[0], phase[1], phase[2]);
+            }
+            CaveGenerationImpl cave = builder.build();
+            cave.generate();
+            if (text) {
+                Files.write(file.toPath(), CaveGenerationImpl.toString(
+                        cave.getMap()).getBytes(StandardCharsets.US_ASCII));
+                return;
+            }
+            LevelWriter.create(width, height)
+                    .withGenerator(getName(),
+                            CaveGenerationImpl.ALGORITHM_VERSION,
+                            cave.getParams(), seed)
+                    .withCave(cave.getMap()).write(file);
+        }
+
+        @Override
+        public String getName() {
+            return "cave";
+        }
+    }
+
+    static class ForestType implements LevelType {
+        private final Options options;
+
+        ForestType(Options options) {
+            this.options = options;
+        }
+
+        @Override
+        public void generate(long seed, File file, boolean text)
+                throws IOException {
+            int width = options.width > 0 ? options.width : 240;
+            int height = options.height > 0 ? options.height : 160;
+            ForestGenerationImpl forest = ForestGenerationImpl.Builder.create()
+                    .withSize(width, height)
+                    .withRandomSeed(seed)
+                    .withInitialTrees(options.trees)
+                    .withSeedParams(options.seedRadius, options.seedDecay,
+                            options.seedStrength)
+                    .withDesiredCoverage(options.coverage)
+                    .withGrowth(options.growth)
+                    .build();
+            forest.generate();
+            if (text) {
+                Files.write(file.toPath(),
+                        forest.toString().getBytes(StandardCharsets.US_ASCII));
+                return;
+            }
+            LevelWriter.create(width, height)
+                    .withGenerator(getName(),
+                            ForestGenerationImpl.ALGORITHM_VERSION,
+                            forest.getParams(), seed)
+                    .withForest(forest.getForest()).write(file);
+        }
+
+        @Override
+        public String getName() {
+            return "forest";
+        }
+    }
+}
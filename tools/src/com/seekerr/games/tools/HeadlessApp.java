@@ -0,0 +1,60 @@
+package com.seekerr.games.tools;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+
+import com.badlogic.gdx.Application;
+import com.badlogic.gdx.Gdx;
+
+/**
+ * The generators log through Gdx.app, but the tools run without a backend.
+ * This installs an Application that prints log messages up to the given
+ * level to stderr and ignores everything else.
+ *
+ * @author wkerr
+ *
+ */
+public class HeadlessApp {
+
+    public static void install(final int logLevel) {
+        Gdx.app = (Application) Proxy.newProxyInstance(
+                HeadlessApp.class.getClassLoader(),
+                new Class<?>[] { Application.class },
+                new InvocationHandler() {
+                    @Override
+                    public Object invoke(Object proxy, Method method,
+                            Object[] args) {
+                        String name = method.getName();
+                        if (name.equals("getLogLevel")) {
+                            return logLevel;
+                        }
+                        if (name.equals("log") || name.equals("debug")
+                                || name.equals("error")) {
+                            print(name, args);
+                            return null;
+                        }
+                        if (method.getReturnType() == int.class) {
+                            return 0;
+                        }
+                        if (method.getReturnType() == long.class) {
+                            return 0L;
+                        }
+                        return null;
+                    }
+                });
+    }
+
+    private static void print(String method, Object[] args) {
+        int level = method.equals("error") ? Application.LOG_ERROR
+                : method.equals("log") ? Application.LOG_INFO
+                : Application.LOG_DEBUG;
+        if (Gdx.app.getLogLevel() < level) {
+            return;
+        }
+        System.err.println("[" + args[0] + "] " + args[1]);
+        if (args.length > 2 && args[2] instanceof Throwable) {
+            ((Throwable) args[2]).printStackTrace();
+        }
+    }
+}